@@ -0,0 +1,86 @@
+package ch.epfl.gameboj.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.gameboj.component.cpu.Alu;
+import ch.epfl.gameboj.component.cpu.Alu.RotDir;
+import ch.epfl.gameboj.component.cpu.AluTable;
+
+/**
+ * the 8 bit operations of the alu computed by Alu and looked up in the tables
+ * of AluTable, on the same random operands, each iteration doing the mix of 
+ * an add, a sub, a logical operation, a rotation and a decimal adjustment
+ * CpuBenchmark's ALU stream gives the difference as seen by the cpu, with
+ * GameBoy.Options.aluTables
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AluBenchmark {
+
+    //CONSTANTS
+    private static final int OPERANDS = 1024;
+    private static final int OPERATIONS = 5;
+
+    private final int[] left = new int[OPERANDS];
+    private final int[] right = new int[OPERANDS];
+    private final boolean[] carries = new boolean[OPERANDS];
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(0x6B);
+        for (int i = 0; i < OPERANDS; ++i) {
+            left[i] = random.nextInt(0x100);
+            right[i] = random.nextInt(0x100);
+            carries[i] = random.nextBoolean();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERANDS * OPERATIONS)
+    public int computed() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; ++i) {
+            int l = left[i], r = right[i];
+            boolean c = carries[i];
+            sum += Alu.add(l, r, c);
+            sum += Alu.sub(l, r, c);
+            sum += Alu.xor(l, r);
+            sum += Alu.rotate(RotDir.LEFT, l, c);
+            sum += Alu.bcdAdjust(r, c, false, c);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERANDS * OPERATIONS)
+    public int table() {
+        int sum = 0;
+        for (int i = 0; i < OPERANDS; ++i) {
+            int l = left[i], r = right[i];
+            boolean c = carries[i];
+            sum += AluTable.add(l, r, c);
+            sum += AluTable.sub(l, r, c);
+            sum += AluTable.xor(l, r);
+            sum += AluTable.rotate(RotDir.LEFT, l, c);
+            sum += AluTable.bcdAdjust(r, c, false, c);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,45 @@
+package ch.epfl.gameboj.benchmarks;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.lcd.LcdController;
+
+/**
+ * the roms bundled with the emulator, as the benchmarks use them
+ */
+public final class BenchmarkRoms {
+
+    private BenchmarkRoms() {}
+
+    /**
+     * @param name : name of a rom of the games folder, without its extension
+     * @return its image, to build as many cartridges as needed
+     * @throws IOException if there is no such rom or it can not be read
+     */
+    public static ByteBuffer image(String name) throws IOException {
+        try (InputStream stream = BenchmarkRoms.class.getResourceAsStream("/games/" + name + ".gb")) {
+            if (stream == null) {
+                throw new FileNotFoundException("no rom " + name);
+            }
+            return ByteBuffer.wrap(stream.readAllBytes()).asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * @param name : name of a rom of the games folder, without its extension
+     * @param frames : number of images simulated, for the game to be past its
+     * boot and title screens
+     * @return a game boy running the rom, without any key pressed
+     * @throws IOException if there is no such rom or it can not be read
+     */
+    public static GameBoy gameBoyAfter(String name, int frames) throws IOException {
+        GameBoy gameBoy = new GameBoy(Cartridge.ofImage(image(name)));
+        gameBoy.runUntil(frames * LcdController.CYCLES_PER_FRAME);
+        return gameBoy;
+    }
+}
@@ -0,0 +1,57 @@
+package ch.epfl.gameboj.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.gameboj.bits.BitVector;
+
+/**
+ * extractions and shifts of bit vectors the size of a background line, by
+ * multiples of 32 bits or not
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BitVectorBenchmark {
+
+    //CONSTANTS
+    private static final int SIZE = 256;
+
+    @Param({ "0", "32", "5", "-37" })
+    public int distance;
+
+    private BitVector vector;
+
+    @Setup
+    public void setUp() {
+        BitVector.Builder builder = new BitVector.Builder(SIZE);
+        for (int i = 0; i < SIZE / Byte.SIZE; ++i) {
+            builder.setByte(i, (i * 0x9D) & 0xFF);
+        }
+        vector = builder.build();
+    }
+
+    @Benchmark
+    public BitVector extractWrapped() {
+        return vector.extractWrapped(distance, SIZE);
+    }
+
+    @Benchmark
+    public BitVector shift() {
+        return vector.shift(distance);
+    }
+}
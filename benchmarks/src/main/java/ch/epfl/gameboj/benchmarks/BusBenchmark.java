@@ -0,0 +1,127 @@
+package ch.epfl.gameboj.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+
+/**
+ * reads and writes through the bus of a game boy running a game, every
+ * component being attached as in the emulator, by region of the address space
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class BusBenchmark {
+
+    //CONSTANTS
+    private static final String ROM = "tetris";
+    private static final int FRAMES_BEFORE = 300;
+    private static final int ACCESSES = 4096;
+
+    /**
+     * the regions of the address space, the io one covering the registers
+     * of the timer, the joypad, the lcd controller and the interrupts
+     */
+    public enum Region {
+        ROM(AddressMap.CARTRIDGE_ROM_START, AddressMap.CARTRIDGE_ROM_END),
+        VIDEO_RAM(AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_END),
+        WORK_RAM(AddressMap.WORK_RAM_START, AddressMap.WORK_RAM_END),
+        ECHO_RAM(AddressMap.ECHO_RAM_START, AddressMap.ECHO_RAM_END),
+        OAM(AddressMap.OAM_START, AddressMap.OAM_END),
+        IO(AddressMap.REGS_START, AddressMap.HIGH_RAM_START),
+        HIGH_RAM(AddressMap.HIGH_RAM_START, AddressMap.HIGH_RAM_END);
+
+        private final int start, end;
+
+        private Region(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return ACCESSES addresses going through the region with a stride
+         * that does not follow the pages of the bus
+         */
+        private int[] addresses() {
+            int[] addresses = new int[ACCESSES];
+            for (int i = 0; i < ACCESSES; ++i) {
+                addresses[i] = start + (int) ((i * 37L) % (end - start));
+            }
+            return addresses;
+        }
+    }
+
+    /**
+     * a bus and the addresses read
+     */
+    @State(Scope.Thread)
+    public static class ReadState {
+        @Param
+        public Region region;
+
+        private Bus bus;
+        private int[] addresses;
+
+        @Setup
+        public void setUp() throws IOException {
+            bus = BenchmarkRoms.gameBoyAfter(ROM, FRAMES_BEFORE).bus();
+            addresses = region.addresses();
+        }
+    }
+
+    /**
+     * a bus and the addresses written, only in regions where a write has
+     * no effect but changing the memory
+     */
+    @State(Scope.Thread)
+    public static class WriteState {
+        @Param({ "VIDEO_RAM", "WORK_RAM", "OAM", "HIGH_RAM" })
+        public Region region;
+
+        private Bus bus;
+        private int[] addresses;
+
+        @Setup
+        public void setUp() throws IOException {
+            bus = BenchmarkRoms.gameBoyAfter(ROM, FRAMES_BEFORE).bus();
+            addresses = region.addresses();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void read(ReadState state, Blackhole blackhole) {
+        Bus bus = state.bus;
+        for (int address : state.addresses) {
+            blackhole.consume(bus.read(address));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCESSES)
+    public void write(WriteState state) {
+        Bus bus = state.bus;
+        int[] addresses = state.addresses;
+        for (int i = 0; i < addresses.length; ++i) {
+            bus.write(addresses[i], i & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package ch.epfl.gameboj.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.cpu.Cpu;
+import ch.epfl.gameboj.component.cpu.Opcode;
+import ch.epfl.gameboj.component.memory.BootRomController;
+import ch.epfl.gameboj.component.memory.Ram;
+import ch.epfl.gameboj.component.memory.RamController;
+
+/**
+ * cycles simulated by a cpu alone on a bus with a cartridge holding a synthetic
+ * program, a loop repeating one kind of instructions, and ram over the rest of
+ * the address space, nothing else limiting its blocks of instructions
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CpuBenchmark {
+
+    //CONSTANTS
+    private static final int CYCLES = 10_000;
+    private static final int SUBROUTINE = 0x0008;
+    //after the header of the cartridge, whose type byte must stay 0 (no mbc)
+    private static final int LOOP_START = 0x0150;
+    private static final int ROM_SIZE = 0x8000;
+    private static final int LOOP_BYTES = 0x400;
+    private static final int STACK_TOP = 0xDFF0;
+    private static final int DATA = 0xC000;
+
+    /**
+     * the kinds of instructions of the programs
+     */
+    public enum Stream {
+        //8 and 16 bits arithmetic and logic on registers and immediates
+        ALU,
+        //transfers between registers, work ram, high ram and the stack
+        LOAD,
+        //taken and not taken jumps, calls and returns
+        BRANCH,
+        //prefixed rotations, shifts and bit operations, on registers and memory
+        PREFIXED
+    }
+
+    @Param
+    public Stream stream;
+
+    @Param({ "true", "false" })
+    public boolean executesBlocks;
+
+    @Param({ "false", "true" })
+    public boolean aluTables;
+
+    private Cpu cpu;
+    private long cycle;
+
+    @Setup
+    public void setUp() {
+        GameBoy.Options options = new GameBoy.Options();
+        if (!executesBlocks) {
+            options.withoutBlocks();
+        }
+        if (aluTables) {
+            options.aluTables();
+        }
+        byte[] image = new byte[ROM_SIZE];
+        Program program = new Program(image);
+        program.put(Opcode.LD_SP_N16, STACK_TOP).put(Opcode.JP_N16, LOOP_START);
+        program.at(SUBROUTINE).put(Opcode.INC_C).put(Opcode.RET);
+        program.at(LOOP_START).put(Opcode.LD_HL_N16, DATA);
+        while (program.position < LOOP_START + LOOP_BYTES) {
+            putBody(program);
+        }
+        program.put(Opcode.JP_N16, LOOP_START);
+
+        Bus bus = new Bus();
+        BootRomController rom = new BootRomController(Cartridge.ofImage(ByteBuffer.wrap(image)));
+        rom.write(AddressMap.REG_BOOT_ROM_DISABLE, 0);
+        cpu = new Cpu(options, rom, null);
+        cpu.attachTo(bus);
+        rom.attachTo(bus);
+        Ram ram = new Ram(AddressMap.REG_IE - ROM_SIZE);
+        new RamController(ram, ROM_SIZE).attachTo(bus);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public void cycle() {
+        long end = cycle + CYCLES;
+        while (cycle < end) {
+            cpu.cycle(cycle, end);
+            cycle = cpu.nextEventCycle(cycle + 1);
+        }
+    }
+
+    /**
+     * @param program : program receiving one repetition of the loop body of
+     * the stream, which keeps HL in the work ram
+     */
+    private void putBody(Program program) {
+        switch (stream) {
+        case ALU:
+            program.put(Opcode.ADD_A_B).put(Opcode.ADC_A_C).put(Opcode.SUB_A_D).put(Opcode.SBC_A_E)
+                    .put(Opcode.AND_A_H).put(Opcode.XOR_A_L).put(Opcode.OR_A_B).put(Opcode.CP_A_C)
+                    .put(Opcode.INC_A).put(Opcode.DEC_B).put(Opcode.RLCA).put(Opcode.CPL)
+                    .put(Opcode.ADD_HL_BC).put(Opcode.INC_DE).put(Opcode.DAA)
+                    .put(Opcode.ADD_A_N8, 0x11).put(Opcode.AND_A_N8, 0x7F)
+                    .put(Opcode.LD_HL_N16, DATA);
+            break;
+        case LOAD:
+            program.put(Opcode.LD_A_HLR).put(Opcode.LD_B_A).put(Opcode.LD_C_B)
+                    .put(Opcode.LD_HLRI_A).put(Opcode.LD_A_HLRD).put(Opcode.LD_HLR_B)
+                    .put(Opcode.LD_A_N8, 0x42).put(Opcode.PUSH_BC).put(Opcode.POP_DE)
+                    .put(Opcode.LD_N8R_A, 0x80).put(Opcode.LD_A_N8R, 0x80)
+                    .put(Opcode.LD_N16R_A, DATA + 0x100).put(Opcode.LD_A_N16R, DATA + 0x100);
+            break;
+        case BRANCH:
+            //a counted inner loop, then jumps to the following instruction
+            program.put(Opcode.LD_B_N8, 4).put(Opcode.DEC_B).put(Opcode.JR_NZ_E8, 0xFD)
+                    .put(Opcode.CALL_N16, SUBROUTINE).put(Opcode.RST_1)
+                    .put(Opcode.JR_C_E8, 0);
+            program.put(Opcode.JP_N16, program.position + Opcode.JP_N16.totalBytes);
+            break;
+        case PREFIXED:
+            program.put(Opcode.BIT_0_A).put(Opcode.SET_3_B).put(Opcode.RES_3_B).put(Opcode.RL_C)
+                    .put(Opcode.SWAP_A).put(Opcode.SRL_D).put(Opcode.RLC_E).put(Opcode.SRA_L)
+                    .put(Opcode.BIT_7_HLR).put(Opcode.SET_1_HLR).put(Opcode.RES_1_HLR).put(Opcode.SWAP_HLR)
+                    .put(Opcode.LD_HL_N16, DATA);
+            break;
+        default:
+            throw new Error();
+        }
+    }
+
+    /**
+     * writes instructions one after the other in a rom image
+     */
+    private static final class Program {
+        private final byte[] image;
+        private int position = 0;
+
+        private Program(byte[] image) {
+            this.image = image;
+        }
+
+        /**
+         * @param address : address of the next instruction
+         * @return this program
+         */
+        private Program at(int address) {
+            position = address;
+            return this;
+        }
+
+        /**
+         * @param opcode : instruction without operand
+         * @return this program
+         */
+        private Program put(Opcode opcode) {
+            if (opcode.kind == Opcode.Kind.PREFIXED) {
+                image[position++] = (byte) 0xCB;
+            }
+            image[position++] = (byte) opcode.encoding;
+            return this;
+        }
+
+        /**
+         * @param opcode : instruction with an operand
+         * @param operand : 8 or 16 bits operand, depending on the size of the instruction
+         * @return this program
+         */
+        private Program put(Opcode opcode, int operand) {
+            put(opcode);
+            image[position++] = (byte) operand;
+            if (opcode.totalBytes == 3) {
+                image[position++] = (byte) (operand >>> 8);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package ch.epfl.gameboj.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.lcd.LcdController;
+
+/**
+ * the first second of every supported game bundled with the emulator, from
+ * the boot of a new game boy, without any key pressed
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FramesBenchmark {
+
+    //CONSTANTS
+    private static final int FRAMES = 60;
+
+    //poke uses a memory bank controller the emulator does not support
+    @Param({ "2048", "batman", "bomberman", "donkey kong", "fifa98", "flappyboy", "hugo",
+            "mario1", "mario2", "mortal kombat", "pacman", "snake", "spaceInvaders", "spiderman",
+            "street fighter 2", "tasmania story", "tetris", "worldcup", "zelda" })
+    public String rom;
+
+    private ByteBuffer image;
+    private GameBoy gameBoy;
+
+    @Setup(Level.Trial)
+    public void loadRom() throws IOException {
+        image = BenchmarkRoms.image(rom);
+    }
+
+    //the game boy being built before each run of the frames, its cost is not measured
+    @Setup(Level.Invocation)
+    public void boot() {
+        gameBoy = new GameBoy(Cartridge.ofImage(image));
+    }
+
+    @Benchmark
+    public GameBoy runUntil() {
+        gameBoy.runUntil(FRAMES * LcdController.CYCLES_PER_FRAME);
+        return gameBoy;
+    }
+}
@@ -0,0 +1,108 @@
+package ch.epfl.gameboj.benchmarks;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+import ch.epfl.gameboj.gui.ImageConverter;
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+
+/**
+ * conversion of an image of a game to a javafx image, allocated at each
+ * conversion or reused, and to an awt one
+ * the reused image is backed by a pixel buffer, which is only updated on the
+ * javafx application thread, so update starts the platform and runs a batch
+ * of updates there at each invocation
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ImageConverterBenchmark {
+
+    //CONSTANTS
+    private static final String ROM = "zelda";
+    private static final int FRAMES_BEFORE = 600;
+    private static final int FRAMES_BETWEEN = 30;
+    private static final int UPDATES = 100;
+
+    private LcdImage image;
+    private LcdImage otherImage;
+    private ImageConverter converter;
+
+    @Setup
+    public void setUp() throws IOException {
+        image = BenchmarkRoms.gameBoyAfter(ROM, FRAMES_BEFORE).lcdController().currentImage();
+        otherImage = BenchmarkRoms.gameBoyAfter(ROM, FRAMES_BEFORE + FRAMES_BETWEEN).lcdController().currentImage();
+        converter = new ImageConverter(LcdController.LCD_WIDTH, LcdController.LCD_HEIGHT);
+    }
+
+    @Benchmark
+    public Image convert() {
+        return ImageConverter.convert(image);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(UPDATES)
+    public Image update(FxPlatform platform) throws InterruptedException, ExecutionException {
+        FutureTask<Image> updates = new FutureTask<>(() -> {
+            Image shown = null;
+            for (int i = 0; i < UPDATES; ++i) {
+                //two different images one after the other, so every update
+                //uploads the lines they do not share
+                LcdImage t = image;
+                image = otherImage;
+                otherImage = t;
+                shown = converter.update(image);
+            }
+            return shown;
+        });
+        Platform.runLater(updates);
+        return updates.get();
+    }
+
+    @Benchmark
+    public BufferedImage toBufferedImage() {
+        return ImageConverter.toBufferedImage(image);
+    }
+
+    /**
+     * the javafx platform, started once by fork
+     */
+    @State(Scope.Benchmark)
+    public static class FxPlatform {
+
+        @Setup
+        public void setUp() throws InterruptedException {
+            CountDownLatch started = new CountDownLatch(1);
+            Platform.startup(started::countDown);
+            started.await();
+        }
+
+        @TearDown
+        public void tearDown() {
+            Platform.exit();
+        }
+    }
+}
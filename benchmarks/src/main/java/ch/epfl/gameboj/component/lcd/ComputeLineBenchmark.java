@@ -0,0 +1,54 @@
+package ch.epfl.gameboj.component.lcd;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.gameboj.benchmarks.BenchmarkRoms;
+
+/**
+ * drawing of the lines of an image by LcdController.computeLine, with the
+ * video ram and registers of a game after its title screen, in the package of
+ * the controller to call it directly
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ComputeLineBenchmark {
+
+    //CONSTANTS
+    private static final int FRAMES_BEFORE = 600;
+
+    @Param({ "tetris", "zelda", "mario1", "street fighter 2" })
+    public String rom;
+
+    private LcdController lcdController;
+
+    @Setup
+    public void setUp() throws IOException {
+        lcdController = BenchmarkRoms.gameBoyAfter(rom, FRAMES_BEFORE).lcdController();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LcdController.LCD_HEIGHT)
+    public void computeLine() {
+        for (int line = 0; line < LcdController.LCD_HEIGHT; ++line) {
+            lcdController.computeLine(line);
+        }
+    }
+}
@@ -1,62 +1,203 @@
 package ch.epfl.gameboj;
 
+import static ch.epfl.gameboj.Preconditions.checkArgument;
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Objects;
 
 import ch.epfl.gameboj.component.Component;
 
 public final class Bus {
 
-    
-    private final ArrayList<Component> componentList = new ArrayList<Component>();
+    //CONSTANTS
+    private static final int ADDRESS_SPACE_SIZE = 0x10000;
+    private static final int PAGE_BITS = 4;
+    private static final int PAGE_NUMBER = ADDRESS_SPACE_SIZE >>> PAGE_BITS;
+    private static final Component[] NO_COMPONENT = new Component[0];
+    //size of the pages of the access counters, coarser than the ones of the page table
+    public static final int COUNTER_PAGE_BITS = 8;
+    private static final int COUNTER_PAGE_MASK = (1 << COUNTER_PAGE_BITS) - 1;
+
+    //FIELDS
+    //page table: for every 16 bytes of the address space, the components
+    //(in attachment order) whose address ranges intersect that page
+    private final Component[][] pageTable = new Component[PAGE_NUMBER][];
+    //reads and writes by counter page if the bus counts them, only written by
+    //the thread using the bus
+    private final boolean countsAccesses;
+    private final long[] pageReads = new long[ADDRESS_SPACE_SIZE >>> COUNTER_PAGE_BITS];
+    private final long[] pageWrites = new long[ADDRESS_SPACE_SIZE >>> COUNTER_PAGE_BITS];
+
+    public Bus() {
+        this(false);
+    }
+
+    /**
+     * @param countsAccesses : whether the reads and writes are counted by page
+     */
+    public Bus(boolean countsAccesses) {
+        this.countsAccesses = countsAccesses;
+        Arrays.fill(pageTable, NO_COMPONENT);
+    }
 
-    
     /**
-     * attaches component to bus by adding it to our componentList
+     * attaches component to bus over the whole address space, it will then
+     * be asked for every read and receive every write
      * @param component : what we want to attach
      */
     public void attach(Component component) {
-        component = Objects.requireNonNull(component);
-        componentList.add(component);
+        attach(component, 0, ADDRESS_SPACE_SIZE);
     }
 
     /**
-     * 
+     * attaches component to bus for the addresses between startAddress (included)
+     * and endAddress (excluded), the pages covering that range then route
+     * their reads and writes to the component
+     * @param component : what we want to attach
+     * @param startAddress : first address handled by the component
+     * @param endAddress : address following the last one handled by the component
+     * throws IllegalArgumentException if the range is empty or not in the address space
+     */
+    public void attach(Component component, int startAddress, int endAddress) {
+        Objects.requireNonNull(component);
+        checkArgument(0 <= startAddress && startAddress < endAddress && endAddress <= ADDRESS_SPACE_SIZE);
+
+        int firstPage = startAddress >>> PAGE_BITS;
+        int lastPage = (endAddress - 1) >>> PAGE_BITS;
+        //the arrays are never modified, so the pages which had the same
+        //components share the same array with the new one too
+        Component[] previous = null;
+        Component[] extended = null;
+        for (int page = firstPage; page <= lastPage; ++page) {
+            Component[] components = pageTable[page];
+            if (components == previous) {
+                pageTable[page] = extended;
+            } else if (!Arrays.asList(components).contains(component)) {
+                previous = components;
+                extended = Arrays.copyOf(components, components.length + 1);
+                extended[extended.length - 1] = component;
+                pageTable[page] = extended;
+            }
+        }
+    }
+
+    /**
+     *
      * @param address to read on (first checked if it is 16 bits)
      * throws IndexOutOfBoundsException if not compatible
-     * @return the value on address if one of the components attached to bus has a value on it 
-     * if the list is all NO_DATA, index will be equal to size of componentList, thus returning default 0xFF value
+     * @return the value on address if one of the components attached to the page
+     * of address has a value on it, the default 0xFF value otherwise
      */
     public int read(int address) {
 
         address = checkBits16(address);
-        int index = 0;
-        while (index < componentList.size() && componentList.get(index).read(address) == Component.NO_DATA) {
-            index++;
+        if (countsAccesses) {
+            ++pageReads[address >>> COUNTER_PAGE_BITS];
+        }
+        for (Component c : pageTable[address >>> PAGE_BITS]) {
+            int data = c.read(address);
+            if (data != Component.NO_DATA) {
+                return data;
+            }
         }
+        return 0xFF;
+    }
 
-        if (index == componentList.size()) {
-            return 0xFF;
+    /**
+     * reads length bytes from address on, as many calls to read would do
+     * @param address : address of the first byte to read
+     * @param destination : array receiving the bytes
+     * @param offset : index in destination of the first byte
+     * @param length : number of bytes to read
+     * when a single component is attached over the whole block, it is asked 
+     * for all bytes at once
+     * throws IllegalArgumentException if the block is not in the address space
+     */
+    public void readBlock(int address, byte[] destination, int offset, int length) {
+        checkArgument(address >= 0 && length >= 0 && address + length <= ADDRESS_SPACE_SIZE);
+        if (length == 0) {
+            return;
+        }
+        Component owner = soleComponent(address, address + length);
+        if (owner != null) {
+            owner.readBlock(address, destination, offset, length);
+            if (countsAccesses) {
+                countBlock(pageReads, address, length);
+            }
+        } else {
+            for (int i = 0; i < length; ++i) {
+                destination[offset + i] = (byte) read(address + i);
+            }
         }
+    }
 
-        return componentList.get(index).read(address);
+    /**
+     * @param startAddress : first address of the range
+     * @param endAddress : address following the last one of the range
+     * @return the only component attached over the whole range, null if there
+     * is none or more than one
+     */
+    private Component soleComponent(int startAddress, int endAddress) {
+        Component owner = null;
+        for (int page = startAddress >>> PAGE_BITS; page <= (endAddress - 1) >>> PAGE_BITS; ++page) {
+            Component[] components = pageTable[page];
+            if (components.length != 1 || (owner != null && owner != components[0])) {
+                return null;
+            }
+            owner = components[0];
+        }
+        return owner;
     }
 
     /**
-     * writes the given data to the attached components of bus
+     * writes the given data to the components attached to the page of address
      * @param address to be written on (first checked if it is 16 bits)
-     * @param data to be written (first checked if it is 8 bits) 
+     * @param data to be written (first checked if it is 8 bits)
      * for both parameters throws IndexOutOfBoundsException if not compatible
      */
     public void write(int address, int data) {
 
         address = checkBits16(address);
         data = checkBits8(data);
-        for (Component c : componentList) {
+        if (countsAccesses) {
+            ++pageWrites[address >>> COUNTER_PAGE_BITS];
+        }
+        for (Component c : pageTable[address >>> PAGE_BITS]) {
             c.write(address, data);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @param counters : counters by page of COUNTER_PAGE_BITS bits
+     * @param address : address of the first byte of a block
+     * @param length : number of bytes of the block
+     * adds to the counter of each page the bytes of the block in it
+     */
+    private static void countBlock(long[] counters, int address, int length) {
+        int end = address + length;
+        while (address < end) {
+            int pageEnd = Math.min(end, (address | COUNTER_PAGE_MASK) + 1);
+            counters[address >>> COUNTER_PAGE_BITS] += pageEnd - address;
+            address = pageEnd;
+        }
+    }
+
+    /**
+     * the counters are read without synchronization, by another thread than the
+     * one using the bus they may lag behind
+     * @return the number of reads by page of COUNTER_PAGE_BITS bits of address,
+     * all 0 if the bus does not count them
+     */
+    public long[] readsByPage() {
+        return pageReads.clone();
+    }
+
+    /**
+     * @return the number of writes by page of COUNTER_PAGE_BITS bits of address
+     */
+    public long[] writesByPage() {
+        return pageWrites.clone();
+    }
+}
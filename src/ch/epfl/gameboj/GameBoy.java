@@ -2,18 +2,22 @@ package ch.epfl.gameboj;
 
 import static ch.epfl.gameboj.Preconditions.checkArgument;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import ch.epfl.gameboj.component.Joypad;
 import ch.epfl.gameboj.component.Timer;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
 import ch.epfl.gameboj.component.cpu.Cpu;
+import ch.epfl.gameboj.component.cpu.InstructionTrace;
+import ch.epfl.gameboj.component.cpu.Profiler;
 import ch.epfl.gameboj.component.lcd.LcdController;
 import ch.epfl.gameboj.component.memory.BootRomController;
 import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.RamController;
+import ch.epfl.gameboj.metrics.RunEvent;
 
-public final class GameBoy implements AddressMap {
+public final class GameBoy implements AddressMap, Savable {
    
     // FIELDS
     private final Bus bus;
@@ -25,14 +29,35 @@ public final class GameBoy implements AddressMap {
     private final Timer timer;
     private final LcdController lcdController;
     private final Joypad joypad;
+    private final Cartridge cartridge;
+    private final Options options;
+    private final Profiler profiler;
+    private final InstructionTrace trace;
     private long cyclesSimulated;
+    //last cycle at which the timer or the lcdController did something
+    private long lastEventCycle;
+    //time spent in runUntil, not part of the state
+    private long emulationNanos = 0;
     
     //CONSTANTS
     public static final long CYCLES_PER_SECOND = 0b00000000_00010000_00000000_00000000;
     public static final double CYCLES_PER_NANOSECOND = CYCLES_PER_SECOND /1_000_000_000.0 ;
+    //first bytes of a save state ("GBJS") and version of its format, to be 
+    //incremented whenever the state of a component changes
+    private static final int STATE_MAGIC = 0x47424A53;
+    public static final int STATE_VERSION = 3;
     
     // CONSTRUCTORS
     public GameBoy(Cartridge cartridge) {
+        this(cartridge, new Options());
+    }
+
+    /**
+     * @param cartridge : cartridge inserted
+     * @param options : options of the simulation, copied so that changing them
+     * afterwards does not change this game boy
+     */
+    public GameBoy(Cartridge cartridge, Options options) {
       
         //Throws NullPointerException if the argument is null
         Objects.requireNonNull(cartridge);
@@ -47,11 +72,15 @@ public final class GameBoy implements AddressMap {
         copyRamController = new RamController(workRam, ECHO_RAM_START, ECHO_RAM_END);
 
         // instantiates boot rom controller
+        this.cartridge = cartridge;
+        this.options = new Options(options);
         bootRomController = new BootRomController(cartridge);
         
         //instantiates bus and cpu
-        bus = new Bus();
-        cpu = new Cpu();
+        bus = new Bus(options.hasDetailedMetrics());
+        profiler = options.isProfiled() ? new Profiler(cartridge, bootRomController, bus) : null;
+        trace = options.trace();
+        cpu = new Cpu(options, bootRomController, profiler);
         
         //instantiates timer,joypad and lcdController with parameter 
         //cpu to give access for requesting interrupts
@@ -62,10 +91,10 @@ public final class GameBoy implements AddressMap {
 
 
         // attaches components to bus
-        bus.attach(ramController);
-        bus.attach(copyRamController);
-        bus.attach(timer);
-        bus.attach(bootRomController);
+        ramController.attachTo(bus);
+        copyRamController.attachTo(bus);
+        timer.attachTo(bus);
+        bootRomController.attachTo(bus);
         cpu.attachTo(bus);  
         lcdController.attachTo(bus);  
         joypad.attachTo(bus);
@@ -80,16 +109,172 @@ public final class GameBoy implements AddressMap {
     * simulates the game boy from cyclesSimulated to cycles - 1
     * throws IllegalArgumentException in case of the argument is 
     * strictly bigger than the field cyclesSimulated
+    * the components are only cycled at the cycles where they have something 
+    * to do, in the order timer, lcdController, cpu, then the simulation jumps
+    * directly to the next cycle where one of them is busy, the cpu skipping the
+    * iterations of idle loops up to the next cycle where the others are
+    * if the simulation throws an exception, the trace is written to its failure
+    * file before it is rethrown
     */
     public void runUntil(long cycle) {
         checkArgument(cyclesSimulated <= cycle);
-        for (long i = cyclesSimulated; i < cycle; ++i) {
-            timer.cycle(i);
-            lcdController.cycle(i);  
-            cpu.cycle(i);
-            
+        long startNanos = System.nanoTime();
+        long startCycle = cyclesSimulated;
+        long startFrames = lcdController.finishedFrames();
+        long i = cyclesSimulated;
+        try {
+            while (i < cycle) {
+                //each component is asked just before being cycled, so that an interruption 
+                //requested by the timer or the lcdController wakes the cpu up in the same cycle
+                //the timer takes the cycle of its accesses from the cpu, so it is only
+                //cycled when tima overflows
+                if (timer.nextEventCycle(i) == i) {
+                    timer.cycle(i);
+                    lastEventCycle = i;
+                }
+                if (lcdController.nextEventCycle(i) == i) {
+                    lcdController.cycle(i);
+                    lastEventCycle = i;
+                }
+                if (cpu.nextEventCycle(i) == i) {
+                    //the others doing nothing before their next event, the cpu executes
+                    //the instructions of its block of rom which start before it at once,
+                    //the simulation going on from the cycle of the last one
+                    long limit = Math.min(cycle,
+                            Math.min(timer.nextEventCycle(i + 1), lcdController.nextEventCycle(i + 1)));
+                    cpu.cycle(i, limit);
+                    i = cpu.currentCycle();
+                }
+                i = Math.min(cycle, nextEventCycle(i + 1, cycle));
+            }
+        } catch (RuntimeException | Error e) {
+            //the trace then ends with the instructions which led to the failure
+            if (trace != null) {
+                trace.dumpAfter(e);
+            }
+            throw e;
+        }
+        //the registers of the timer are then the ones it has after the last cycle
+        if (cycle > cyclesSimulated) {
+            timer.cycle(cycle - 1);
         }
         cyclesSimulated = cycle;
+        recordRun(startNanos, startCycle, startFrames);
+    }
+
+    /**
+     * adds the time of a run to the emulation time and records its event if
+     * the flight recorder enables it, the event being only allocated then,
+     * apart from runUntil to keep it small
+     * @param startNanos : time at which the run started
+     * @param startCycle : first cycle simulated by the run
+     * @param startFrames : number of images finished before the run
+     */
+    private void recordRun(long startNanos, long startCycle, long startFrames) {
+        long nanos = System.nanoTime() - startNanos;
+        emulationNanos += nanos;
+        if (RunEvent.isRecorded()) {
+            RunEvent event = new RunEvent();
+            event.cycles = cyclesSimulated - startCycle;
+            event.frames = lcdController.finishedFrames() - startFrames;
+            event.runTime = nanos;
+            event.commit();
+        }
+    }
+    
+    /**
+     * @param cycle : cycle from which the next event is searched
+     * @param limit : cycle up to which the simulation runs
+     * @return the first cycle, greater than or equal to cycle, at which one of 
+     * the clocked components has something to do, the search stops as soon as
+     * a component is busy at cycle since nothing can happen earlier
+     */
+    private long nextEventCycle(long cycle, long limit) {
+        long next = timer.nextEventCycle(cycle);
+        if (next == cycle) {
+            return cycle;
+        }
+        next = Math.min(next, lcdController.nextEventCycle(cycle));
+        if (next == cycle) {
+            return cycle;
+        }
+        //nothing the cpu reads changes before the others do something
+        cpu.skipIdleLoop(lastEventCycle, Math.min(next, limit));
+        return Math.min(next, cpu.nextEventCycle(cycle));
+    }
+   
+    /**
+     * @return a game boy in the same state as this one, which then evolves
+     * independently: the memories (work, video, high and cartridge ram, OAM)
+     * are shared copy on write by pages and the rom is shared, so only the 
+     * small state and the frame buffers are copied
+     * the fork must be done by the thread using this game boy, the child can
+     * then be used by any thread, its counters and profile starting from zero
+     */
+    public GameBoy fork() {
+        //a trace being written to a file, the child does not record one
+        GameBoy child = new GameBoy(cartridge.fork(), options.withoutTrace());
+        child.cyclesSimulated = cyclesSimulated;
+        child.lastEventCycle = lastEventCycle;
+        child.workRam.shareContentOf(workRam);
+        child.cpu.forkFrom(cpu);
+        child.timer.forkFrom(timer);
+        child.lcdController.forkFrom(lcdController);
+        child.joypad.forkFrom(joypad);
+        child.bootRomController.forkFrom(bootRomController);
+        return child;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is a header (magic number and version), the cycles, the work 
+     * ram and the states of the components, so it only depends on the cartridge
+     */
+    @Override
+    public int stateSize() {
+        return 2 * Integer.BYTES + 2 * Long.BYTES + workRam.stateSize() + cpu.stateSize()
+                + timer.stateSize() + lcdController.stateSize() + joypad.stateSize()
+                + bootRomController.stateSize();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     * the buffer can be reused from one save to the other, nothing is allocated
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putInt(STATE_MAGIC).putInt(STATE_VERSION)
+              .putLong(cyclesSimulated).putLong(lastEventCycle);
+        workRam.saveState(buffer);
+        cpu.saveState(buffer);
+        timer.saveState(buffer);
+        lcdController.saveState(buffer);
+        joypad.saveState(buffer);
+        bootRomController.saveState(buffer);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     * the state must have been saved by a game boy with the same cartridge,
+     * throws IllegalArgumentException if it is not a save state of this 
+     * version, in which case the game boy is not modified
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        checkArgument(buffer.remaining() >= stateSize());
+        int start = buffer.position();
+        if (buffer.getInt() != STATE_MAGIC || buffer.getInt() != STATE_VERSION) {
+            buffer.position(start);
+            throw new IllegalArgumentException("not a save state of version " + STATE_VERSION);
+        }
+        cyclesSimulated = buffer.getLong();
+        lastEventCycle = buffer.getLong();
+        workRam.loadState(buffer);
+        cpu.loadState(buffer);
+        timer.loadState(buffer);
+        lcdController.loadState(buffer);
+        joypad.loadState(buffer);
+        bootRomController.loadState(buffer);
     }
    
    //Accessors
@@ -97,6 +282,13 @@ public final class GameBoy implements AddressMap {
         return cyclesSimulated;
     }
 
+    /**
+     * @return the time spent simulating the game boy in runUntil, in nanoseconds
+     */
+    public long emulationNanos() {
+        return emulationNanos;
+    }
+
     public Timer timer() {
         return timer;
     }
@@ -108,6 +300,22 @@ public final class GameBoy implements AddressMap {
     public Cpu cpu() {
         return cpu;
     }
+
+    /**
+     * @return the profiler of the instructions executed, null if the game boy
+     * does not profile them
+     */
+    public Profiler profiler() {
+        return profiler;
+    }
+
+    /**
+     * @return the trace of the instructions executed, null if the game boy
+     * does not record one
+     */
+    public InstructionTrace trace() {
+        return trace;
+    }
     
     public LcdController lcdController() {
         return lcdController;
@@ -115,4 +323,116 @@ public final class GameBoy implements AddressMap {
     public Joypad joypad() {
         return joypad;
     }
-}
\ No newline at end of file
+
+    /**
+     * options of a game boy, set one after the other on a new instance, by
+     * default the simulation is as fast as possible: rom instructions are executed
+     * by blocks and nothing is counted, profiled nor traced
+     */
+    public static final class Options {
+        private boolean detailedMetrics = false;
+        private boolean profiled = false;
+        private boolean executesBlocks = true;
+        private boolean aluTables = false;
+        private InstructionTrace trace = null;
+
+        public Options() {}
+
+        /**
+         * @param options : options copied
+         */
+        private Options(Options options) {
+            detailedMetrics = options.detailedMetrics;
+            profiled = options.profiled;
+            executesBlocks = options.executesBlocks;
+            aluTables = options.aluTables;
+            trace = options.trace;
+        }
+
+        /**
+         * the cpu counts the instructions it executes by opcode and the bus its
+         * accesses by page, which slows the simulation down a little, the other
+         * counters being always kept
+         * @return these options
+         */
+        public Options detailedMetrics() {
+            detailedMetrics = true;
+            return this;
+        }
+
+        /**
+         * the instructions executed are profiled, by opcode and by location,
+         * which slows the simulation down noticeably
+         * @return these options
+         * @see Profiler
+         */
+        public Options profiled() {
+            profiled = true;
+            return this;
+        }
+
+        /**
+         * the instructions in the rom range are decoded and executed one at a time
+         * like the ones in ram, instead of decoded once into blocks of instructions
+         * executed at once up to the next event of the other components
+         * @return these options
+         */
+        public Options withoutBlocks() {
+            executesBlocks = false;
+            return this;
+        }
+
+        /**
+         * the 8 bit alu operations are looked up in the tables of AluTable,
+         * built the first time they are used, instead of computed
+         * @return these options
+         * @see ch.epfl.gameboj.component.cpu.AluTable
+         */
+        public Options aluTables() {
+            aluTables = true;
+            return this;
+        }
+
+        /**
+         * @param trace : trace recording the last instructions executed, written
+         * to its failure file if the simulation throws an exception
+         * @return these options
+         */
+        public Options trace(InstructionTrace trace) {
+            this.trace = Objects.requireNonNull(trace);
+            return this;
+        }
+
+        public boolean hasDetailedMetrics() {
+            return detailedMetrics;
+        }
+
+        public boolean isProfiled() {
+            return profiled;
+        }
+
+        public boolean executesBlocks() {
+            return executesBlocks;
+        }
+
+        public boolean usesAluTables() {
+            return aluTables;
+        }
+
+        /**
+         * @return the trace of the instructions executed, null if none is recorded
+         */
+        public InstructionTrace trace() {
+            return trace;
+        }
+
+        /**
+         * @return a copy of these options without the trace
+         */
+        private Options withoutTrace() {
+            Options options = new Options(this);
+            options.trace = null;
+            return options;
+        }
+    }
+}
@@ -2,12 +2,13 @@ package ch.epfl.gameboj;
 
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import ch.epfl.gameboj.bits.Bit;
 import ch.epfl.gameboj.bits.Bits;
 
-public final class RegisterFile <E extends Register> {
+public final class RegisterFile <E extends Register> implements Savable {
     //FIELDS
     private final byte[] collection; 
     
@@ -56,4 +57,36 @@ public final class RegisterFile <E extends Register> {
         int bits = collection[reg.index()];
         collection[reg.index()] = (byte)Bits.set(bits, index, newValue);
     } 
+
+    /**
+     * @param source : register file of the same registers, whose values are copied
+     */
+    public void copyFrom(RegisterFile<E> source) {
+        System.arraycopy(source.collection, 0, collection, 0, collection.length);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is the value of every register
+     */
+    @Override
+    public int stateSize() {
+        return collection.length;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put(collection);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        buffer.get(collection);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+package ch.epfl.gameboj;
+
+import static ch.epfl.gameboj.Preconditions.checkArgument;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+/**
+ * records the state of a game boy at every frame in a bounded ring, so that
+ * the game boy can be brought back to any of the last frames recorded
+ *
+ * every keyframeInterval frames the whole state is kept as a keyframe, the
+ * other frames only keep their difference with the previous keyframe: the
+ * xor of both states, in which the runs of zeros (bytes that did not change)
+ * are replaced by their length, so restoring a frame costs one copy of its
+ * keyframe and one replay of its difference whatever its age
+ *
+ * the arrays of the ring are reused from one lap to the other, recording only
+ * allocates when a difference is bigger than all the ones kept before in its entry
+ */
+public final class RewindBuffer {
+
+    //CONSTANTS
+    //shorter runs of unchanged bytes are kept in the literal bytes
+    private static final int MIN_ZERO_RUN = 4;
+
+    //FIELDS
+    private final GameBoy gameBoy;
+    private final int capacity;
+    private final int keyframeInterval;
+    private final int stateSize;
+    //state just saved or being restored
+    private final byte[] state;
+    private final ByteBuffer stateBuffer;
+    //encoded difference of the last frame recorded, at most one run header per
+    //MIN_ZERO_RUN + 1 bytes
+    private final byte[] delta;
+    //keyframe number k is in keyframes[k % keyframes.length], there are enough
+    //of them for every frame of the ring to keep its keyframe
+    private final byte[][] keyframes;
+    //difference of frame number i with its keyframe in entries[i % capacity],
+    //empty for keyframes
+    private final byte[][] entries;
+    private final int[] entryLengths;
+    //number of the next frame recorded, frames being numbered from 0 on, and 
+    //of the oldest one which can be restored
+    private long recorded = 0;
+    private long oldest = 0;
+
+    /**
+     * @param gameBoy : game boy whose states are recorded
+     * @param capacity : number of frames kept
+     * @param keyframeInterval : number of frames between two keyframes
+     * throws IllegalArgumentException if capacity or keyframeInterval is not
+     * strictly positive
+     */
+    public RewindBuffer(GameBoy gameBoy, int capacity, int keyframeInterval) {
+        checkArgument(capacity > 0 && keyframeInterval > 0);
+        this.gameBoy = Objects.requireNonNull(gameBoy);
+        this.capacity = capacity;
+        this.keyframeInterval = keyframeInterval;
+        stateSize = gameBoy.stateSize();
+        state = new byte[stateSize];
+        stateBuffer = ByteBuffer.wrap(state);
+        delta = new byte[stateSize + 2 * Integer.BYTES * (stateSize / (MIN_ZERO_RUN + 1) + 2)];
+        keyframes = new byte[capacity / keyframeInterval + 2][];
+        entries = new byte[capacity][];
+        entryLengths = new int[capacity];
+    }
+
+    /**
+     * records the current state of the game boy as the newest frame, the
+     * oldest one being forgotten if the ring is full
+     */
+    public void record() {
+        stateBuffer.clear();
+        gameBoy.saveState(stateBuffer);
+
+        int entry = (int) (recorded % capacity);
+        byte[] keyframe = keyframe(recorded);
+        if (recorded % keyframeInterval == 0) {
+            System.arraycopy(state, 0, keyframe, 0, stateSize);
+            entryLengths[entry] = 0;
+        } else {
+            int length = encode(keyframe, state, delta);
+            if (entries[entry] == null || entries[entry].length < length) {
+                entries[entry] = new byte[Math.max(length, entries[entry] == null ? 0 : entries[entry].length * 3 / 2)];
+            }
+            System.arraycopy(delta, 0, entries[entry], 0, length);
+            entryLengths[entry] = length;
+        }
+        ++recorded;
+        oldest = Math.max(oldest, recorded - capacity);
+    }
+
+    /**
+     * @return the number of frames that can be restored
+     */
+    public int size() {
+        return (int) (recorded - oldest);
+    }
+
+    /**
+     * brings the game boy back to a frame recorded, the frames recorded after
+     * it are forgotten so the next one recorded follows it, the entries they
+     * used not holding the older frames anymore
+     * @param age : number of frames recorded after the one restored, 0 for
+     * the last one
+     * throws IndexOutOfBoundsException if it is not between 0 (included) and size (excluded)
+     */
+    public void rewind(int age) {
+        Objects.checkIndex(age, size());
+        long frame = recorded - 1 - age;
+        System.arraycopy(keyframe(frame), 0, state, 0, stateSize);
+        int entry = (int) (frame % capacity);
+        decode(entries[entry], entryLengths[entry], state);
+
+        stateBuffer.clear();
+        gameBoy.loadState(stateBuffer);
+        recorded = frame + 1;
+    }
+
+    /**
+     * @return the number of bytes used by the keyframes and the differences
+     */
+    public long memoryUsage() {
+        long bytes = 0;
+        for (byte[] keyframe : keyframes) {
+            bytes += keyframe == null ? 0 : keyframe.length;
+        }
+        for (byte[] entry : entries) {
+            bytes += entry == null ? 0 : entry.length;
+        }
+        return bytes;
+    }
+
+    /**
+     * @param frame : number of a frame
+     * @return the array of the keyframe of that frame, allocated the first time
+     */
+    private byte[] keyframe(long frame) {
+        int index = (int) (frame / keyframeInterval % keyframes.length);
+        if (keyframes[index] == null) {
+            keyframes[index] = new byte[stateSize];
+        }
+        return keyframes[index];
+    }
+
+    /**
+     * @param keyframe : state of reference
+     * @param state : state to encode, of the same size
+     * @param destination : array receiving the difference, made of runs: the
+     * number of unchanged bytes, the number of changed bytes, then the xor of
+     * those bytes with the keyframe
+     * @return the number of bytes of the difference
+     */
+    private static int encode(byte[] keyframe, byte[] state, byte[] destination) {
+        int length = 0;
+        int i = 0;
+        while (i < state.length) {
+            int zeroStart = i;
+            while (i < state.length && state[i] == keyframe[i]) {
+                ++i;
+            }
+            int literalStart = i;
+            //the literal bytes go on until a long enough run of unchanged bytes
+            int zeros = 0;
+            while (i < state.length && zeros < MIN_ZERO_RUN) {
+                zeros = state[i] == keyframe[i] ? zeros + 1 : 0;
+                ++i;
+            }
+            int literalEnd = zeros == MIN_ZERO_RUN ? i - zeros : i;
+            i = literalEnd;
+
+            length = putVarInt(destination, length, literalStart - zeroStart);
+            length = putVarInt(destination, length, literalEnd - literalStart);
+            for (int j = literalStart; j < literalEnd; ++j) {
+                destination[length++] = (byte) (state[j] ^ keyframe[j]);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @param delta : difference encoded by encode
+     * @param length : number of bytes of the difference
+     * @param state : copy of the keyframe, which becomes the state encoded
+     */
+    private static void decode(byte[] delta, int length, byte[] state) {
+        int position = 0;
+        int i = 0;
+        while (position < length) {
+            int zeros = getVarInt(delta, position);
+            position += varIntLength(zeros);
+            int literals = getVarInt(delta, position);
+            position += varIntLength(literals);
+            i += zeros;
+            for (int end = i + literals; i < end; ++i) {
+                state[i] ^= delta[position++];
+            }
+        }
+    }
+
+    /**
+     * @param array : array receiving the number
+     * @param position : index of its first byte
+     * @param value : positive number written 7 bits per byte, least significant
+     * first, the msb of a byte telling whether another one follows
+     * @return the index following the number
+     */
+    private static int putVarInt(byte[] array, int position, int value) {
+        while (value >= 0x80) {
+            array[position++] = (byte) (value | 0x80);
+            value >>>= 7;
+        }
+        array[position++] = (byte) value;
+        return position;
+    }
+
+    /**
+     * @param array : array containing the number
+     * @param position : index of its first byte
+     * @return the number written by putVarInt
+     */
+    private static int getVarInt(byte[] array, int position) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = array[position++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * @param value : positive number
+     * @return the number of bytes putVarInt writes for it
+     */
+    private static int varIntLength(int value) {
+        int length = 1;
+        while (value >= 0x80) {
+            value >>>= 7;
+            ++length;
+        }
+        return length;
+    }
+}
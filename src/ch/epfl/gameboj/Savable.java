@@ -0,0 +1,29 @@
+package ch.epfl.gameboj;
+
+import java.nio.ByteBuffer;
+
+/**
+ * part of the game boy whose state can be written in a buffer and read back,
+ * in a binary format of its own, for the save states of the game boy
+ */
+public interface Savable {
+
+    /**
+     * @return the number of bytes written by saveState
+     */
+    int stateSize();
+
+    /**
+     * writes the state at the position of buffer, which moves after it
+     * @param buffer : buffer receiving the state
+     * throws BufferOverflowException if the buffer has less than stateSize bytes remaining
+     */
+    void saveState(ByteBuffer buffer);
+
+    /**
+     * reads a state written by saveState at the position of buffer, which moves after it
+     * @param buffer : buffer containing the state
+     * throws BufferUnderflowException if the buffer has less than stateSize bytes remaining
+     */
+    void loadState(ByteBuffer buffer);
+}
@@ -9,6 +9,19 @@ public interface Clocked {
      * @param cycle 
      */
     abstract void cycle(long cycle);
+    
+    /**
+     * gives the first cycle, greater than or equal to cycle, at which the component 
+     * has something to do, so that the scheduler can skip the cycles before it;
+     * calling cycle at a skipped cycle must do nothing
+     * @param cycle : cycle from which the next event is searched
+     * @return the cycle of the next event, Long.MAX_VALUE if the component waits
+     * for something external (an interruption, a write on a register...), by default
+     * the component is considered busy at every cycle 
+     */
+    default long nextEventCycle(long cycle) {
+        return cycle;
+    }
         
     
 }
@@ -16,6 +16,17 @@ public interface Component {
     void write(int address,int data); 
     
     
+    //reads length bytes from address on and puts them in destination from offset,
+    //addresses without data being read as 0xFF like on the bus, components
+    //backed by memory override it with a block copy
+    default void readBlock(int address, byte[] destination, int offset, int length) {
+        for (int i = 0; i < length; ++i) {
+            int data = read(address + i);
+            destination[offset + i] = (byte) (data == NO_DATA ? 0xFF : data);
+        }
+    }
+    
+    
     //attaches the component to bus by calling attach method of bus 
     default void attachTo(Bus bus){
         bus.attach(this); 
@@ -4,12 +4,16 @@ import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 import static java.util.Objects.requireNonNull;
 
+import java.nio.ByteBuffer;
+
 import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Savable;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
 
-public final class Joypad implements Component {
+public final class Joypad implements Component, Savable {
 
     //enumeration Key represents the GameBoy keys
     //they are sorted such a way that first 2 bits of their ordinal 
@@ -87,6 +91,15 @@ public final class Joypad implements Component {
         }
     }
 
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#attachTo(ch.epfl.gameboj.Bus)
+     * attaches the joypad only over its register P1
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, AddressMap.REG_P1, AddressMap.REG_P1 + 1);
+    }
+
     /**
      * @param key: GameBoy key that is pressed
      * updating the appropriate line according to the ordinal 
@@ -126,6 +139,42 @@ public final class Joypad implements Component {
         requestInterrupt();
     }
     
+    /**
+     * @param parent : joypad whose state is copied, p1 and the keys pressed
+     */
+    public void forkFrom(Joypad parent) {
+        p1 = parent.p1;
+        line0 = parent.line0;
+        line1 = parent.line1;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is p1 and the two lines of keys
+     */
+    @Override
+    public int stateSize() {
+        return 3;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) p1).put((byte) line0).put((byte) line1);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        p1 = Byte.toUnsignedInt(buffer.get());
+        line0 = Byte.toUnsignedInt(buffer.get());
+        line1 = Byte.toUnsignedInt(buffer.get());
+    }
+
     /**
      * Requests interrupt from the cpu, checking the 4th and
      * 5th bit of p1
@@ -1,21 +1,34 @@
 package ch.epfl.gameboj.component;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Preconditions;
+import ch.epfl.gameboj.Savable;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
 
 
-public final class Timer implements Component, Clocked {
+public final class Timer implements Component, Clocked, Savable {
+    //CONSTANTS
+    private static final int PRIMARY_TIMER_STEP = 4;
+    private static final int TIMA_OVERFLOW = 0x100;
+
     //FIELDS
     private int primaryTimer;
     private int tima;   //secondary timer
     private int tac;
     private int tma;
     private Cpu cpu;
+    //the timer is lazy: primaryTimer and tima are the values they had at the end
+    //of syncedCycle, and are only brought to the current cycle when accessed,
+    //the one of the instruction of the cpu accessing them
+    private long syncedCycle = -1;
+    //cycle at which tima overflows next, Long.MAX_VALUE if the timer is disabled
+    private long overflowCycle = Long.MAX_VALUE;
 
     //CONSTRUCTORS
     /**
@@ -32,13 +45,78 @@ public final class Timer implements Component, Clocked {
 
     /*
      * @see ch.epfl.gameboj.component.Clocked#cycle(long)
-     * updates the timer 
+     * brings the registers to the end of cycle, the timer only needs to be cycled
+     * when tima overflows since the interruption is requested then, its registers
+     * being otherwise computed when accessed
      */
     @Override
     public void cycle(long cycle) {
-        boolean s0 = state();
-        primaryTimer = Bits.clip(16, primaryTimer + 4);   
-        incIfChange(s0);
+        sync(cycle);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Clocked#nextEventCycle(long)
+     * the timer only has something to do when tima overflows
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        return Math.max(cycle, overflowCycle);
+    }
+
+    /**
+     * brings primaryTimer and tima to the values they have at the end of
+     * cycle, if they are not there yet: during each cycle primaryTimer is 
+     * incremented by 4 and tima is incremented on each falling edge of the state,
+     * so as many times as the bit of primaryTimer selected by tac goes from 1 to 0
+     * @param cycle : cycle at the end of which the registers are computed
+     */
+    private void sync(long cycle) {
+        long cycles = cycle - syncedCycle;
+        if (cycles <= 0) {
+            return;
+        }
+        long increments = 0;
+        if (Bits.test(tac, 2)) {
+            long period = 1L << (stateIndex() + 1);
+            long start = primaryTimer;
+            long end = start + PRIMARY_TIMER_STEP * cycles;
+            increments = end / period - start / period;
+        }
+        primaryTimer = (int) ((primaryTimer + PRIMARY_TIMER_STEP * cycles) & 0xFFFF);
+        syncedCycle = cycle;
+        if (increments > 0) {
+            for (long i = 0; i < increments; ++i) {
+                incrementTima();
+            }
+            computeOverflowCycle();
+        }
+    }
+
+    /**
+     * computes overflowCycle, primaryTimer and tima being synced: the overflow
+     * happens on the falling edge bringing tima over 0xFF
+     */
+    private void computeOverflowCycle() {
+        if (!Bits.test(tac, 2)) {
+            overflowCycle = Long.MAX_VALUE;
+        } else {
+            long period = 1L << (stateIndex() + 1);
+            long overflowValue = (primaryTimer / period + TIMA_OVERFLOW - tima) * period;
+            overflowCycle = syncedCycle + (overflowValue - primaryTimer) / PRIMARY_TIMER_STEP;
+        }
+    }
+
+    /**
+     * increments tima, requesting an interruption and reloading tma when it overflows
+     */
+    private void incrementTima() {
+        if (tima == 0xFF) {
+            cpu.requestInterrupt(Interrupt.TIMER);
+            tima = tma;
+            computeOverflowCycle();
+        } else {
+            ++tima;
+        }
     }
 
     /**
@@ -48,6 +126,7 @@ public final class Timer implements Component, Clocked {
     @Override
     public int read(int address) {
         address = Preconditions.checkBits16(address);
+        sync(cpu.currentCycle());
         if (address == AddressMap.REG_DIV) {
             return Bits.extract(primaryTimer, 8, 8);
         }
@@ -74,6 +153,7 @@ public final class Timer implements Component, Clocked {
     public void write(int address, int data) {
         address = Preconditions.checkBits16(address);
         data = Preconditions.checkBits8(data);
+        sync(cpu.currentCycle());
         if (address == AddressMap.REG_DIV) {
             boolean s0 = state();
             primaryTimer = 0;
@@ -92,7 +172,61 @@ public final class Timer implements Component, Clocked {
             tac = data;
             incIfChange(s0);
         }
+        computeOverflowCycle();
+    }
 
+    /**
+     * @param parent : timer whose state is copied, registers and cycles
+     */
+    public void forkFrom(Timer parent) {
+        primaryTimer = parent.primaryTimer;
+        tima = parent.tima;
+        tac = parent.tac;
+        tma = parent.tma;
+        syncedCycle = parent.syncedCycle;
+        overflowCycle = parent.overflowCycle;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is the registers with the cycles of the lazy computation, 
+     * saved as they are since syncing does not change what the timer does
+     */
+    @Override
+    public int stateSize() {
+        return Short.BYTES + 3 + 2 * Long.BYTES;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putShort((short) primaryTimer)
+              .put((byte) tima).put((byte) tac).put((byte) tma)
+              .putLong(syncedCycle).putLong(overflowCycle);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        primaryTimer = Short.toUnsignedInt(buffer.getShort());
+        tima = Byte.toUnsignedInt(buffer.get());
+        tac = Byte.toUnsignedInt(buffer.get());
+        tma = Byte.toUnsignedInt(buffer.get());
+        syncedCycle = buffer.getLong();
+        overflowCycle = buffer.getLong();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#attachTo(ch.epfl.gameboj.Bus)
+     * attaches the timer only over its registers, from DIV to TAC
+     */
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, AddressMap.REG_DIV, AddressMap.REG_TAC + 1);
     }
 
     /**
@@ -101,6 +235,13 @@ public final class Timer implements Component, Clocked {
      * and the appropriate index(see table in the instructions) of the primary timer
      */
     private boolean state() {
+       return Bits.test(primaryTimer, stateIndex()) && Bits.test(tac, 2);
+    }
+
+    /**
+     * @return the index of the bit of the primary timer selected by tac
+     */
+    private int stateIndex() {
        int index = 0;
        int indexChooser = Bits.clip(2, tac);       
        if(indexChooser == 0) {
@@ -109,7 +250,7 @@ public final class Timer implements Component, Clocked {
        else {
            index = 2 * indexChooser + 1; 
        }
-       return Bits.test(primaryTimer, index) && Bits.test(tac, 2);
+       return index;
     }
     
     /**
@@ -119,13 +260,7 @@ public final class Timer implements Component, Clocked {
      */
     private void incIfChange(boolean previousState) {
         if (previousState && !state()) {
-            if (tima == 0xFF) {
-                cpu.requestInterrupt(Interrupt.TIMER);
-                tima = tma;
-            } else {
-                ++tima;
-
-            }
+            incrementTima();
         }
 
     }
@@ -1,15 +1,19 @@
 package ch.epfl.gameboj.component.cartridge;
 
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Savable;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.memory.Rom;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
+import static ch.epfl.gameboj.Preconditions.checkArgument;
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
-public final class Cartridge implements Component {
+public final class Cartridge implements Component, Savable {
 
     
 
@@ -18,12 +22,14 @@ public final class Cartridge implements Component {
     private final static int minNumberForTypeMBC1 = 1;
     private final static int maxNumberForTypeMBC1 = 3;
     private final Component mbc;
+    private final Rom rom;
 
     private final static int mbc1RamSizeArray[] = {0, 2048, 8192, 32768} ;  
  
     
-    private Cartridge(Component mbc) {   
+    private Cartridge(Component mbc, Rom rom) {   
             this.mbc = mbc;
+            this.rom = rom;
     }
     
     /**
@@ -43,18 +49,30 @@ public final class Cartridge implements Component {
         cartridgeArray = stream.readAllBytes();                                           
         stream.close();
         
-        checkBits8(cartridgeArray[TYPE_CONTROL_BYTE]);
+        //the array is not referenced elsewhere so the rom does not need a copy
+        return ofImage(ByteBuffer.wrap(cartridgeArray));
+    }
+
+    /**
+     * @param image : content of the rom file, not copied, which must not be 
+     * modified afterwards, so it can be shared by the cartridges of many game boys
+     * @return a Cartridge by passing through Rom and (MBC0 or MBC1)
+     * type of mbc is determined by the type control byte
+     * @see RomRegistry
+     */
+    public static Cartridge ofImage(ByteBuffer image) {
+        Rom rom = new Rom(image);
+        int type = rom.read(TYPE_CONTROL_BYTE);
   
-        if (cartridgeArray[TYPE_CONTROL_BYTE] == 0) {
-            return new Cartridge(new MBC0(new Rom(cartridgeArray)));
+        if (type == 0) {
+            return new Cartridge(new MBC0(rom), rom);
 
-        } else if (cartridgeArray[TYPE_CONTROL_BYTE] >= minNumberForTypeMBC1
-                && cartridgeArray[TYPE_CONTROL_BYTE] <= maxNumberForTypeMBC1) {
+        } else if (type >= minNumberForTypeMBC1 && type <= maxNumberForTypeMBC1) {
             
             //since some mbc1 types has a ram, their size is determined
             //and then given as a second parameter to the MBC1 constructor
-            int ramSize = mbc1RamSizeArray[cartridgeArray[SIZE_CONTROL_BYTE]];
-            return new Cartridge(new MBC1(new Rom(cartridgeArray), ramSize));
+            int ramSize = mbc1RamSizeArray[rom.read(SIZE_CONTROL_BYTE)];
+            return new Cartridge(new MBC1(rom, ramSize), rom);
         }
         
         throw new IllegalArgumentException("Unimplemented MBC Type");
@@ -84,4 +102,69 @@ public final class Cartridge implements Component {
         
     }
 
+    /**
+     * @return a cartridge in the same state, sharing the rom and, copy on 
+     * write, the ram of this one, to be called by the thread using this one
+     */
+    public Cartridge fork() {
+        //MBC0 has no state so it can be shared
+        return new Cartridge(mbc instanceof MBC1 ? ((MBC1) mbc).fork() : mbc, rom);
+    }
+
+    /**
+     * @param address : address in the rom range (0x0000 to 0x7FFF)
+     * @return the index in the rom of the byte read at address with the banks
+     * currently selected, the bank being the index divided by 0x4000
+     * throws IllegalArgumentException if the address is not in the rom range
+     */
+    public int romOffset(int address) {
+        checkArgument(address >= AddressMap.CARTRIDGE_ROM_START && address < AddressMap.CARTRIDGE_ROM_END);
+        //MBC0 has no bank to select
+        return mbc instanceof MBC1 ? ((MBC1) mbc).romOffset(address) : address;
+    }
+
+    /**
+     * @return the size of the rom in bytes
+     */
+    public int romSize() {
+        return rom.size();
+    }
+
+    /**
+     * @param offset : index of a byte in the rom, whatever the bank selected
+     * @return the byte, throws IndexOutOfBoundsException if there is none
+     */
+    public int readRom(int offset) {
+        return rom.read(offset);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is the one of MBC1, MBC0 having none
+     */
+    @Override
+    public int stateSize() {
+        return mbc instanceof Savable ? ((Savable) mbc).stateSize() : 0;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        if (mbc instanceof Savable) {
+            ((Savable) mbc).saveState(buffer);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        if (mbc instanceof Savable) {
+            ((Savable) mbc).loadState(buffer);
+        }
+    }
+
 }
@@ -3,12 +3,15 @@ package ch.epfl.gameboj.component.cartridge;
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
+import java.nio.ByteBuffer;
+
+import ch.epfl.gameboj.Savable;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.memory.Ram;
 import ch.epfl.gameboj.component.memory.Rom;
 
-public final class MBC1 implements Component {
+public final class MBC1 implements Component, Savable {
     private static final int RAM_ENABLE = 0xA;
 
     private enum Mode { MODE_0, MODE_1 };
@@ -36,10 +39,8 @@ public final class MBC1 implements Component {
 
     public int read(int address) {
         switch (Bits.extract(checkBits16(address), 13, 3)) {
-        case 0: case 1:
-            return rom.read(romAddress(msb2(), 0, address));
-        case 2: case 3:
-            return rom.read(romAddress(ramRom2, romLsb5, address));
+        case 0: case 1: case 2: case 3:
+            return rom.read(romOffset(address));
         case 5:
             return ramEnabled ? ram.read(ramAddress(address)) : 0xFF;
         default:
@@ -70,6 +71,17 @@ public final class MBC1 implements Component {
         }
     }
 
+    /**
+     * @param address : address in the rom range (0x0000 to 0x7FFF)
+     * @return the index in the rom of the byte read at address with the 
+     * current banks
+     */
+    int romOffset(int address) {
+        return Bits.test(address, 14) 
+                ? romAddress(ramRom2, romLsb5, address) 
+                : romAddress(msb2(), 0, address);
+    }
+
     private int msb2() {
         switch (mode) {
         case MODE_0: return 0;
@@ -78,6 +90,37 @@ public final class MBC1 implements Component {
         }
     }
 
+    MBC1 fork() {
+        MBC1 child = new MBC1(rom, ram.size());
+        child.ramEnabled = ramEnabled;
+        child.mode = mode;
+        child.romLsb5 = romLsb5;
+        child.ramRom2 = ramRom2;
+        child.ram.shareContentOf(ram);
+        return child;
+    }
+
+    @Override
+    public int stateSize() {
+        return 4 + ram.stateSize();
+    }
+
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (ramEnabled ? 1 : 0)).put((byte) mode.ordinal())
+              .put((byte) romLsb5).put((byte) ramRom2);
+        ram.saveState(buffer);
+    }
+
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        ramEnabled = buffer.get() != 0;
+        mode = Mode.values()[buffer.get()];
+        romLsb5 = buffer.get();
+        ramRom2 = buffer.get();
+        ram.loadState(buffer);
+    }
+
     private int romAddress(int b_20_19, int b_18_14, int b_13_0) {
         return ((b_20_19 << 19) | (b_18_14 << 14) | Bits.clip(14, b_13_0)) & romMask;
     }
@@ -0,0 +1,95 @@
+package ch.epfl.gameboj.component.cartridge;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * rom images shared by all the cartridges built from them: an image is kept
+ * once per content, whatever the file or array it comes from, and only read,
+ * so a game boy only holds its mutable state of its own
+ *
+ * the registry can be used by many threads at once
+ */
+public final class RomRegistry {
+
+    //CONSTANTS
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    //FIELDS
+    //read only images, by hexadecimal digest of their content
+    private final ConcurrentMap<String, ByteBuffer> images = new ConcurrentHashMap<>();
+
+    /**
+     * @param file : rom file
+     * @param mapped : whether the file is mapped in memory rather than read
+     * in the heap, in which case its content must not change while it is used
+     * @return the image of the registry with the content of the file,
+     * registered first if there is none
+     * @throws IOException if the file can not be read
+     */
+    public ByteBuffer load(Path file, boolean mapped) throws IOException {
+        if (!mapped) {
+            return register(Files.readAllBytes(file));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            //the mapping stays valid once the channel is closed
+            return register(channel.map(MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * @param content : content of a rom file, owned by the registry afterwards
+     * so it must not be modified
+     * @return the image of the registry with that content, registered first if
+     * there is none
+     */
+    public ByteBuffer register(byte[] content) {
+        return register(ByteBuffer.wrap(content));
+    }
+
+    /**
+     * @param content : content of a rom file, from its position to its limit
+     * @return the image of the registry with that content
+     */
+    private ByteBuffer register(ByteBuffer content) {
+        ByteBuffer image = content.slice().asReadOnlyBuffer();
+        ByteBuffer registered = images.putIfAbsent(digest(image), image);
+        return (registered == null ? image : registered).duplicate();
+    }
+
+    /**
+     * @return the number of different images in the registry
+     */
+    public int size() {
+        return images.size();
+    }
+
+    /**
+     * @param image : content of a rom file
+     * @return the hexadecimal digest of the content
+     */
+    private static String digest(ByteBuffer image) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            //every java platform has to support it
+            throw new Error(e);
+        }
+        digest.update(image.duplicate());
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
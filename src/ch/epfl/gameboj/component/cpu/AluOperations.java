@@ -0,0 +1,232 @@
+package ch.epfl.gameboj.component.cpu;
+
+import ch.epfl.gameboj.component.cpu.Alu.RotDir;
+
+/**
+ * 8 bit operations of the alu executed by the instructions of a cpu, either
+ * computed by Alu or looked up in the tables of AluTable, both giving the same
+ * packed values and flags
+ */
+interface AluOperations {
+
+    /**
+     * operations computed at each call by Alu
+     */
+    AluOperations COMPUTED = new AluOperations() {
+        @Override
+        public int add(int l, int r, boolean c0) {
+            return Alu.add(l, r, c0);
+        }
+
+        @Override
+        public int add(int l, int r) {
+            return Alu.add(l, r);
+        }
+
+        @Override
+        public int sub(int l, int r, boolean b0) {
+            return Alu.sub(l, r, b0);
+        }
+
+        @Override
+        public int sub(int l, int r) {
+            return Alu.sub(l, r);
+        }
+
+        @Override
+        public int bcdAdjust(int v, boolean n, boolean h, boolean c) {
+            return Alu.bcdAdjust(v, n, h, c);
+        }
+
+        @Override
+        public int and(int l, int r) {
+            return Alu.and(l, r);
+        }
+
+        @Override
+        public int or(int l, int r) {
+            return Alu.or(l, r);
+        }
+
+        @Override
+        public int xor(int l, int r) {
+            return Alu.xor(l, r);
+        }
+
+        @Override
+        public int rotate(RotDir d, int v) {
+            return Alu.rotate(d, v);
+        }
+
+        @Override
+        public int rotate(RotDir d, int v, boolean c) {
+            return Alu.rotate(d, v, c);
+        }
+
+        @Override
+        public int swap(int v) {
+            return Alu.swap(v);
+        }
+
+        @Override
+        public int shiftLeft(int v) {
+            return Alu.shiftLeft(v);
+        }
+
+        @Override
+        public int shiftRightA(int v) {
+            return Alu.shiftRightA(v);
+        }
+
+        @Override
+        public int shiftRightL(int v) {
+            return Alu.shiftRightL(v);
+        }
+    };
+
+    /**
+     * operations looked up in the tables of AluTable, which are only built 
+     * once a cpu uses them
+     */
+    AluOperations TABLE = new AluOperations() {
+        @Override
+        public int add(int l, int r, boolean c0) {
+            return AluTable.add(l, r, c0);
+        }
+
+        @Override
+        public int add(int l, int r) {
+            return AluTable.add(l, r);
+        }
+
+        @Override
+        public int sub(int l, int r, boolean b0) {
+            return AluTable.sub(l, r, b0);
+        }
+
+        @Override
+        public int sub(int l, int r) {
+            return AluTable.sub(l, r);
+        }
+
+        @Override
+        public int bcdAdjust(int v, boolean n, boolean h, boolean c) {
+            return AluTable.bcdAdjust(v, n, h, c);
+        }
+
+        @Override
+        public int and(int l, int r) {
+            return AluTable.and(l, r);
+        }
+
+        @Override
+        public int or(int l, int r) {
+            return AluTable.or(l, r);
+        }
+
+        @Override
+        public int xor(int l, int r) {
+            return AluTable.xor(l, r);
+        }
+
+        @Override
+        public int rotate(RotDir d, int v) {
+            return AluTable.rotate(d, v);
+        }
+
+        @Override
+        public int rotate(RotDir d, int v, boolean c) {
+            return AluTable.rotate(d, v, c);
+        }
+
+        @Override
+        public int swap(int v) {
+            return AluTable.swap(v);
+        }
+
+        @Override
+        public int shiftLeft(int v) {
+            return AluTable.shiftLeft(v);
+        }
+
+        @Override
+        public int shiftRightA(int v) {
+            return AluTable.shiftRightA(v);
+        }
+
+        @Override
+        public int shiftRightL(int v) {
+            return AluTable.shiftRightL(v);
+        }
+    };
+
+    /**
+     * @see Alu#add(int, int, boolean)
+     */
+    int add(int l, int r, boolean c0);
+
+    /**
+     * @see Alu#add(int, int)
+     */
+    int add(int l, int r);
+
+    /**
+     * @see Alu#sub(int, int, boolean)
+     */
+    int sub(int l, int r, boolean b0);
+
+    /**
+     * @see Alu#sub(int, int)
+     */
+    int sub(int l, int r);
+
+    /**
+     * @see Alu#bcdAdjust(int, boolean, boolean, boolean)
+     */
+    int bcdAdjust(int v, boolean n, boolean h, boolean c);
+
+    /**
+     * @see Alu#and(int, int)
+     */
+    int and(int l, int r);
+
+    /**
+     * @see Alu#or(int, int)
+     */
+    int or(int l, int r);
+
+    /**
+     * @see Alu#xor(int, int)
+     */
+    int xor(int l, int r);
+
+    /**
+     * @see Alu#rotate(RotDir, int)
+     */
+    int rotate(RotDir d, int v);
+
+    /**
+     * @see Alu#rotate(RotDir, int, boolean)
+     */
+    int rotate(RotDir d, int v, boolean c);
+
+    /**
+     * @see Alu#swap(int)
+     */
+    int swap(int v);
+
+    /**
+     * @see Alu#shiftLeft(int)
+     */
+    int shiftLeft(int v);
+
+    /**
+     * @see Alu#shiftRightA(int)
+     */
+    int shiftRightA(int v);
+
+    /**
+     * @see Alu#shiftRightL(int)
+     */
+    int shiftRightL(int v);
+}
@@ -0,0 +1,171 @@
+package ch.epfl.gameboj.component.cpu;
+
+import static ch.epfl.gameboj.Preconditions.checkBits8;
+
+import ch.epfl.gameboj.component.cpu.Alu.RotDir;
+
+/**
+ * table driven version of the 8 bit operations of Alu: every packed
+ * value/flags result is computed once by Alu when the class is initialized,
+ * then each operation is a single array load, results being identical to Alu's
+ * a cpu uses it instead of Alu when built with GameBoy.Options.aluTables
+ */
+public final class AluTable {
+
+    //CONSTANTS
+    private static final int VALUES = 256;
+    //flag masks (C, H, N) used to index the tables of bcdAdjust
+    private static final int C_INDEX = 1, H_INDEX = 2, N_INDEX = 4;
+
+    //packed results of add and sub, indexed by carry << 16 | l << 8 | r
+    //(packed values fit in 16 bits)
+    private static final char[] ADD = new char[2 * VALUES * VALUES];
+    private static final char[] SUB = new char[2 * VALUES * VALUES];
+    //packed results of bcdAdjust, indexed by (n, h, c) << 8 | v
+    private static final char[] BCD_ADJUST = new char[8 * VALUES];
+    //packed results of the unary operations, indexed by v, or by c << 8 | v
+    //for the rotations through the carry
+    private static final char[] ROTATE_LEFT = new char[VALUES];
+    private static final char[] ROTATE_RIGHT = new char[VALUES];
+    private static final char[] ROTATE_LEFT_CARRY = new char[2 * VALUES];
+    private static final char[] ROTATE_RIGHT_CARRY = new char[2 * VALUES];
+    private static final char[] SWAP = new char[VALUES];
+    private static final char[] SHIFT_LEFT = new char[VALUES];
+    private static final char[] SHIFT_RIGHT_A = new char[VALUES];
+    private static final char[] SHIFT_RIGHT_L = new char[VALUES];
+    //packed results of and, or and xor indexed by the 8 bit result, the
+    //flags only depending on it
+    private static final char[] AND = new char[VALUES];
+    private static final char[] OR_XOR = new char[VALUES];
+
+    static {
+        for (int l = 0; l < VALUES; ++l) {
+            for (int r = 0; r < VALUES; ++r) {
+                for (int carry = 0; carry < 2; ++carry) {
+                    int index = carry << 16 | l << 8 | r;
+                    ADD[index] = (char) Alu.add(l, r, carry == 1);
+                    SUB[index] = (char) Alu.sub(l, r, carry == 1);
+                }
+            }
+        }
+        for (int v = 0; v < VALUES; ++v) {
+            for (int nhc = 0; nhc < 8; ++nhc) {
+                BCD_ADJUST[nhc << 8 | v] = (char) Alu.bcdAdjust(v, (nhc & N_INDEX) != 0,
+                        (nhc & H_INDEX) != 0, (nhc & C_INDEX) != 0);
+            }
+            ROTATE_LEFT[v] = (char) Alu.rotate(RotDir.LEFT, v);
+            ROTATE_RIGHT[v] = (char) Alu.rotate(RotDir.RIGHT, v);
+            for (int carry = 0; carry < 2; ++carry) {
+                ROTATE_LEFT_CARRY[carry << 8 | v] = (char) Alu.rotate(RotDir.LEFT, v, carry == 1);
+                ROTATE_RIGHT_CARRY[carry << 8 | v] = (char) Alu.rotate(RotDir.RIGHT, v, carry == 1);
+            }
+            SWAP[v] = (char) Alu.swap(v);
+            SHIFT_LEFT[v] = (char) Alu.shiftLeft(v);
+            SHIFT_RIGHT_A[v] = (char) Alu.shiftRightA(v);
+            SHIFT_RIGHT_L[v] = (char) Alu.shiftRightL(v);
+            AND[v] = (char) Alu.and(v, v);
+            OR_XOR[v] = (char) Alu.or(v, v);
+        }
+    }
+
+    private AluTable() {}
+
+    /**
+     * @see Alu#add(int, int, boolean)
+     */
+    public static int add(int l, int r, boolean c0) {
+        return ADD[(c0 ? 1 << 16 : 0) | checkBits8(l) << 8 | checkBits8(r)];
+    }
+
+    /**
+     * @see Alu#add(int, int)
+     */
+    public static int add(int l, int r) {
+        return ADD[checkBits8(l) << 8 | checkBits8(r)];
+    }
+
+    /**
+     * @see Alu#sub(int, int, boolean)
+     */
+    public static int sub(int l, int r, boolean b0) {
+        return SUB[(b0 ? 1 << 16 : 0) | checkBits8(l) << 8 | checkBits8(r)];
+    }
+
+    /**
+     * @see Alu#sub(int, int)
+     */
+    public static int sub(int l, int r) {
+        return SUB[checkBits8(l) << 8 | checkBits8(r)];
+    }
+
+    /**
+     * @see Alu#bcdAdjust(int, boolean, boolean, boolean)
+     */
+    public static int bcdAdjust(int v, boolean n, boolean h, boolean c) {
+        int nhc = (n ? N_INDEX : 0) | (h ? H_INDEX : 0) | (c ? C_INDEX : 0);
+        return BCD_ADJUST[nhc << 8 | checkBits8(v)];
+    }
+
+    /**
+     * @see Alu#and(int, int)
+     */
+    public static int and(int l, int r) {
+        return AND[checkBits8(l) & checkBits8(r)];
+    }
+
+    /**
+     * @see Alu#or(int, int)
+     */
+    public static int or(int l, int r) {
+        return OR_XOR[checkBits8(l) | checkBits8(r)];
+    }
+
+    /**
+     * @see Alu#xor(int, int)
+     */
+    public static int xor(int l, int r) {
+        return OR_XOR[checkBits8(l) ^ checkBits8(r)];
+    }
+
+    /**
+     * @see Alu#rotate(RotDir, int)
+     */
+    public static int rotate(RotDir d, int v) {
+        return (d == RotDir.LEFT ? ROTATE_LEFT : ROTATE_RIGHT)[checkBits8(v)];
+    }
+
+    /**
+     * @see Alu#rotate(RotDir, int, boolean)
+     */
+    public static int rotate(RotDir d, int v, boolean c) {
+        return (d == RotDir.LEFT ? ROTATE_LEFT_CARRY : ROTATE_RIGHT_CARRY)[(c ? 1 << 8 : 0) | checkBits8(v)];
+    }
+
+    /**
+     * @see Alu#swap(int)
+     */
+    public static int swap(int v) {
+        return SWAP[checkBits8(v)];
+    }
+
+    /**
+     * @see Alu#shiftLeft(int)
+     */
+    public static int shiftLeft(int v) {
+        return SHIFT_LEFT[checkBits8(v)];
+    }
+
+    /**
+     * @see Alu#shiftRightA(int)
+     */
+    public static int shiftRightA(int v) {
+        return SHIFT_RIGHT_A[checkBits8(v)];
+    }
+
+    /**
+     * @see Alu#shiftRightL(int)
+     */
+    public static int shiftRightL(int v) {
+        return SHIFT_RIGHT_L[checkBits8(v)];
+    }
+}
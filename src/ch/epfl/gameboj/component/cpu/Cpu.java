@@ -1,5 +1,6 @@
 package ch.epfl.gameboj.component.cpu;
 
+import static ch.epfl.gameboj.Preconditions.checkArgument;
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 import static ch.epfl.gameboj.bits.Bits.clip;
@@ -9,42 +10,38 @@ import static ch.epfl.gameboj.bits.Bits.make16;
 import static ch.epfl.gameboj.bits.Bits.set;
 import static ch.epfl.gameboj.bits.Bits.signExtend8;
 import static ch.epfl.gameboj.bits.Bits.test;
-import static ch.epfl.gameboj.component.cpu.Alu.add;
 import static ch.epfl.gameboj.component.cpu.Alu.add16H;
 import static ch.epfl.gameboj.component.cpu.Alu.add16L;
-import static ch.epfl.gameboj.component.cpu.Alu.and;
-import static ch.epfl.gameboj.component.cpu.Alu.bcdAdjust;
 import static ch.epfl.gameboj.component.cpu.Alu.maskZNHC;
-import static ch.epfl.gameboj.component.cpu.Alu.or;
-import static ch.epfl.gameboj.component.cpu.Alu.rotate;
-import static ch.epfl.gameboj.component.cpu.Alu.shiftLeft;
-import static ch.epfl.gameboj.component.cpu.Alu.shiftRightA;
-import static ch.epfl.gameboj.component.cpu.Alu.shiftRightL;
-import static ch.epfl.gameboj.component.cpu.Alu.sub;
-import static ch.epfl.gameboj.component.cpu.Alu.swap;
 import static ch.epfl.gameboj.component.cpu.Alu.unpackValue;
-import static ch.epfl.gameboj.component.cpu.Alu.xor;
 
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.Objects;
 
 import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Bus;
-import ch.epfl.gameboj.Register;
-import ch.epfl.gameboj.RegisterFile;
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.Savable;
 import ch.epfl.gameboj.bits.Bit;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Clocked;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.cpu.Alu.RotDir;
 import ch.epfl.gameboj.component.cpu.Opcode.Kind;
+import ch.epfl.gameboj.component.memory.BootRomController;
 import ch.epfl.gameboj.component.memory.Ram;
 
 
-public final class Cpu implements Component, Clocked {
+public final class Cpu implements Component, Clocked, Savable {
 
    
     //field declarations
     private long nextNonIdleCycle = 0;
+    //cycle at which the cpu was last cycled, not part of its state
+    private long currentCycle = 0;
     private int PC = 0;
     private int SP = 0;
     private int IE = 0;
@@ -55,11 +52,60 @@ public final class Cpu implements Component, Clocked {
     private Bus bus;
     private Ram highRam = new Ram(AddressMap.HIGH_RAM_SIZE);
 
-    private Reg[] regArray = Reg.values();
-    private Reg16[] reg16Array = Reg16.values();
-
-    //registerFile gathering 8 bit register values
-    private RegisterFile<Reg> registerFile = new RegisterFile<>(Reg.values());
+    //blocks of instructions of the rom range, by location of their first instruction
+    //in the boot and cartridge roms so that switching banks invalidates nothing, the
+    //roms never changing: pages of ROM_PAGE_SIZE locations, allocated once the cpu 
+    //executes there, holding the block starting at each location, null if it has not
+    //been built yet (null when the cpu does not execute blocks)
+    private final Block[][] romBlocks;
+    private final BootRomController rom;
+    //whether the instruction being executed wrote to an address which may change
+    //what the other components do next or how the rom is mapped, which ends its block
+    private boolean blockEnded;
+
+    //indices of the 8 bit registers in registers, a pair of registers is
+    //designated by the index of its high register, the low one following it
+    private static final int A = 0, F = 1, B = 2, C = 3, D = 4, E = 5, H = 6, L = 7;
+    private static final int AF = A, BC = B, DE = D, HL = H;
+    private static final int REGISTER_COUNT = 8;
+
+    //8 bit register values, only written with 8 bit values so never checked
+    private final int[] registers = new int[REGISTER_COUNT];
+
+    //idle loop detection: last target of a backward jump (-1 if none), cycles of
+    //the last two arrivals there, state of the registers at the last one, whether the
+    //cpu neither wrote nor read an unsafe address nor got an interruption requested
+    //since then, and length in cycles of the last iteration if it left the state
+    //unchanged (0 otherwise)
+    private int loopHead = -1;
+    private long loopIterationStart;
+    private long loopHeadCycle;
+    private final int[] loopHeadRegisters = new int[REGISTER_COUNT];
+    private int loopHeadSP;
+    private boolean loopHeadIME;
+    private boolean loopPure;
+    private long loopLength;
+
+    //8 bit operations of the alu, computed or looked up in tables
+    private final AluOperations alu;
+
+    //handlers of the direct, prefixed and rom cache opcodes executed by this cpu:
+    //the static tables, or handlers counting, profiling or tracing the instructions
+    //before executing them
+    private final Handler[] directHandlers;
+    private final Handler[] prefixedHandlers;
+    private final Handler[] romHandlers;
+
+    //counters of the instructions executed by ordinal of their opcode (if this
+    //cpu counts them), of the interrupts serviced by index and of the cycles of 
+    //idle loops skipped, only written by the thread running the cpu and not part
+    //of its state
+    private final long[] executedOpcodes = new long[Opcode.values().length];
+    private final long[] servicedInterrupts = new long[Interrupt.values().length];
+    private long skippedIdleCycles = 0;
+    //profiler and trace of the instructions executed, null if there is none
+    private final Profiler profiler;
+    private final InstructionTrace trace;
     
     //array to easily handle direct opcodes 
     private static final Opcode[] DIRECT_OPCODE_TABLE = buildOpcodeTable(
@@ -68,8 +114,201 @@ public final class Cpu implements Component, Clocked {
     //array to easily handle prefixed opcodes 
     private static final Opcode[] PREFIXED_OPCODE_TABLE = buildOpcodeTable(
             Opcode.Kind.PREFIXED);
+    
+    //handlers of direct opcodes, indexed like DIRECT_OPCODE_TABLE
+    private static final Handler[] DIRECT_HANDLER_TABLE = buildHandlerTable(
+            Opcode.Kind.DIRECT);
+    
+    //handlers of prefixed opcodes, indexed like PREFIXED_OPCODE_TABLE
+    private static final Handler[] PREFIXED_HANDLER_TABLE = buildHandlerTable(
+            Opcode.Kind.PREFIXED);
+    
+    //direct then prefixed opcodes and their handlers, for the rom instruction cache
+    private static final Opcode[] ROM_OPCODE_TABLE = concat(DIRECT_OPCODE_TABLE, PREFIXED_OPCODE_TABLE);
+    private static final Handler[] ROM_HANDLER_TABLE = concat(DIRECT_HANDLER_TABLE, PREFIXED_HANDLER_TABLE);
+    private static final int ROM_PAGE_BITS = 14;
+    private static final int ROM_PAGE_SIZE = 1 << ROM_PAGE_BITS;
+    private static final int ROM_PAGE_MASK = ROM_PAGE_SIZE - 1;
+    //a block never spans two banks of the rom range, which are switched independently
+    private static final int ROM_BANK_BITS = 14;
+    private static final int MAX_BLOCK_INSTRUCTIONS = 64;
+    
+    /**
+     * Handler of an instruction, its operands being already extracted from the opcode
+     */
+    @FunctionalInterface
+    private interface Handler {
+        
+        /**
+         * executes the instruction on the cpu
+         * @param cpu : the cpu executing the instruction
+         * @param nextPC : address of the following instruction
+         * @return the address of the next instruction to execute
+         */
+        int execute(Cpu cpu, int nextPC);
+    }
+
+    /**
+     * Instructions following each other in the rom, decoded once and executed 
+     * in one call: they go up to the first one which may not continue with the
+     * next (jump, call, return, restart, interruption enabling or disabling, halt,
+     * stop), the end of a bank or MAX_BLOCK_INSTRUCTIONS instructions
+     */
+    private static final class Block {
+        private final Opcode[] opcodes;
+        private final Handler[] handlers;
+
+        private Block(Opcode[] opcodes, Handler[] handlers) {
+            this.opcodes = opcodes;
+            this.handlers = handlers;
+        }
+    }
 
     
+    /**
+     * Builds a cpu decoding the instructions at each execution, which does not
+     * need to know the roms
+     */
+    public Cpu() {
+        this(new GameBoy.Options().withoutBlocks(), null, null);
+    }
+
+    /**
+     * the instructions executed are counted, profiled or traced through handlers
+     * wrapping the usual ones, so that a cpu which does none of this executes
+     * exactly the same code as before
+     * @param options : options of the game boy, telling whether instructions in 
+     * the rom range are decoded once and kept, whether the 8 bit alu operations
+     * are looked up in tables, and whether the instructions executed are counted
+     * by opcode, profiled or traced
+     * @param rom : controller of the rom range, giving the location of the
+     * instructions read there, by which they are cached, required if the options
+     * cache them
+     * @param profiler : profiler of the instructions executed, given if and only
+     * if the options profile them
+     * throws IllegalArgumentException if the controller or the profiler does not
+     * match the options
+     */
+    public Cpu(GameBoy.Options options, BootRomController rom, Profiler profiler) {
+        checkArgument(options.isProfiled() == (profiler != null));
+        checkArgument(!options.executesBlocks() || rom != null);
+        this.rom = rom;
+        if (options.executesBlocks()) {
+            romBlocks = new Block[(rom.romLocations() + ROM_PAGE_MASK) >>> ROM_PAGE_BITS][];
+        } else {
+            romBlocks = null;
+        }
+        alu = options.usesAluTables() ? AluOperations.TABLE : AluOperations.COMPUTED;
+        this.profiler = profiler;
+        this.trace = options.trace();
+        Handler[] direct = DIRECT_HANDLER_TABLE;
+        Handler[] prefixed = PREFIXED_HANDLER_TABLE;
+        if (options.hasDetailedMetrics()) {
+            direct = countingHandlers(DIRECT_OPCODE_TABLE, direct);
+            prefixed = countingHandlers(PREFIXED_OPCODE_TABLE, prefixed);
+        }
+        if (profiler != null) {
+            direct = profilingHandlers(DIRECT_OPCODE_TABLE, direct);
+            prefixed = profilingHandlers(PREFIXED_OPCODE_TABLE, prefixed);
+        }
+        if (trace != null) {
+            direct = tracingHandlers(DIRECT_OPCODE_TABLE, direct);
+            prefixed = tracingHandlers(PREFIXED_OPCODE_TABLE, prefixed);
+        }
+        directHandlers = direct;
+        prefixedHandlers = prefixed;
+        romHandlers = direct == DIRECT_HANDLER_TABLE ? ROM_HANDLER_TABLE : concat(direct, prefixed);
+    }
+
+    /**
+     * @param opcodes : table of opcodes
+     * @param handlers : their handlers, indexed the same way
+     * @return handlers incrementing the counter of their opcode, then executing it
+     */
+    private static Handler[] countingHandlers(Opcode[] opcodes, Handler[] handlers) {
+        Handler[] counting = new Handler[handlers.length];
+        for (int i = 0; i < handlers.length; ++i) {
+            if (opcodes[i] != null) {
+                Handler handler = handlers[i];
+                int ordinal = opcodes[i].ordinal();
+                counting[i] = (cpu, nextPC) -> {
+                    ++cpu.executedOpcodes[ordinal];
+                    return handler.execute(cpu, nextPC);
+                };
+            }
+        }
+        return counting;
+    }
+
+    /**
+     * @param opcodes : table of opcodes
+     * @param handlers : their handlers, indexed the same way
+     * @return handlers giving their instruction to the profiler of the cpu, then
+     * executing it, the jumps also giving it their target when they go backward
+     */
+    private static Handler[] profilingHandlers(Opcode[] opcodes, Handler[] handlers) {
+        Handler[] profiling = new Handler[handlers.length];
+        for (int i = 0; i < handlers.length; ++i) {
+            Opcode opcode = opcodes[i];
+            if (opcode == null) {
+                continue;
+            }
+            Handler handler = handlers[i];
+            switch (opcode.family) {
+            case JP_N16: case JP_CC_N16: case JR_E8: case JR_CC_E8:
+                profiling[i] = (cpu, nextPC) -> {
+                    int pc = cpu.PC;
+                    cpu.profiler.instruction(opcode, pc);
+                    int target = handler.execute(cpu, nextPC);
+                    if (clip(16, target) <= pc) {
+                        cpu.profiler.backwardJump(pc, clip(16, target));
+                    }
+                    return target;
+                };
+                break;
+            default:
+                profiling[i] = (cpu, nextPC) -> {
+                    cpu.profiler.instruction(opcode, cpu.PC);
+                    return handler.execute(cpu, nextPC);
+                };
+            }
+        }
+        return profiling;
+    }
+
+    /**
+     * @param opcodes : table of opcodes
+     * @param handlers : their handlers, indexed the same way
+     * @return handlers recording their instruction and the state of the cpu 
+     * before it in the trace of the cpu, then executing it
+     */
+    private static Handler[] tracingHandlers(Opcode[] opcodes, Handler[] handlers) {
+        Handler[] tracing = new Handler[handlers.length];
+        for (int i = 0; i < handlers.length; ++i) {
+            if (opcodes[i] != null) {
+                Handler handler = handlers[i];
+                int ordinal = opcodes[i].ordinal();
+                tracing[i] = (cpu, nextPC) -> {
+                    cpu.trace.record(cpu.nextNonIdleCycle, cpu.PC, cpu.SP, ordinal, cpu.registers,
+                            cpu.IME, cpu.IE, cpu.IF);
+                    return handler.execute(cpu, nextPC);
+                };
+            }
+        }
+        return tracing;
+    }
+
+    /**
+     * @param first : first array
+     * @param second : second array
+     * @return a new array with the elements of first then the ones of second
+     */
+    private static <T> T[] concat(T[] first, T[] second) {
+        T[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        return both;
+    }
+
     /**
      * Builds the opcode table.
      * @param k : kind of opcode
@@ -91,644 +330,908 @@ public final class Cpu implements Component, Clocked {
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Clocked#cycle(long)
      */
-    // first checks if the halt instruction is activated and if there is an interruption to handle
-    // in this case sets nextNonIdleCycle and calls reallyCycle 
+    // executes a single instruction, see cycle(long, long)
     @Override
     public void cycle(long cycle) {
+        cycle(cycle, cycle + 1);
+    }
+
+    /**
+     * first checks if the halt instruction is activated and if there is an interruption
+     * to handle, in this case sets nextNonIdleCycle and calls reallyCycle
+     * @param cycle : current cycle
+     * @param limit : cycle before which the other components do nothing, so that the
+     * instructions of a block of the rom starting before it are executed at once
+     */
+    public void cycle(long cycle, long limit) {
+        currentCycle = cycle;
      
         if(nextNonIdleCycle == Long.MAX_VALUE && (findInterruption() != -1) ) { 
             nextNonIdleCycle = cycle ; 
-            reallyCycle();
+            reallyCycle(limit);
 
         }else if (nextNonIdleCycle == cycle) {
-            reallyCycle();
+            reallyCycle(limit);
         }
 
     }
 
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Clocked#nextEventCycle(long)
+     */
+    // while halted, the cpu only has something to do once an interruption is pending,
+    // otherwise it is busy at nextNonIdleCycle
+    @Override
+    public long nextEventCycle(long cycle) {
+        if (nextNonIdleCycle == Long.MAX_VALUE) {
+            return findInterruption() != -1 ? cycle : Long.MAX_VALUE;
+        }
+        return nextNonIdleCycle;
+    }
+
+    /**
+     * @return the cycle at which the cpu was last cycled, which is the one of
+     * its accesses to the bus while it executes an instruction, and never after
+     * the current cycle otherwise
+     */
+    public long currentCycle() {
+        return currentCycle;
+    }
+
     /**
      * Starts by checking if interrupts can be detected and if there is indeed an interruption(-1 meaning there is none), it handles it
-     * else calls dispatch method to execute instructions as usual 
-     * @param cycle the cycle
+     * else calls dispatch method to execute instructions as usual with the handler of the opcode
      */
     public void reallyCycle() {
+        reallyCycle(nextNonIdleCycle + 1);
+    }
+
+    /**
+     * like reallyCycle, the instructions in the rom range being executed by block
+     * @param limit : cycle before which the other components do nothing, the 
+     * instructions of the block starting before it being executed
+     */
+    private void reallyCycle(long limit) {
         int index = findInterruption();
         if (IME && (index != -1)) {
 
+            //only reached when an interrupt is serviced, not at every instruction
+            if (trace != null) {
+                trace.record(nextNonIdleCycle, PC, SP, InstructionTrace.INTERRUPT_EVENT + index, 
+                        registers, IME, IE, IF);
+            }
             IME = false;
+            ++servicedInterrupts[index];
             IF = set(IF, index, false); // sets 0 to corresponding bit for handled interruption
             push16(PC);
             PC = AddressMap.INTERRUPTS[index];
             nextNonIdleCycle += 5;
+        } else if (romBlocks != null && PC < AddressMap.CARTRIDGE_ROM_END) {
+            executeBlock(limit);
         } else {
-    
-            if (read8(PC) == 0xCB) {
-                dispatch(PREFIXED_OPCODE_TABLE[read8AfterOpcode()]);
-            } else {
-                dispatch(DIRECT_OPCODE_TABLE[read8(PC)]);
-            }
-      
-           
+            decodeAndDispatch();
+        }
     }
 
+    /**
+     * Decodes the instruction at PC and executes it
+     */
+    private void decodeAndDispatch() {
+        int encoding = read8(PC);
+        if (encoding == 0xCB) {
+            encoding = read8AfterOpcode();
+            dispatch(PREFIXED_OPCODE_TABLE[encoding], prefixedHandlers[encoding]);
+        } else {
+            dispatch(DIRECT_OPCODE_TABLE[encoding], directHandlers[encoding]);
+        }
     }
 
     /**
-     * Hands out each instruction to corresponding case and executes them .
-     * @param opcode the opcode
+     * Skips the iterations of the idle loop the cpu is at the start of, if any: a loop
+     * whose last iteration neither wrote to memory nor read registers whose value
+     * changes by itself (joypad, serial, timer), during which no interruption was
+     * requested, and which left the registers as they were.
+     * Such a loop repeats identically until a value it reads changes, which only happens
+     * once the other components do something, so the cpu jumps to the start of the last
+     * iteration beginning before nextEventCycle, exactly as if it had executed the others
+     * @param lastEventCycle : last cycle at which the other components did something
+     * @param nextEventCycle : next cycle at which the other components do something
      */
-    private void dispatch(Opcode opcode) {
-
-        int nextPC = PC + opcode.totalBytes;
+    public void skipIdleLoop(long lastEventCycle, long nextEventCycle) {
+        if (loopLength != 0 && PC == loopHead && nextNonIdleCycle == loopHeadCycle
+                && lastEventCycle <= loopIterationStart && nextNonIdleCycle < nextEventCycle
+                && !(IME && findInterruption() != -1)) {
+            long skipped = (nextEventCycle - nextNonIdleCycle) / loopLength * loopLength;
+            nextNonIdleCycle += skipped;
+            skippedIdleCycles += skipped;
+            //only reached when iterations are skipped, not at every instruction
+            if (profiler != null) {
+                profiler.skippedIdleLoop(loopHead, skipped);
+            }
+            loopHeadCycle = nextNonIdleCycle;
+            loopIterationStart = loopHeadCycle - loopLength;
+        }
+    }
 
-        switch (opcode.family) {
+    /**
+     * Called when a jump goes back to head, at the cycle the instruction there starts:
+     * the iteration since the previous arrival at head left the cpu unchanged if it was
+     * pure and the registers are the same, head becomes the new loop head otherwise 
+     * @param head : address jumped to
+     */
+    private void arriveAtLoopHead(int head) {
+        if (head == loopHead && loopPure && SP == loopHeadSP && IME == loopHeadIME
+                && Arrays.equals(registers, loopHeadRegisters)) {
+            loopLength = nextNonIdleCycle - loopHeadCycle;
+            loopIterationStart = loopHeadCycle;
+        } else {
+            loopLength = 0;
+            loopHead = head;
+            System.arraycopy(registers, 0, loopHeadRegisters, 0, REGISTER_COUNT);
+            loopHeadSP = SP;
+            loopHeadIME = IME;
+        }
+        loopHeadCycle = nextNonIdleCycle;
+        loopPure = true;
+    }
 
-        case NOP: {
+    /**
+     * Executes the block of instructions starting at PC, in the rom range, building
+     * it the first time: its instructions are executed one after the other as long
+     * as they start before limit and the previous one did not write to the rom 
+     * range, the registers or IE, so exactly as if the cpu was cycled at each of 
+     * them, since the other components do nothing meanwhile, the interruptions
+     * serviceable not changing either
+     * @param limit : cycle before which the other components do nothing
+     */
+    private void executeBlock(long limit) {
+        int location = rom.romLocation(PC);
+        Block[] page = romBlocks[location >>> ROM_PAGE_BITS];
+        if (page == null) {
+            page = new Block[ROM_PAGE_SIZE];
+            romBlocks[location >>> ROM_PAGE_BITS] = page;
+        }
+        Block block = page[location & ROM_PAGE_MASK];
+        if (block == null) {
+            block = buildBlock(location);
+            if (block == null) {
+                decodeAndDispatch();
+                return;
+            }
+            page[location & ROM_PAGE_MASK] = block;
         }
-            break;
-        case LD_R8_HLR: {
-            Reg reg = extractReg(opcode, 3);
-            registerFile.set(reg, read8AtHl());
 
+        Opcode[] opcodes = block.opcodes;
+        Handler[] handlers = block.handlers;
+        blockEnded = false;
+        for (int i = 0; ; ) {
+            dispatch(opcodes[i], handlers[i]);
+            if (++i == opcodes.length || blockEnded || nextNonIdleCycle >= limit) {
+                return;
+            }
+            currentCycle = nextNonIdleCycle;
         }
-            break;
-        case LD_A_HLRU: {
+    }
 
-            registerFile.set(Reg.A, read8(reg16(Reg16.HL)));
-            setReg16(Reg16.HL, extract(reg16(Reg16.HL) + extractHlIncrement(opcode), 0, 16));
+    /**
+     * @param location : location of PC in the roms
+     * @return the block of the instructions starting at PC: a prefixed instruction
+     * whose opcode is in another bank than its prefix ends the block before it, null
+     * if it is the first one, which is then decoded at each execution
+     */
+    private Block buildBlock(int location) {
+        Opcode[] opcodes = new Opcode[MAX_BLOCK_INSTRUCTIONS];
+        int length = 0;
+        int address = PC;
+        while (length < MAX_BLOCK_INSTRUCTIONS && inBlock(address, location)) {
+            int index = bus.read(address);
+            if (index == 0xCB) {
+                if (!inBlock(address + 1, location)) {
+                    break;
+                }
+                index = OPCODE_MAX_LENGTH + bus.read(address + 1);
+            }
+            Opcode opcode = ROM_OPCODE_TABLE[index];
+            opcodes[length++] = opcode;
+            if (endsBlock(opcode)) {
+                break;
+            }
+            address += opcode.totalBytes;
+        }
 
+        if (length == 0) {
+            return null;
         }
-            break;
-        
-        case LD_A_N8R: {
-            registerFile.set(Reg.A, read8(AddressMap.REGS_START + read8AfterOpcode()));
+        Handler[] handlers = new Handler[length];
+        for (int i = 0; i < length; ++i) {
+            handlers[i] = romHandlers[opcodes[i].kind == Kind.DIRECT ? opcodes[i].encoding
+                    : OPCODE_MAX_LENGTH + opcodes[i].encoding];
         }
-            break;
-        case LD_A_CR: {
-            registerFile.set(Reg.A, read8(AddressMap.REGS_START + registerFile.get(Reg.C)));
+        return new Block(Arrays.copyOf(opcodes, length), handlers);
+    }
+
+    /**
+     * @param address : address of a byte of an instruction
+     * @param location : location of PC in the roms
+     * @return whether the byte is in the same bank of the rom range as PC, at
+     * the location following the ones of the bytes before it
+     */
+    private boolean inBlock(int address, int location) {
+        return address < AddressMap.CARTRIDGE_ROM_END && (address >>> ROM_BANK_BITS) == (PC >>> ROM_BANK_BITS)
+                && rom.romLocation(address) == location + address - PC;
+    }
+
+    /**
+     * @param opcode : opcode
+     * @return whether the instruction may not continue with the next one, or
+     * changes the interruptions serviced
+     */
+    private static boolean endsBlock(Opcode opcode) {
+        switch (opcode.family) {
+        case JP_HL: case JP_N16: case JP_CC_N16: case JR_E8: case JR_CC_E8:
+        case CALL_N16: case CALL_CC_N16: case RST_U3: case RET: case RET_CC:
+        case EDI: case RETI: case HALT: case STOP:
+            return true;
+        default:
+            return false;
         }
-            break;
-        case LD_A_N16R: {
-            registerFile.set(Reg.A, read8(read16AfterOpcode()));
+    }
+
+    /**
+     * Executes the instruction of the opcode with its pre-bound handler, then
+     * moves PC to the next instruction and updates nextNonIdleCycle.
+     * @param opcode the opcode
+     * @param handler the handler of the opcode
+     */
+    private void dispatch(Opcode opcode, Handler handler) {
+        int nextPC = clip(16, handler.execute(this, PC + opcode.totalBytes));
+        nextNonIdleCycle += opcode.cycles;
+        boolean backward = nextPC <= PC;
+        PC = nextPC;
+        if (backward) {
+            arriveAtLoopHead(nextPC);
         }
-            break;
-        case LD_A_BCR: {
-            registerFile.set(Reg.A, read8(reg16(Reg16.BC)));
+    }
+
+    /**
+     * Binds each opcode to its handler.
+     * @param kind : kind of opcode
+     * @return  : handler array for prefixed or direct opcodes, indexed by encoding
+     */
+    private static Handler[] buildHandlerTable(Kind kind) {
+        
+        Handler[] handlerTable = new Handler[OPCODE_MAX_LENGTH];
+        
+        for (Opcode opcode : Opcode.values()) {
+            if (opcode.kind == kind) {
+                handlerTable[opcode.encoding] = handler(opcode);
+            }
         }
-            break;
-        case LD_A_DER: {
-            registerFile.set(Reg.A, read8(reg16(Reg16.DE)));
+
+        return handlerTable;
+    }
+
+    /**
+     * Builds the handler of an opcode, all its operands (registers, bit index,
+     * condition...) are extracted from the encoding here, once, so that the 
+     * handler only has to execute the instruction.
+     * @param opcode the opcode
+     * @return the handler executing the instruction of opcode
+     */
+    private static Handler handler(Opcode opcode) {
+
+        switch (opcode.family) {
+
+        case NOP: 
+            return (cpu, nextPC) -> nextPC;
+        case LD_R8_HLR: {
+            int reg = extractReg(opcode, 3);
+            return (cpu, nextPC) -> {
+                cpu.setReg(reg, cpu.read8AtHl());
+                return nextPC;
+            };
         }
-            break;
+        case LD_A_HLRU: {
+            int increment = extractHlIncrement(opcode);
+            return (cpu, nextPC) -> {
+                cpu.setReg(A, cpu.read8(cpu.hl()));
+                cpu.setHl(extract(cpu.hl() + increment, 0, 16));
+                return nextPC;
+            };
+        }
+        case LD_A_N8R: 
+            return (cpu, nextPC) -> {
+                cpu.setReg(A, cpu.read8(AddressMap.REGS_START + cpu.read8AfterOpcode()));
+                return nextPC;
+            };
+        case LD_A_CR: 
+            return (cpu, nextPC) -> {
+                cpu.setReg(A, cpu.read8(AddressMap.REGS_START + cpu.registers[C]));
+                return nextPC;
+            };
+        case LD_A_N16R: 
+            return (cpu, nextPC) -> {
+                cpu.setReg(A, cpu.read8(cpu.read16AfterOpcode()));
+                return nextPC;
+            };
+        case LD_A_BCR: 
+            return (cpu, nextPC) -> {
+                cpu.setReg(A, cpu.read8(cpu.reg16(BC)));
+                return nextPC;
+            };
+        case LD_A_DER: 
+            return (cpu, nextPC) -> {
+                cpu.setReg(A, cpu.read8(cpu.reg16(DE)));
+                return nextPC;
+            };
         case LD_R8_N8: {
-            Reg reg = extractReg(opcode, 3);
-            registerFile.set(reg, read8AfterOpcode());
+            int reg = extractReg(opcode, 3);
+            return (cpu, nextPC) -> {
+                cpu.setReg(reg, cpu.read8AfterOpcode());
+                return nextPC;
+            };
         }
-            break;
         case LD_R16SP_N16: {
-            Reg16 reg16 = extractReg16(opcode);
-            setReg16SP(reg16, read16AfterOpcode());
+            int reg16 = extractReg16(opcode);
+            return (cpu, nextPC) -> {
+                cpu.setReg16SP(reg16, cpu.read16AfterOpcode());
+                return nextPC;
+            };
         }
-            break;
         case POP_R16: {
-            Reg16 reg16 = extractReg16(opcode);
-            setReg16(reg16, pop16());
-
+            int reg16 = extractReg16(opcode);
+            return (cpu, nextPC) -> {
+                cpu.setReg16(reg16, cpu.pop16());
+                return nextPC;
+            };
         }
-            break;
         case LD_HLR_R8: {
-            Reg reg = extractReg(opcode, 0);
-            write8AtHl(registerFile.get(reg));
-
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.write8AtHl(cpu.registers[reg]);
+                return nextPC;
+            };
         }
-            break;
         case LD_HLRU_A: {
-
-            write8AtHl(registerFile.get(Reg.A));
-            setReg16(Reg16.HL, extract(reg16(Reg16.HL) + extractHlIncrement(opcode), 0, 16));
-           
-        }
-            break;
-        case LD_N8R_A: {
-            write8(AddressMap.REGS_START + read8AfterOpcode(),
-                    registerFile.get(Reg.A));
-        }
-            break;
-        case LD_CR_A: {
-            write8(AddressMap.REGS_START + registerFile.get(Reg.C),
-                    registerFile.get(Reg.A));
-        }
-            break;
-        case LD_N16R_A: {
-            write8(read16AfterOpcode(), registerFile.get(Reg.A));
-        }
-            break;
-        case LD_BCR_A: {
-            write8(reg16(Reg16.BC), registerFile.get(Reg.A));
-        }
-            break;
-        case LD_DER_A: {
-            write8(reg16(Reg16.DE), registerFile.get(Reg.A));
-        }
-            break;
-        case LD_HLR_N8: {
-            write8AtHl(read8AfterOpcode());
-        }
-            break;
-        case LD_N16R_SP: {
-            write16((read16AfterOpcode()), SP);
-        }
-            break;
+            int increment = extractHlIncrement(opcode);
+            return (cpu, nextPC) -> {
+                cpu.write8AtHl(cpu.registers[A]);
+                cpu.setHl(extract(cpu.hl() + increment, 0, 16));
+                return nextPC;
+            };
+        }
+        case LD_N8R_A: 
+            return (cpu, nextPC) -> {
+                cpu.write8(AddressMap.REGS_START + cpu.read8AfterOpcode(), cpu.registers[A]);
+                return nextPC;
+            };
+        case LD_CR_A: 
+            return (cpu, nextPC) -> {
+                cpu.write8(AddressMap.REGS_START + cpu.registers[C], cpu.registers[A]);
+                return nextPC;
+            };
+        case LD_N16R_A: 
+            return (cpu, nextPC) -> {
+                cpu.write8(cpu.read16AfterOpcode(), cpu.registers[A]);
+                return nextPC;
+            };
+        case LD_BCR_A: 
+            return (cpu, nextPC) -> {
+                cpu.write8(cpu.reg16(BC), cpu.registers[A]);
+                return nextPC;
+            };
+        case LD_DER_A: 
+            return (cpu, nextPC) -> {
+                cpu.write8(cpu.reg16(DE), cpu.registers[A]);
+                return nextPC;
+            };
+        case LD_HLR_N8: 
+            return (cpu, nextPC) -> {
+                cpu.write8AtHl(cpu.read8AfterOpcode());
+                return nextPC;
+            };
+        case LD_N16R_SP: 
+            return (cpu, nextPC) -> {
+                cpu.write16(cpu.read16AfterOpcode(), cpu.SP);
+                return nextPC;
+            };
         case PUSH_R16: {
-            Reg16 reg16 = extractReg16(opcode);
-            push16(reg16(reg16));
-
+            int reg16 = extractReg16(opcode);
+            return (cpu, nextPC) -> {
+                cpu.push16(cpu.reg16(reg16));
+                return nextPC;
+            };
         }
-            break;
         case LD_R8_R8: {
-            Reg regR = extractReg(opcode, 3);
-            Reg regS = extractReg(opcode, 0);
-            registerFile.set(regR, registerFile.get(regS));
-
-        }
-            break;
-        case LD_SP_HL: {
-            SP = reg16(Reg16.HL);
-        }
-            break;
+            int regR = extractReg(opcode, 3);
+            int regS = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setReg(regR, cpu.registers[regS]);
+                return nextPC;
+            };
+        }
+        case LD_SP_HL: 
+            return (cpu, nextPC) -> {
+                cpu.SP = cpu.hl();
+                return nextPC;
+            };
 
         // Add
         case ADD_A_R8: {
-            int regValue = registerFile.get(extractReg(opcode, 0));
-            int result = add(registerFile.get(Reg.A), regValue, combineCAndOpcode(opcode));
-            setRegFlags(Reg.A, result);
-
+            int reg = extractReg(opcode, 0);
+            boolean withCarry = extractCarryUse(opcode);
+            return (cpu, nextPC) -> {
+                int result = cpu.alu.add(cpu.registers[A], cpu.registers[reg], withCarry && cpu.carry());
+                cpu.setRegFlags(A, result);
+                return nextPC;
+            };
         }
-            break;
         case ADD_A_N8: {
-            int n8 = read8AfterOpcode();
-            int result = add(registerFile.get(Reg.A), n8, combineCAndOpcode(opcode));
-            setRegFlags(Reg.A, result);
-
+            boolean withCarry = extractCarryUse(opcode);
+            return (cpu, nextPC) -> {
+                int result = cpu.alu.add(cpu.registers[A], cpu.read8AfterOpcode(), withCarry && cpu.carry());
+                cpu.setRegFlags(A, result);
+                return nextPC;
+            };
         }
-            break;
         case ADD_A_HLR: {
-            int n8_HL = read8AtHl();
-            int result = add(registerFile.get(Reg.A), n8_HL, combineCAndOpcode(opcode));
-            setRegFlags(Reg.A, result);
-
+            boolean withCarry = extractCarryUse(opcode);
+            return (cpu, nextPC) -> {
+                int result = cpu.alu.add(cpu.registers[A], cpu.read8AtHl(), withCarry && cpu.carry());
+                cpu.setRegFlags(A, result);
+                return nextPC;
+            };
         }
-            break;
         case INC_R8: {
-            Reg reg = extractReg(opcode, 3);
-            int regValue = registerFile.get(reg);
-            int newRegValue = add(regValue, 1); 
-            registerFile.set(reg, unpackValue(newRegValue));
-            combineAluFlags(newRegValue, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU,
-                    FlagSrc.CPU);
-
-        }
-            break;
-        case INC_HLR: {
-            int n8_HL = read8AtHl();
-            int newHlValue = add(n8_HL, 1); 
-            write8AtHl(unpackValue(newHlValue));
-            combineAluFlags(newHlValue, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
-
-        }
-            break;
+            int reg = extractReg(opcode, 3);
+            return (cpu, nextPC) -> {
+                int newRegValue = cpu.alu.add(cpu.registers[reg], 1); 
+                cpu.setReg(reg, unpackValue(newRegValue));
+                cpu.combineAluFlags(newRegValue, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
+                return nextPC;
+            };
+        }
+        case INC_HLR: 
+            return (cpu, nextPC) -> {
+                int newHlValue = cpu.alu.add(cpu.read8AtHl(), 1); 
+                cpu.write8AtHl(unpackValue(newHlValue));
+                cpu.combineAluFlags(newHlValue, FlagSrc.ALU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.CPU);
+                return nextPC;
+            };
         case INC_R16SP: {
-            Reg16 reg16 = extractReg16(opcode);
-            int result = getReg16SP(reg16);
-            result = add16H(result, 1);
-            setReg16SP(reg16, unpackValue(result));
+            int reg16 = extractReg16(opcode);
+            return (cpu, nextPC) -> {
+                int result = add16H(cpu.getReg16SP(reg16), 1);
+                cpu.setReg16SP(reg16, unpackValue(result));
+                return nextPC;
+            };
         }
-            break;
         case ADD_HL_R16SP: {
-            Reg16 reg16 = extractReg16(opcode);
-            int value = getReg16SP(reg16);
-            int valueHL = reg16(Reg16.HL);
-            int result = add16H(valueHL, value);
-            setReg16SP(Reg16.HL, unpackValue(result));
-            combineAluFlags(result, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
-        }
-            break;
+            int reg16 = extractReg16(opcode);
+            return (cpu, nextPC) -> {
+                int result = add16H(cpu.hl(), cpu.getReg16SP(reg16));
+                cpu.setHl(unpackValue(result));
+                cpu.combineAluFlags(result, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+                return nextPC;
+            };
+        }
         case LD_HLSP_S8: {
-            int e = Bits.clip(16, Bits.signExtend8(read8AfterOpcode()));
-
-            int result = add16L(SP, e);
-            if (test(opcode.encoding, 4)) {
-
-                setReg16(Reg16.HL, unpackValue(result));
-
-            } else {
-                SP = unpackValue(result);
-            }
-
-            combineAluFlags(result, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU,
-                    FlagSrc.ALU);
-
+            boolean toHl = test(opcode.encoding, 4);
+            return (cpu, nextPC) -> {
+                int e = Bits.clip(16, Bits.signExtend8(cpu.read8AfterOpcode()));
+                int result = add16L(cpu.SP, e);
+                if (toHl) {
+                    cpu.setHl(unpackValue(result));
+                } else {
+                    cpu.SP = unpackValue(result);
+                }
+                cpu.combineAluFlags(result, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU, FlagSrc.ALU);
+                return nextPC;
+            };
         }
-            break;
 
         // Subtract
         case SUB_A_R8: {
-            int regValue = registerFile.get(extractReg(opcode, 0));
-            int result = sub(registerFile.get(Reg.A), regValue, combineCAndOpcode(opcode));
-            setRegFlags(Reg.A, result);
-
+            int reg = extractReg(opcode, 0);
+            boolean withCarry = extractCarryUse(opcode);
+            return (cpu, nextPC) -> {
+                int result = cpu.alu.sub(cpu.registers[A], cpu.registers[reg], withCarry && cpu.carry());
+                cpu.setRegFlags(A, result);
+                return nextPC;
+            };
         }
-            break;
         case SUB_A_N8: {
-            int result = sub(registerFile.get(Reg.A), read8AfterOpcode(), combineCAndOpcode(opcode));
-            setRegFlags(Reg.A, result);
+            boolean withCarry = extractCarryUse(opcode);
+            return (cpu, nextPC) -> {
+                int result = cpu.alu.sub(cpu.registers[A], cpu.read8AfterOpcode(), withCarry && cpu.carry());
+                cpu.setRegFlags(A, result);
+                return nextPC;
+            };
         }
-            break;
         case SUB_A_HLR: {
-            int n8_HL = read8AtHl();
-            int result = sub(registerFile.get(Reg.A), n8_HL, combineCAndOpcode(opcode));
-            setRegFlags(Reg.A, result);
-
+            boolean withCarry = extractCarryUse(opcode);
+            return (cpu, nextPC) -> {
+                int result = cpu.alu.sub(cpu.registers[A], cpu.read8AtHl(), withCarry && cpu.carry());
+                cpu.setRegFlags(A, result);
+                return nextPC;
+            };
         }
-            break;
         case DEC_R8: {
-            Reg reg = extractReg(opcode, 3);
-            int regValue = registerFile.get(reg);
-            int newRegValue = sub(regValue, 1);
-            registerFile.set(reg, unpackValue(newRegValue));
-            combineAluFlags(newRegValue, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
-
-        }
-            break;
-        case DEC_HLR: {
-            int n8_HL = read8AtHl();
-            int result = sub(n8_HL, 1);
-            write8AtHl(unpackValue(result));
-            combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU,
-                    FlagSrc.CPU);
-
-        }
-            break;
+            int reg = extractReg(opcode, 3);
+            return (cpu, nextPC) -> {
+                int newRegValue = cpu.alu.sub(cpu.registers[reg], 1);
+                cpu.setReg(reg, unpackValue(newRegValue));
+                cpu.combineAluFlags(newRegValue, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
+                return nextPC;
+            };
+        }
+        case DEC_HLR: 
+            return (cpu, nextPC) -> {
+                int result = cpu.alu.sub(cpu.read8AtHl(), 1);
+                cpu.write8AtHl(unpackValue(result));
+                cpu.combineAluFlags(result, FlagSrc.ALU, FlagSrc.V1, FlagSrc.ALU, FlagSrc.CPU);
+                return nextPC;
+            };
         case CP_A_R8: {
-            int regValue = registerFile.get(extractReg(opcode, 0));
-            int result = sub(registerFile.get(Reg.A), regValue);
-            setFlags(result);
-        }
-            break;
-        case CP_A_N8: {
-            int result = sub(registerFile.get(Reg.A), read8AfterOpcode() );
-            setFlags(result);
-
-        }
-            break;
-        case CP_A_HLR: {
-            int n8_HL = read8AtHl();
-            int result = sub(registerFile.get(Reg.A), n8_HL);
-            setFlags(result);
-
-        }
-            break;
-        
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setFlags(cpu.alu.sub(cpu.registers[A], cpu.registers[reg]));
+                return nextPC;
+            };
+        }
+        case CP_A_N8: 
+            return (cpu, nextPC) -> {
+                cpu.setFlags(cpu.alu.sub(cpu.registers[A], cpu.read8AfterOpcode()));
+                return nextPC;
+            };
+        case CP_A_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.setFlags(cpu.alu.sub(cpu.registers[A], cpu.read8AtHl()));
+                return nextPC;
+            };
         case DEC_R16SP: {
-            Reg16 reg16 = extractReg16(opcode);
-            int result = getReg16SP(reg16) - 1;
-            result = Bits.clip(16, result);
-            setReg16SP(reg16, result);
+            int reg16 = extractReg16(opcode);
+            return (cpu, nextPC) -> {
+                cpu.setReg16SP(reg16, Bits.clip(16, cpu.getReg16SP(reg16) - 1));
+                return nextPC;
+            };
         }
-            break;
 
         // And, or, xor, complement
-        case AND_A_N8: {
-
-            int conjunction = and(registerFile.get(Reg.A), read8AfterOpcode());
-            setRegFlags(Reg.A, conjunction);
-
-        }
-            break;
+        case AND_A_N8: 
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.and(cpu.registers[A], cpu.read8AfterOpcode()));
+                return nextPC;
+            };
         case AND_A_R8: {
-            Reg reg = extractReg(opcode, 0);
-            int conjunction = and(registerFile.get(Reg.A), registerFile.get(reg));
-            setRegFlags(Reg.A, conjunction);
-
-        }
-            break;
-        case AND_A_HLR: {
-            int conjunction = and(registerFile.get(Reg.A), read8AtHl());
-            setRegFlags(Reg.A, conjunction);
-           
-        }
-            break;
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.and(cpu.registers[A], cpu.registers[reg]));
+                return nextPC;
+            };
+        }
+        case AND_A_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.and(cpu.registers[A], cpu.read8AtHl()));
+                return nextPC;
+            };
         case OR_A_R8: {
-            Reg reg = extractReg(opcode, 0);
-            int disjunction = or(registerFile.get(Reg.A), registerFile.get(reg));
-            setRegFlags(Reg.A, disjunction);
-
-        }
-            break;
-        case OR_A_N8: {
-            int disjunction = or(registerFile.get(Reg.A), read8AfterOpcode());
-            setRegFlags(Reg.A, disjunction);
-        }
-            break;
-        case OR_A_HLR: {
-            int disjunction = or(registerFile.get(Reg.A), read8AtHl());
-            setRegFlags(Reg.A, disjunction);
-        }
-            break;
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.or(cpu.registers[A], cpu.registers[reg]));
+                return nextPC;
+            };
+        }
+        case OR_A_N8: 
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.or(cpu.registers[A], cpu.read8AfterOpcode()));
+                return nextPC;
+            };
+        case OR_A_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.or(cpu.registers[A], cpu.read8AtHl()));
+                return nextPC;
+            };
         case XOR_A_R8: {
-            Reg reg = extractReg(opcode, 0);
-            int exDisjunction = xor(registerFile.get(Reg.A), registerFile.get(reg));
-            setRegFlags(Reg.A, exDisjunction);
-
-        }
-            break;
-        case XOR_A_N8: {
-            int exDisjunction = xor(registerFile.get(Reg.A), read8AfterOpcode());
-            setRegFlags(Reg.A, exDisjunction);
-
-        }
-            break;
-        case XOR_A_HLR: {
-            int exDisjunction = xor(registerFile.get(Reg.A), read8AtHl());
-            setRegFlags(Reg.A, exDisjunction);
-        }
-            break;
-        case CPL: {
-            int complement = complement8((registerFile.get(Reg.A)));
-            registerFile.set(Reg.A, complement);
-            combineAluFlags(complement, FlagSrc.CPU, FlagSrc.V1, FlagSrc.V1, FlagSrc.CPU);
-
-        }
-            break;
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.xor(cpu.registers[A], cpu.registers[reg]));
+                return nextPC;
+            };
+        }
+        case XOR_A_N8: 
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.xor(cpu.registers[A], cpu.read8AfterOpcode()));
+                return nextPC;
+            };
+        case XOR_A_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(A, cpu.alu.xor(cpu.registers[A], cpu.read8AtHl()));
+                return nextPC;
+            };
+        case CPL: 
+            return (cpu, nextPC) -> {
+                int complement = complement8(cpu.registers[A]);
+                cpu.setReg(A, complement);
+                cpu.combineAluFlags(complement, FlagSrc.CPU, FlagSrc.V1, FlagSrc.V1, FlagSrc.CPU);
+                return nextPC;
+            };
 
         // Rotate, shift
         case ROTCA: {
             RotDir direction = extractDirection(opcode);
-            int rotated = rotate(direction, registerFile.get(Reg.A));          
-            setRegFromAlu(Reg.A, rotated);
-            combineAluFlags(rotated, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0,
-                    FlagSrc.ALU);
-
+            return (cpu, nextPC) -> {
+                int rotated = cpu.alu.rotate(direction, cpu.registers[A]);          
+                cpu.setRegFromAlu(A, rotated);
+                cpu.combineAluFlags(rotated, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+                return nextPC;
+            };
         }
-            break;
         case ROTA: {
-            RotDir direction;
-            direction = extractDirection(opcode);
-            int rotated = rotate(direction, registerFile.get(Reg.A), test(registerFile.get(Reg.F), 4));
-            setRegFromAlu(Reg.A, rotated);
-            combineAluFlags(rotated, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
-
+            RotDir direction = extractDirection(opcode);
+            return (cpu, nextPC) -> {
+                int rotated = cpu.alu.rotate(direction, cpu.registers[A], cpu.carry());
+                cpu.setRegFromAlu(A, rotated);
+                cpu.combineAluFlags(rotated, FlagSrc.V0, FlagSrc.V0, FlagSrc.V0, FlagSrc.ALU);
+                return nextPC;
+            };
         }
-            break;
         case ROTC_R8: {
-            Reg reg = extractReg(opcode, 0);
+            int reg = extractReg(opcode, 0);
             RotDir direction = extractDirection(opcode);
-            int rotated = rotate(direction, registerFile.get(reg));
-            setRegFlags(reg, rotated);
-
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(reg, cpu.alu.rotate(direction, cpu.registers[reg]));
+                return nextPC;
+            };
         }
-            break;
         case ROT_R8: {
-            Reg reg = extractReg(opcode, 0);
+            int reg = extractReg(opcode, 0);
             RotDir direction = extractDirection(opcode);
-            int rotated = rotate(direction, registerFile.get(reg), test(registerFile.get(Reg.F), 4));
-            setRegFlags(reg, rotated);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(reg, cpu.alu.rotate(direction, cpu.registers[reg], cpu.carry()));
+                return nextPC;
+            };
         }
-            break;
         case ROTC_HLR: {
             RotDir direction = extractDirection(opcode);
-            int rotated = rotate(direction, read8AtHl());
-            write8AtHlAndSetFlags(rotated);
-
+            return (cpu, nextPC) -> {
+                cpu.write8AtHlAndSetFlags(cpu.alu.rotate(direction, cpu.read8AtHl()));
+                return nextPC;
+            };
         }
-            break;
         case ROT_HLR: {
             RotDir direction = extractDirection(opcode);
-            int rotated = rotate(direction, read8AtHl(), test(registerFile.get(Reg.F), 4));
-            write8AtHlAndSetFlags(rotated);
-
+            return (cpu, nextPC) -> {
+                cpu.write8AtHlAndSetFlags(cpu.alu.rotate(direction, cpu.read8AtHl(), cpu.carry()));
+                return nextPC;
+            };
         }
-            break;
         case SWAP_R8: {
-            Reg reg = extractReg(opcode, 0);
-            int swapped = swap(registerFile.get(reg));
-            setRegFlags(reg, swapped);
-
-        }
-            break;
-        case SWAP_HLR: {
-            int swapped = swap(read8AtHl());
-            write8AtHlAndSetFlags(swapped);
-        }
-            break;
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(reg, cpu.alu.swap(cpu.registers[reg]));
+                return nextPC;
+            };
+        }
+        case SWAP_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.write8AtHlAndSetFlags(cpu.alu.swap(cpu.read8AtHl()));
+                return nextPC;
+            };
         case SLA_R8: {
-            Reg reg = extractReg(opcode, 0);
-            int shifted = shiftLeft(registerFile.get(reg));
-            setRegFlags(reg, shifted);
-
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(reg, cpu.alu.shiftLeft(cpu.registers[reg]));
+                return nextPC;
+            };
         }
-            break;
         case SRA_R8: {
-            Reg reg = extractReg(opcode, 0);
-            int shifted = shiftRightA(registerFile.get(reg));
-            setRegFlags(reg, shifted);
-
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(reg, cpu.alu.shiftRightA(cpu.registers[reg]));
+                return nextPC;
+            };
         }
-            break;
         case SRL_R8: {
-            Reg reg = extractReg(opcode, 0);
-            int shifted = shiftRightL(registerFile.get(reg));
-            setRegFlags(reg, shifted);
-        }
-            break;
-        case SLA_HLR: {
-            int shifted = shiftLeft(read8AtHl());
-            write8AtHlAndSetFlags(shifted);
-
-        }
-            break;
-        case SRA_HLR: {
-            int shifted = shiftRightA(read8AtHl());
-            write8AtHlAndSetFlags(shifted);
-
-        }
-            break;
-        case SRL_HLR: {
-            int shifted = shiftRightL(read8AtHl());
-            write8AtHlAndSetFlags(shifted);
-        }
-            break;
+            int reg = extractReg(opcode, 0);
+            return (cpu, nextPC) -> {
+                cpu.setRegFlags(reg, cpu.alu.shiftRightL(cpu.registers[reg]));
+                return nextPC;
+            };
+        }
+        case SLA_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.write8AtHlAndSetFlags(cpu.alu.shiftLeft(cpu.read8AtHl()));
+                return nextPC;
+            };
+        case SRA_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.write8AtHlAndSetFlags(cpu.alu.shiftRightA(cpu.read8AtHl()));
+                return nextPC;
+            };
+        case SRL_HLR: 
+            return (cpu, nextPC) -> {
+                cpu.write8AtHlAndSetFlags(cpu.alu.shiftRightL(cpu.read8AtHl()));
+                return nextPC;
+            };
 
         // Bit test and set
         case BIT_U3_R8: {
-            Reg reg = extractReg(opcode, 0);
+            int reg = extractReg(opcode, 0);
             int index = extractIndex(opcode);
-            boolean z = !test(registerFile.get(reg), index);
-            registerFile.set(Reg.F,
-                    maskZNHC(z, false, true, test(registerFile.get(Reg.F), 4))); //test calls to determine flags
-
+            return (cpu, nextPC) -> {
+                boolean z = !test(cpu.registers[reg], index);
+                cpu.setReg(F, maskZNHC(z, false, true, cpu.carry()));
+                return nextPC;
+            };
         }
-            break;
         case BIT_U3_HLR: {
             int index = extractIndex(opcode);
-            boolean z = !test(read8AtHl(), index);
-            registerFile.set(Reg.F,
-                    maskZNHC(z, false, true, test(registerFile.get(Reg.F), 4)));
-
+            return (cpu, nextPC) -> {
+                boolean z = !test(cpu.read8AtHl(), index);
+                cpu.setReg(F, maskZNHC(z, false, true, cpu.carry()));
+                return nextPC;
+            };
         }
-            break;
         case CHG_U3_R8: {
-            Reg reg = extractReg(opcode, 0);
+            int reg = extractReg(opcode, 0);
             int index = extractIndex(opcode);
-            int setValue = 0;
-            if (test(opcode.encoding, 6)) {
-                // case of set
-                setValue = setResetIndex(registerFile.get(reg), index, true);
-                registerFile.set(reg, setValue); 
-            } else { 
-                // case of reset
-                setValue = setResetIndex(registerFile.get(reg), index, false);
-                registerFile.set(reg, setValue);
-            }
-           
-
+            // set if bit 6 is 1, reset otherwise
+            boolean newValue = test(opcode.encoding, 6);
+            return (cpu, nextPC) -> {
+                cpu.setReg(reg, Bits.set(cpu.registers[reg], index, newValue));
+                return nextPC;
+            };
         }
-            break;
         case CHG_U3_HLR: {
             int index = extractIndex(opcode);
-            int setValue = 0;
-            if (test(opcode.encoding, 6)) { // case of set
-                setValue = setResetIndex(read8AtHl(), index, true);
-                write8AtHl(setValue);
-            } else {
-                //case of reset
-                setValue = setResetIndex(read8AtHl(), index, false);
-                write8AtHl(setValue);
-            }
-
+            boolean newValue = test(opcode.encoding, 6);
+            return (cpu, nextPC) -> {
+                cpu.write8AtHl(Bits.set(cpu.read8AtHl(), index, newValue));
+                return nextPC;
+            };
         }
-            break;
 
         // Misc. ALU 
-        case DAA: {
-            boolean n = test(registerFile.get(Reg.F), 6);
-            boolean h = test(registerFile.get(Reg.F), 5);
-            boolean c = test(registerFile.get(Reg.F), 4);
-            int adjusted = bcdAdjust(registerFile.get(Reg.A), n, h, c);
-
-            setRegFromAlu(Reg.A, adjusted);
-            combineAluFlags(adjusted, FlagSrc.ALU, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU);
-        }
-            break;
+        case DAA: 
+            return (cpu, nextPC) -> {
+                int f = cpu.registers[F];
+                int adjusted = cpu.alu.bcdAdjust(cpu.registers[A], test(f, 6), test(f, 5), test(f, 4));
+                cpu.setRegFromAlu(A, adjusted);
+                cpu.combineAluFlags(adjusted, FlagSrc.ALU, FlagSrc.CPU, FlagSrc.V0, FlagSrc.ALU);
+                return nextPC;
+            };
         case SCCF: {
             if (test(opcode.encoding, 4)) {
-                registerFile.set(Reg.F,
-                        maskZNHC(test(registerFile.get(Reg.F), 7), false, false, !combineCAndOpcode(opcode)));
-            } else {
-                combineAluFlags(registerFile.get(Reg.F), FlagSrc.CPU,
-                        FlagSrc.V0, FlagSrc.V0, FlagSrc.V1);
+                // complements the carry for CCF, sets it for SCF
+                boolean complement = extractCarryUse(opcode);
+                return (cpu, nextPC) -> {
+                    int f = cpu.registers[F];
+                    cpu.setReg(F, maskZNHC(test(f, 7), false, false, !(complement && test(f, 4))));
+                    return nextPC;
+                };
             }
+            return (cpu, nextPC) -> {
+                cpu.combineAluFlags(cpu.registers[F], FlagSrc.CPU, FlagSrc.V0, FlagSrc.V0, FlagSrc.V1);
+                return nextPC;
+            };
         }
-            break;
  
         // Jumps
-        case JP_HL: {
-            nextPC = reg16(Reg16.HL);
-        }
-            break;
-        case JP_N16: {
-
-            nextPC = read16AfterOpcode();
-        }
-            break;
+        case JP_HL: 
+            return (cpu, nextPC) -> cpu.hl();
+        case JP_N16: 
+            return (cpu, nextPC) -> cpu.read16AfterOpcode();
         case JP_CC_N16: {
-            if(checkCondition(opcode)) {
-                nextNonIdleCycle += opcode.additionalCycles;
-                nextPC = read16AfterOpcode();
-            }
-        }
-            break;
-        case JR_E8: {
-            
-            int e8 = clip(16, signExtend8((read8AfterOpcode())));
-            nextPC = clip(16, nextPC + e8);
-
-        }
-            break;
+            int flagIndex = extractConditionFlag(opcode);
+            boolean expected = extractConditionValue(opcode);
+            int additionalCycles = opcode.additionalCycles;
+            return (cpu, nextPC) -> {
+                if (cpu.checkCondition(flagIndex, expected)) {
+                    cpu.nextNonIdleCycle += additionalCycles;
+                    return cpu.read16AfterOpcode();
+                }
+                return nextPC;
+            };
+        }
+        case JR_E8: 
+            return (cpu, nextPC) -> clip(16, nextPC + clip(16, signExtend8(cpu.read8AfterOpcode())));
         case JR_CC_E8: {
-            if(checkCondition(opcode)) {
-                nextNonIdleCycle += opcode.additionalCycles;
-                int e8 = clip(16, signExtend8((read8AfterOpcode()))); 
-                nextPC = clip(16, nextPC + e8);
- 
-            }
+            int flagIndex = extractConditionFlag(opcode);
+            boolean expected = extractConditionValue(opcode);
+            int additionalCycles = opcode.additionalCycles;
+            return (cpu, nextPC) -> {
+                if (cpu.checkCondition(flagIndex, expected)) {
+                    cpu.nextNonIdleCycle += additionalCycles;
+                    return clip(16, nextPC + clip(16, signExtend8(cpu.read8AfterOpcode())));
+                }
+                return nextPC;
+            };
         }
-            break;
+        
         // Calls and returns
-        case CALL_N16: {
-            push16(nextPC);
-            nextPC = read16AfterOpcode();
-            
-        }
-            break;
+        case CALL_N16: 
+            return (cpu, nextPC) -> {
+                cpu.push16(nextPC);
+                return cpu.read16AfterOpcode();
+            };
         case CALL_CC_N16: {
-            if(checkCondition(opcode)) {
-                nextNonIdleCycle += opcode.additionalCycles;
-                push16(nextPC);
-                nextPC = read16AfterOpcode();
-            }
+            int flagIndex = extractConditionFlag(opcode);
+            boolean expected = extractConditionValue(opcode);
+            int additionalCycles = opcode.additionalCycles;
+            return (cpu, nextPC) -> {
+                if (cpu.checkCondition(flagIndex, expected)) {
+                    cpu.nextNonIdleCycle += additionalCycles;
+                    cpu.push16(nextPC);
+                    return cpu.read16AfterOpcode();
+                }
+                return nextPC;
+            };
         }
-            break;
         case RST_U3: {
-            int index = extractIndex(opcode);
-            push16(nextPC);
-            nextPC = AddressMap.RESETS[index];
-        }
-            break;
-        case RET: {
-            nextPC = pop16();
-        }
-            break;
+            int resetAddress = AddressMap.RESETS[extractIndex(opcode)];
+            return (cpu, nextPC) -> {
+                cpu.push16(nextPC);
+                return resetAddress;
+            };
+        }
+        case RET: 
+            return (cpu, nextPC) -> cpu.pop16();
         case RET_CC: {
-            if(checkCondition(opcode)) {
-                nextNonIdleCycle += opcode.additionalCycles;
-                nextPC = pop16();
-            }
+            int flagIndex = extractConditionFlag(opcode);
+            boolean expected = extractConditionValue(opcode);
+            int additionalCycles = opcode.additionalCycles;
+            return (cpu, nextPC) -> {
+                if (cpu.checkCondition(flagIndex, expected)) {
+                    cpu.nextNonIdleCycle += additionalCycles;
+                    return cpu.pop16();
+                }
+                return nextPC;
+            };
         }
-            break;
+        
         // Interrupts
         case EDI: {
-            IME = test(opcode.encoding, 3) ;
-
-        }
-            break;
-        case RETI: {
-            IME = true;
-            nextPC = pop16();
-        }
-            break;
+            boolean enable = test(opcode.encoding, 3);
+            return (cpu, nextPC) -> {
+                cpu.IME = enable;
+                return nextPC;
+            };
+        }
+        case RETI: 
+            return (cpu, nextPC) -> {
+                cpu.IME = true;
+                return cpu.pop16();
+            };
+            
         // Misc control
-        case HALT: {                
-            nextNonIdleCycle = Long.MAX_VALUE;
-        }
-            break;
+        case HALT: 
+            return (cpu, nextPC) -> {
+                cpu.loopPure = false;
+                cpu.nextNonIdleCycle = Long.MAX_VALUE;
+                return nextPC;
+            };
         case STOP:
-            throw new Error("STOP is not implemented");
+            return (cpu, nextPC) -> {
+                throw new Error("STOP is not implemented");
+            };
+        default:
+            throw new Error("Unknown opcode family " + opcode.family);
         }
-
-
-        PC = clip(16, nextPC);
-        nextNonIdleCycle += opcode.cycles;
-
     }
     
     private int read8(int address) {
+        //joypad, serial and timer registers change without the other components
+        //doing anything, so reading them prevents skipping an idle loop
+        if ((address >>> 3) == (AddressMap.REG_P1 >>> 3)) {
+            loopPure = false;
+        }
         return bus.read(address);
     }
 
     private int read8AtHl() {
 
-        int address = reg16(Reg16.HL);
+        int address = hl();
         return read8(address);
 
     }
@@ -753,24 +1256,32 @@ public final class Cpu implements Component, Clocked {
     }
 
     private void write8(int address, int v) {
+        loopPure = false;
+        //the rom range maps the banks, the registers and IE change what the other
+        //components do next or the interruptions serviceable
+        if (address < AddressMap.CARTRIDGE_ROM_END 
+                || (address >= AddressMap.REGS_START && address < AddressMap.HIGH_RAM_START)
+                || address == AddressMap.REG_IE) {
+            blockEnded = true;
+        }
         bus.write(address, v);
     }
 
     private void write16(int address, int v) {
-        bus.write(address, extract(v, 0, 8));
-        bus.write(address + 1, extract(v, 8, 8));
+        write8(address, extract(v, 0, 8));
+        write8(address + 1, extract(v, 8, 8));
     }
 
     private void write8AtHl(int v) {
 
-        write8(reg16(Reg16.HL), v);
+        write8(hl(), v);
     }
 
     private void push16(int v) {
         SP = extract(SP - 2, 0, 16);
 
-        bus.write(SP, extract(v, 0, 8)); //to get least significant 8 bits
-        bus.write(SP + 1, extract(v, 8, 8)); //to get most significant 8 bits
+        write8(SP, extract(v, 0, 8)); //to get least significant 8 bits
+        write8(SP + 1, extract(v, 8, 8)); //to get most significant 8 bits
 
     }
 
@@ -783,48 +1294,35 @@ public final class Cpu implements Component, Clocked {
     }
 
 
-    // Dealing with register couples
-    private int reg16(Reg16 r) {
-        int lowBits = 0;
-        int highBits = 0;
-        for (int i = 0; i < reg16Array.length; ++i) {
-            if (r == reg16Array[i]) {
-                highBits = registerFile.get(regArray[2 * i]);
-                lowBits = registerFile.get(regArray[2 * i + 1]);
-            }
-        }
-        return make16(highBits, lowBits);
+    // Dealing with registers, values given are always 8 or 16 bits so unchecked
+    private void setReg(int r, int newV) {
+        registers[r] = newV;
     }
 
-    private void setReg16(Reg16 r, int newV) {
-        newV = checkBits16(newV);
-
-        int highBits = extract(newV, 8, 8);
-        int lowBits = extract(newV, 0, 8);
-
-        if (r == Reg16.AF) {
-            int zeroConverterF = lowBits & 0b1111_0000;
-
-            registerFile.set(Reg.A, highBits);
-            registerFile.set(Reg.F, zeroConverterF);
-
-        }
+    // Dealing with register couples
+    private int reg16(int r) {
+        return (registers[r] << 8) | registers[r + 1];
+    }
 
-        for (int i = 1; i < reg16Array.length; ++i) {
-            if (r == reg16Array[i]) {
-                registerFile.set(regArray[2 * i], highBits);
-                registerFile.set(regArray[2 * i + 1], lowBits);
+    private void setReg16(int r, int newV) {
+        registers[r] = newV >>> 8;
+        //the 4 least significant bits of F are always 0
+        registers[r + 1] = r == AF ? newV & 0b1111_0000 : newV & 0xFF;
+    }
 
-            }
-        }
+    private int hl() {
+        return (registers[H] << 8) | registers[L];
+    }
 
+    private void setHl(int newV) {
+        registers[H] = newV >>> 8;
+        registers[L] = newV & 0xFF;
     }
 
     //if the argument reg16 is AF , treats that as SP otherwise calls 
     //the usual setReg16
-    private void setReg16SP(Reg16 reg16, int newV) {
-        newV = checkBits16(newV);
-        if (reg16 == Reg16.AF) {
+    private void setReg16SP(int reg16, int newV) {
+        if (reg16 == AF) {
             SP = newV;
         } else {
             setReg16(reg16, newV);
@@ -833,20 +1331,115 @@ public final class Cpu implements Component, Clocked {
 
 
     /**
-     * @return an array to simplify usage of tests, containing PS, SP and flags
+     * @return a snapshot of the registers of the cpu and of its interruption state
      */
-    public int[] _testGetPcSpAFBCDEHL() {
-        int[] testArray = new int[10];
-        testArray[0] = PC;
-        testArray[1] = SP;
-        int i = 2;
+    public CpuState state() {
+        return new CpuState(PC, SP, registers, IME, IE, IF);
+    }
 
-        for (Reg r : regArray) {
-            testArray[i] = registerFile.get(r);
-            ++i;
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is nextNonIdleCycle, PC, SP, IE, IF, IME, the registers and 
+     * the high ram, the caches are not part of it
+     */
+    @Override
+    public int stateSize() {
+        return Long.BYTES + 2 * Short.BYTES + 3 + REGISTER_COUNT + highRam.stateSize();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.putLong(nextNonIdleCycle).putShort((short) PC).putShort((short) SP)
+              .put((byte) IE).put((byte) IF).put((byte) (IME ? 1 : 0));
+        for (int r : registers) {
+            buffer.put((byte) r);
         }
+        highRam.saveState(buffer);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     * forgets the idle loop and the instructions decoded, which may not be 
+     * the ones of the state loaded
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        nextNonIdleCycle = buffer.getLong();
+        PC = Short.toUnsignedInt(buffer.getShort());
+        SP = Short.toUnsignedInt(buffer.getShort());
+        IE = Byte.toUnsignedInt(buffer.get());
+        IF = Byte.toUnsignedInt(buffer.get());
+        IME = buffer.get() != 0;
+        for (int i = 0; i < REGISTER_COUNT; ++i) {
+            registers[i] = Byte.toUnsignedInt(buffer.get());
+        }
+        highRam.loadState(buffer);
+
+        loopHead = -1;
+        loopLength = 0;
+        loopPure = false;
+    }
 
-        return testArray;
+    /**
+     * Makes this cpu continue from the state of parent: it copies its registers
+     * and shares its high ram copy on write, the caches being rebuilt
+     * @param parent : cpu copied, used by the same thread during the call
+     */
+    public void forkFrom(Cpu parent) {
+        nextNonIdleCycle = parent.nextNonIdleCycle;
+        PC = parent.PC;
+        SP = parent.SP;
+        IE = parent.IE;
+        IF = parent.IF;
+        IME = parent.IME;
+        System.arraycopy(parent.registers, 0, registers, 0, REGISTER_COUNT);
+        highRam.shareContentOf(parent.highRam);
+
+        loopHead = -1;
+        loopLength = 0;
+        loopPure = false;
+    }
+
+    /**
+     * the counters are read without synchronization, by another thread than the 
+     * one running the cpu they may lag behind
+     * @return the number of instructions executed, by family, the iterations of 
+     * the idle loops skipped not being counted, all 0 if this cpu does not count them
+     */
+    public Map<Opcode.Family, Long> executedInstructions() {
+        Map<Opcode.Family, Long> instructions = new EnumMap<>(Opcode.Family.class);
+        for (Opcode opcode : Opcode.values()) {
+            instructions.merge(opcode.family, executedOpcodes[opcode.ordinal()], Long::sum);
+        }
+        return instructions;
+    }
+
+    /**
+     * @return the number of interrupts serviced, by interrupt
+     */
+    public Map<Interrupt, Long> servicedInterrupts() {
+        Map<Interrupt, Long> interrupts = new EnumMap<>(Interrupt.class);
+        for (Interrupt interrupt : Interrupt.values()) {
+            interrupts.put(interrupt, servicedInterrupts[interrupt.index()]);
+        }
+        return interrupts;
+    }
+
+    /**
+     * @return the number of cycles of idle loop iterations skipped
+     */
+    public long skippedIdleCycles() {
+        return skippedIdleCycles;
+    }
+
+    /**
+     * @return an array to simplify usage of tests, containing PS, SP and flags
+     */
+    public int[] _testGetPcSpAFBCDEHL() {
+        return state().pcSpAFBCDEHL();
     }
 
     /**
@@ -855,32 +1448,27 @@ public final class Cpu implements Component, Clocked {
      * @return : using the table in the instructions, returns identity of 
      * an 8 bits register, notice that all numbers shifted by 2 except the register A
      */
-    private Reg extractReg(Opcode opcode, int startBit) {
-        Reg reg = null;
+    private static int extractReg(Opcode opcode, int startBit) {
         int position = extract(opcode.encoding, startBit, 3);
         if (position == 7) {
-            reg = Reg.A;
+            return A;
         }
-
-        else if (position != 6) {
-            reg = regArray[position + 2];
-        }
-
-        return reg;
+        return position + B;
     }
 
 
     /**
      * @param opcode: opcode of the instruction
      * @return : does the same thing with extractReg but for the pairs of registers
-     *  this time using the table in the instructions
+     *  this time using the table in the instructions (AF standing for SP or AF
+     *  depending on the instruction)
      */
-    private Reg16 extractReg16(Opcode opcode) {
+    private static int extractReg16(Opcode opcode) {
         int position = extract(opcode.encoding, 4, 2);
-        return reg16Array[(position + 1) % reg16Array.length];
+        return position == 3 ? AF : 2 * position + BC;
     }
 
-    private int extractHlIncrement(Opcode opcode) {
+    private static int extractHlIncrement(Opcode opcode) {
         if (test(opcode.encoding, 4)) {
             return -1;
         }
@@ -888,16 +1476,16 @@ public final class Cpu implements Component, Clocked {
     }
 
 
-    private void setRegFromAlu(Reg r, int vf) {
-        registerFile.set(r, Alu.unpackValue(vf));
+    private void setRegFromAlu(int r, int vf) {
+        setReg(r, Alu.unpackValue(vf));
     }
 
     private void setFlags(int valueFlags) {
-        registerFile.set(Reg.F, Alu.unpackFlags(valueFlags));
+        setReg(F, Alu.unpackFlags(valueFlags));
     }
 
 
-    private void setRegFlags(Reg r, int vf) {
+    private void setRegFlags(int r, int vf) {
         setRegFromAlu(r, vf);
         setFlags(vf);
     }
@@ -915,7 +1503,7 @@ public final class Cpu implements Component, Clocked {
         int hValue = compareFlag(vf, h, 5);
         int cValue = compareFlag(vf, c, 4);
         int result = zValue + nValue + hValue + cValue;
-        registerFile.set(Reg.F, result);
+        setReg(F, result);
 
     }
 
@@ -931,7 +1519,7 @@ public final class Cpu implements Component, Clocked {
         }
 
         else if (fs == FlagSrc.CPU) {
-            value = registerFile.get(Reg.F) & value;
+            value = registers[F] & value;
         }
 
         return value;
@@ -944,7 +1532,7 @@ public final class Cpu implements Component, Clocked {
 
     }
 
-    private RotDir extractDirection(Opcode opcode) {
+    private static RotDir extractDirection(Opcode opcode) {
         if (test(opcode.encoding, 3)) {
             return RotDir.RIGHT;
         } else {
@@ -952,25 +1540,22 @@ public final class Cpu implements Component, Clocked {
         }
     }
 
-    private int extractIndex(Opcode opcode) {
+    private static int extractIndex(Opcode opcode) {
         int index = extract(opcode.encoding, 3, 3);
         return index;
     }
 
-    private int setResetIndex(int bits, int index, boolean newValue) {
-        return Bits.set(bits, index, newValue);
+    //bit 3 of the encoding tells if the carry is used (ADC, SBC, CCF)
+    private static boolean extractCarryUse(Opcode opcode) {
+        return test(opcode.encoding, 3);
     }
 
-    private boolean combineCAndOpcode(Opcode opcode) {
-
-        int encoding = opcode.encoding;
-        boolean b = test(encoding, 3);
-        boolean c = test(registerFile.get(Reg.F), 4);
-        return b & c;
+    private boolean carry() {
+        return test(registers[F], 4);
     }
     
-    private int getReg16SP(Reg16 r16) {
-        if (r16 == Reg16.AF) {
+    private int getReg16SP(int r16) {
+        if (r16 == AF) {
             return SP;
         } else {
             return reg16(r16);
@@ -985,31 +1570,40 @@ public final class Cpu implements Component, Clocked {
      */
     public void requestInterrupt(Interrupt i) {     //bu kesin public mi 
        IF = set(IF ,i.index(), true);                         
+       //a loop polling IF reads a new value from now on, and the joypad requests
+       //its interruption outside of the cycles of the events of the game boy
+       loopPure = false;
+       loopLength = 0;
+    }
+    
+    /**
+     * @param opcode : opcode of a conditional instruction
+     * @return : the index of the flag tested by the condition using the table in 
+     * the instructions (if condition is smaller than 2, Z which is the 7th bit 
+     * is examined and else C, the 4th)
+     */
+    private static int extractConditionFlag(Opcode opcode) {
+        return extract(opcode.encoding, 3, 2) < 0b10 ? 7 : 4;
     }
     
     /**
-     * @param opcode : opcode of the instruction
+     * @param opcode : opcode of a conditional instruction
+     * @return : the value the flag must have for the condition to hold (if the 
+     * condition is even it is negated)
+     */
+    private static boolean extractConditionValue(Opcode opcode) {
+        return extract(opcode.encoding, 3, 2) % 2 != 0;
+    }
+    
+    /**
+     * @param flagIndex : index in F of the flag to test
+     * @param expected : value the flag must have
      * @return : the boolean value indicates whether the nextNonIdlecycle should
-     * be updated or not using the table in the instructions.( if condition is
-     * smaller than 7th bit is examined and else the 4th. if the condition is even
-     * than we negate our boolean) 
+     * be updated or not
      */
-    private boolean checkCondition(Opcode opcode) {         
-        int condition = extract(opcode.encoding, 3, 2);
-        boolean flag;
-        if(condition < 0b10) {
-            flag = test(registerFile.get(Reg.F), 7);
-        }
-        
-        else {
-            flag = test(registerFile.get(Reg.F), 4);
-        }
-        
-        if(condition % 2 == 0) {
-            flag = !flag;
-        }
-        return flag;
-     }
+    private boolean checkCondition(int flagIndex, boolean expected) {         
+        return test(registers[F], flagIndex) == expected;
+    }
    
     private int findInterruption() {
         int conjunctionIE_IF = IE & IF;
@@ -1023,15 +1617,6 @@ public final class Cpu implements Component, Clocked {
         }
     }
 
-    private enum Reg implements Register {
-
-        A, F, B, C, D, E, H, L
-    }
-
-    private enum Reg16 implements Register {
-
-        AF, BC, DE, HL
-    }
     
     
      //Interruption types
@@ -1044,13 +1629,14 @@ public final class Cpu implements Component, Clocked {
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Component#attachTo(ch.epfl.gameboj.Bus)
      */
-    //calling the super method from implemented interface Component
-    //enabling attachment to bus
+    //keeping the bus for memory accesses and attaching the cpu over
+    //IF and the high ram range (IE included)
     @Override
     public void attachTo(Bus bus) {
         Objects.requireNonNull(bus);
         this.bus = bus;
-        Component.super.attachTo(bus);
+        bus.attach(this, AddressMap.REG_IF, AddressMap.REG_IF + 1);
+        bus.attach(this, AddressMap.HIGH_RAM_START, AddressMap.REG_IE + 1);
 
     }
 
@@ -0,0 +1,168 @@
+package ch.epfl.gameboj.component.cpu;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import ch.epfl.gameboj.bits.Bits;
+
+/**
+ * immutable snapshot of the registers of a cpu and of its interruption state
+ */
+public final class CpuState {
+
+    //CONSTANTS
+    private static final int A = 0, F = 1, B = 2, C = 3, D = 4, E = 5, H = 6, L = 7;
+
+    //FIELDS
+    private final int pc;
+    private final int sp;
+    //8 bit registers, in the order A, F, B, C, D, E, H, L
+    private final int[] registers;
+    private final boolean ime;
+    private final int ie;
+    private final int iF;
+
+    /**
+     * @param pc : program counter
+     * @param sp : stack pointer
+     * @param registers : 8 bit registers in the order A, F, B, C, D, E, H, L, copied
+     * @param ime : interrupt master enable
+     * @param ie : interrupt enable register
+     * @param iF : interrupt flag register
+     */
+    CpuState(int pc, int sp, int[] registers, boolean ime, int ie, int iF) {
+        this.pc = pc;
+        this.sp = sp;
+        this.registers = registers.clone();
+        this.ime = ime;
+        this.ie = ie;
+        this.iF = iF;
+    }
+
+    /**
+     * @return the program counter
+     */
+    public int pc() {
+        return pc;
+    }
+
+    /**
+     * @return the stack pointer
+     */
+    public int sp() {
+        return sp;
+    }
+
+    public int a() {
+        return registers[A];
+    }
+
+    public int f() {
+        return registers[F];
+    }
+
+    public int b() {
+        return registers[B];
+    }
+
+    public int c() {
+        return registers[C];
+    }
+
+    public int d() {
+        return registers[D];
+    }
+
+    public int e() {
+        return registers[E];
+    }
+
+    public int h() {
+        return registers[H];
+    }
+
+    public int l() {
+        return registers[L];
+    }
+
+    public int af() {
+        return Bits.make16(registers[A], registers[F]);
+    }
+
+    public int bc() {
+        return Bits.make16(registers[B], registers[C]);
+    }
+
+    public int de() {
+        return Bits.make16(registers[D], registers[E]);
+    }
+
+    public int hl() {
+        return Bits.make16(registers[H], registers[L]);
+    }
+
+    /**
+     * @return whether interruptions are enabled (IME)
+     */
+    public boolean interruptsEnabled() {
+        return ime;
+    }
+
+    /**
+     * @return the interrupt enable register (IE)
+     */
+    public int interruptEnable() {
+        return ie;
+    }
+
+    /**
+     * @return the interrupt flag register (IF)
+     */
+    public int interruptFlags() {
+        return iF;
+    }
+
+    /**
+     * @return an array containing PC, SP, A, F, B, C, D, E, H and L in that order
+     */
+    public int[] pcSpAFBCDEHL() {
+        int[] array = new int[2 + registers.length];
+        array[0] = pc;
+        array[1] = sp;
+        System.arraycopy(registers, 0, array, 2, registers.length);
+        return array;
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#hashCode()
+     * returns hashed value of all the fields
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hash(pc, sp, Arrays.hashCode(registers), ime, ie, iF);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#equals(java.lang.Object)
+     * compares all the registers of the object and the parameter
+     */
+    @Override
+    public boolean equals(Object that) {
+        if (!(that instanceof CpuState)) {
+            return false;
+        }
+        CpuState thatState = (CpuState) that;
+        return pc == thatState.pc && sp == thatState.sp && ime == thatState.ime
+                && ie == thatState.ie && iF == thatState.iF
+                && Arrays.equals(registers, thatState.registers);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return String.format("PC=%04X SP=%04X AF=%04X BC=%04X DE=%04X HL=%04X IME=%b IE=%02X IF=%02X",
+                pc, sp, af(), bc(), de(), hl(), ime, ie, iF);
+    }
+}
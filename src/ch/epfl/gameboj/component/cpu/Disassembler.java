@@ -0,0 +1,91 @@
+package ch.epfl.gameboj.component.cpu;
+
+import static ch.epfl.gameboj.bits.Bits.clip;
+import static ch.epfl.gameboj.bits.Bits.signExtend8;
+
+import java.util.function.IntUnaryOperator;
+
+import ch.epfl.gameboj.component.cpu.Opcode.Kind;
+
+/**
+ * turns the bytes of an instruction back into text: the name of its opcode
+ * followed by its immediate operand if it has one, the target being given
+ * for relative jumps
+ */
+public final class Disassembler {
+
+    //CONSTANTS
+    private static final int PREFIX = 0xCB;
+    private static final int OPCODE_COUNT = 256;
+    private static final Opcode[] DIRECT_OPCODES = opcodes(Kind.DIRECT);
+    private static final Opcode[] PREFIXED_OPCODES = opcodes(Kind.PREFIXED);
+
+    private Disassembler() {}
+
+    /**
+     * @param bytes : gives the i-th byte of the instruction (from 0 to 2),
+     * unsigned, only the ones the instruction has being asked
+     * @return the length of the instruction in bytes, 1 for a byte which is
+     * not an opcode
+     */
+    public static int length(IntUnaryOperator bytes) {
+        Opcode opcode = opcode(bytes);
+        return opcode == null ? 1 : opcode.totalBytes;
+    }
+
+    /**
+     * @param bytes : gives the i-th byte of the instruction (from 0 to 2),
+     * unsigned, only the ones the instruction has being asked
+     * @param address : address of the instruction, for the targets of relative jumps
+     * @return the text of the instruction, DB followed by the byte if it is not
+     * an opcode
+     */
+    public static String disassemble(IntUnaryOperator bytes, int address) {
+        Opcode opcode = opcode(bytes);
+        if (opcode == null) {
+            return String.format("DB $%02X", bytes.applyAsInt(0));
+        }
+        //prefixed instructions have no operand
+        if (opcode.kind == Kind.PREFIXED || opcode.totalBytes == 1) {
+            return opcode.name();
+        }
+        if (opcode.totalBytes == 3) {
+            return String.format("%s $%04X", opcode.name(),
+                    bytes.applyAsInt(1) | bytes.applyAsInt(2) << Byte.SIZE);
+        }
+        int operand = bytes.applyAsInt(1);
+        switch (opcode.family) {
+        case JR_E8:
+        case JR_CC_E8:
+            return String.format("%s $%04X", opcode.name(),
+                    clip(16, address + opcode.totalBytes + signExtend8(operand)));
+        case LD_HLSP_S8:
+            return String.format("%s %+d", opcode.name(), signExtend8(operand));
+        default:
+            return String.format("%s $%02X", opcode.name(), operand);
+        }
+    }
+
+    /**
+     * @param bytes : gives the i-th byte of the instruction
+     * @return the opcode of the instruction, null if there is none
+     */
+    private static Opcode opcode(IntUnaryOperator bytes) {
+        int encoding = bytes.applyAsInt(0);
+        return encoding == PREFIX ? PREFIXED_OPCODES[bytes.applyAsInt(1)] : DIRECT_OPCODES[encoding];
+    }
+
+    /**
+     * @param kind : kind of opcode
+     * @return the opcodes of that kind indexed by encoding, null where there is none
+     */
+    private static Opcode[] opcodes(Kind kind) {
+        Opcode[] opcodes = new Opcode[OPCODE_COUNT];
+        for (Opcode opcode : Opcode.values()) {
+            if (opcode.kind == kind) {
+                opcodes[opcode.encoding] = opcode;
+            }
+        }
+        return opcodes;
+    }
+}
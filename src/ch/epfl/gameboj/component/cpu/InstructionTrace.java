@@ -0,0 +1,138 @@
+package ch.epfl.gameboj.component.cpu;
+
+import static ch.epfl.gameboj.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * trace of the last instructions executed by a cpu built with it, kept in a
+ * ring buffer allocated once out of the heap: for each instruction (or
+ * interrupt serviced) the cycle it starts at, PC, the opcode, the registers,
+ * SP, IME, IE and IF before it is executed, in a record of RECORD_SIZE bytes
+ *
+ * the trace can be written to a file, the records of which TraceDecoder turns
+ * into text: a header (MAGIC, VERSION, RECORD_SIZE, the number of events
+ * recorded since the start and the number of records in the file) followed
+ * by the records, from the oldest to the newest, each one being:
+ * cycle (8 bytes), registers A to L (8 bytes), PC (2 bytes), SP (2 bytes),
+ * event (2 bytes, IME in its highest bit), IE (1 byte), IF (1 byte)
+ */
+public final class InstructionTrace {
+
+    //CONSTANTS
+    //first bytes of a trace file ("GBJT") and version of its format, to be
+    //incremented whenever the records or the opcodes change
+    public static final int MAGIC = 0x47424A54;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 3 * Integer.BYTES + Long.BYTES + Integer.BYTES;
+    public static final int RECORD_SIZE = 24;
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+    //event of an interrupt serviced, plus its index, the other events being
+    //the ordinals of the opcodes executed
+    public static final int INTERRUPT_EVENT = 0x7FF0;
+    public static final int IME_BIT = 0x8000;
+    private static final int REGISTER_COUNT = 8;
+
+    //FIELDS
+    private final ByteBuffer records;
+    private final int capacity;
+    //file written if the game boy fails, null if none
+    private final Path failureDump;
+    //index of the next record to write, and number of events recorded
+    private int next = 0;
+    private long recorded = 0;
+
+    /**
+     * @param capacity : number of records kept, the oldest being overwritten
+     * @param failureDump : file the trace is written to if the game boy throws
+     * an exception, null if it is not written
+     * throws IllegalArgumentException if the capacity is not strictly positive
+     * or too big for one buffer
+     */
+    public InstructionTrace(int capacity, Path failureDump) {
+        checkArgument(capacity > 0 && capacity <= Integer.MAX_VALUE / RECORD_SIZE);
+        this.capacity = capacity;
+        this.failureDump = failureDump;
+        records = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+    }
+
+    /**
+     * records an event, nothing being allocated
+     * @param cycle : cycle at which it starts
+     * @param pc : PC before it
+     * @param sp : SP before it
+     * @param event : ordinal of the opcode executed, or INTERRUPT_EVENT plus the
+     * index of the interrupt serviced
+     * @param registers : the 8 bit registers, from A to L
+     * @param ime : IME before it
+     * @param ie : IE before it
+     * @param iF : IF before it
+     */
+    void record(long cycle, int pc, int sp, int event, int[] registers, boolean ime, int ie, int iF) {
+        long packed = 0;
+        for (int i = 0; i < REGISTER_COUNT; ++i) {
+            packed = packed << Byte.SIZE | registers[i];
+        }
+        //the last 8 bytes are written at once, as are the others
+        long last = (long) pc << 48 | (long) sp << 32 | (long) (ime ? event | IME_BIT : event) << 16 
+                | ie << 8 | iF;
+        int offset = next * RECORD_SIZE;
+        records.putLong(offset, cycle)
+               .putLong(offset + 8, packed)
+               .putLong(offset + 16, last);
+        next = next + 1 == capacity ? 0 : next + 1;
+        ++recorded;
+    }
+
+    /**
+     * @return the number of events recorded since the start, the last
+     * capacity ones being kept
+     */
+    public long recorded() {
+        return recorded;
+    }
+
+    /**
+     * writes the trace to a file, to be called by the thread running the cpu
+     * @param file : file written, replaced if it exists
+     * @throws IOException if it can not be written
+     */
+    public void dump(Path file) throws IOException {
+        int count = (int) Math.min(recorded, capacity);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC).putInt(VERSION).putInt(RECORD_SIZE)
+                .putLong(recorded).putInt(count)
+                .flip();
+        //the oldest record is the next one to be overwritten once the buffer is full
+        int oldest = count < capacity ? 0 : next;
+        ByteBuffer older = records.duplicate().position(oldest * RECORD_SIZE).limit(count * RECORD_SIZE);
+        ByteBuffer newer = records.duplicate().position(0).limit(oldest * RECORD_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ByteBuffer buffer : new ByteBuffer[] { header, older, newer }) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * writes the trace to its failure file, if it has one, after the game boy
+     * threw failure, to which an error writing it is added as suppressed
+     * @param failure : exception thrown by the game boy
+     */
+    public void dumpAfter(Throwable failure) {
+        if (failureDump != null) {
+            try {
+                dump(failureDump);
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package ch.epfl.gameboj.component.cpu;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.IntUnaryOperator;
+
+import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.memory.BootRom;
+import ch.epfl.gameboj.component.memory.BootRomController;
+
+/**
+ * profiler of the instructions executed by a cpu built with it: it counts them
+ * by opcode and by location, the location of an instruction in cartridge rom
+ * being its bank and address so that two banks mapped at the same address are
+ * told apart, and counts the backward jumps (JP and JR), which close the loops, then
+ * reports the hottest instructions and loops with their disassembly
+ *
+ * the counters are primitive arrays indexed by location: the boot rom, then
+ * the whole cartridge rom, then the addresses from 0x8000 to 0xFFFF
+ * the iterations of the idle loops the cpu skips are not executed, so they are
+ * only counted as cycles skipped by loop
+ */
+public final class Profiler {
+
+    //CONSTANTS
+    private static final int BANK_BITS = 14;
+    private static final int BANK_MASK = (1 << BANK_BITS) - 1;
+    private static final int BOOT_ROM_LOCATION = 0;
+    private static final int ROM_LOCATION = BOOT_ROM_LOCATION + AddressMap.BOOT_ROM_SIZE;
+    private static final int RAM_START = AddressMap.CARTRIDGE_ROM_END;
+    private static final int RAM_SIZE = 0x10000 - RAM_START;
+    private static final int DEFAULT_TOP = 20;
+    //instructions listed at most for a loop, and size of the largest loops 
+    //reported, farther backward jumps being rather the ones of main loops
+    private static final int LOOP_LISTING = 32;
+    private static final int MAX_LOOP_SIZE = 0x400;
+
+    //FIELDS
+    private final Cartridge cartridge;
+    private final BootRomController bootRomController;
+    private final Bus bus;
+    private final int ramLocation;
+    //instructions executed by ordinal of their opcode
+    private final long[] opcodeCounts = new long[Opcode.values().length];
+    //instructions executed, and backward jumps with the address they last jumped
+    //to, by location of the instruction
+    private final long[] instructionCounts;
+    private final long[] backwardJumps;
+    private final int[] backwardJumpTargets;
+    //cycles of idle loops skipped by location of their head, only updated when
+    //the cpu skips some, which is rare
+    private final Map<Integer, Long> skippedIdleCycles = new HashMap<>();
+
+    /**
+     * @param cartridge : cartridge of the game boy profiled
+     * @param bootRomController : its boot rom controller, to know whether the
+     * instructions at the start of the address space are the ones of the boot rom
+     * @param bus : its bus, through which the instructions out of the rom are read
+     * for the report
+     */
+    public Profiler(Cartridge cartridge, BootRomController bootRomController, Bus bus) {
+        this.cartridge = Objects.requireNonNull(cartridge);
+        this.bootRomController = Objects.requireNonNull(bootRomController);
+        this.bus = Objects.requireNonNull(bus);
+        ramLocation = ROM_LOCATION + cartridge.romSize();
+        int locations = ramLocation + RAM_SIZE;
+        instructionCounts = new long[locations];
+        backwardJumps = new long[locations];
+        backwardJumpTargets = new int[locations];
+    }
+
+    /**
+     * counts an instruction about to be executed
+     * @param opcode : its opcode
+     * @param pc : its address
+     */
+    void instruction(Opcode opcode, int pc) {
+        ++opcodeCounts[opcode.ordinal()];
+        ++instructionCounts[location(pc)];
+    }
+
+    /**
+     * counts a jump to an address lower than or equal to the one of the instruction
+     * @param pc : address of the instruction
+     * @param target : address jumped to
+     */
+    void backwardJump(int pc, int target) {
+        int location = location(pc);
+        ++backwardJumps[location];
+        backwardJumpTargets[location] = target;
+    }
+
+    /**
+     * counts the cycles of the iterations of an idle loop skipped
+     * @param head : address of the first instruction of the loop
+     * @param cycles : cycles skipped
+     */
+    void skippedIdleLoop(int head, long cycles) {
+        skippedIdleCycles.merge(location(head), cycles, Long::sum);
+    }
+
+    /**
+     * @return the number of instructions executed, by opcode
+     */
+    public Map<Opcode, Long> opcodeCounts() {
+        Map<Opcode, Long> counts = new EnumMap<>(Opcode.class);
+        for (Opcode opcode : Opcode.values()) {
+            counts.put(opcode, opcodeCounts[opcode.ordinal()]);
+        }
+        return counts;
+    }
+
+    /**
+     * writes the report with the default number of lines by section
+     * @param out : stream to write to
+     */
+    public void report(PrintStream out) {
+        report(out, DEFAULT_TOP);
+    }
+
+    /**
+     * writes the opcodes executed the most, the hottest instructions and the
+     * hottest loops, a loop being the instructions from the target of a backward
+     * jump to the jump, of at most MAX_LOOP_SIZE bytes, as hot as the 
+     * instructions executed in it; the
+     * instructions out of the rom are disassembled from the memory as it is now
+     * @param out : stream to write to
+     * @param top : number of lines of each section
+     */
+    public void report(PrintStream out, int top) {
+        long total = 0;
+        for (long count : opcodeCounts) {
+            total += count;
+        }
+        out.printf(Locale.ROOT, "%d instructions executed%n", total);
+
+        out.printf(Locale.ROOT, "%nopcodes%n");
+        List<Opcode> opcodes = new ArrayList<>(List.of(Opcode.values()));
+        opcodes.sort(Comparator.comparingLong((Opcode o) -> opcodeCounts[o.ordinal()]).reversed());
+        for (Opcode opcode : opcodes.subList(0, Math.min(top, opcodes.size()))) {
+            long count = opcodeCounts[opcode.ordinal()];
+            if (count == 0) {
+                break;
+            }
+            out.printf(Locale.ROOT, "%12d %5.1f%%  %s%n", count, percent(count, total), opcode);
+        }
+
+        out.printf(Locale.ROOT, "%ninstructions%n");
+        for (int location : hottest(instructionCounts, top)) {
+            long count = instructionCounts[location];
+            out.printf(Locale.ROOT, "%12d %5.1f%%  %-11s %s%n", count, percent(count, total),
+                    name(location), disassemble(location));
+        }
+
+        out.printf(Locale.ROOT, "%nloops%n");
+        List<long[]> loops = new ArrayList<>();
+        for (int tail : hottest(backwardJumps, Integer.MAX_VALUE)) {
+            int head = headLocation(tail);
+            if (tail - head >= MAX_LOOP_SIZE) {
+                continue;
+            }
+            long executed = 0;
+            for (int location = head; location <= tail; ++location) {
+                executed += instructionCounts[location];
+            }
+            loops.add(new long[] { head, tail, executed });
+        }
+        loops.sort(Comparator.comparingLong((long[] loop) -> loop[2]).reversed());
+        for (long[] loop : loops.subList(0, Math.min(top, loops.size()))) {
+            int head = (int) loop[0];
+            int tail = (int) loop[1];
+            out.printf(Locale.ROOT, "%12d %5.1f%%  %s..%s, %d iterations%n", loop[2], percent(loop[2], total),
+                    name(head), name(tail), backwardJumps[tail]);
+            int location = head;
+            for (int listed = 0; location <= tail && listed < LOOP_LISTING; ++listed) {
+                out.printf(Locale.ROOT, "%12d         %-11s %s%n", instructionCounts[location],
+                        name(location), disassemble(location));
+                location += Disassembler.length(bytes(location));
+            }
+            if (location <= tail) {
+                out.printf(Locale.ROOT, "%21s...%n", "");
+            }
+        }
+
+        if (!skippedIdleCycles.isEmpty()) {
+            out.printf(Locale.ROOT, "%nidle loops skipped%n");
+            skippedIdleCycles.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Long>comparingByValue().reversed())
+                .limit(top)
+                .forEach(e -> out.printf(Locale.ROOT, "%12d cycles  %s%n", e.getValue(), name(e.getKey())));
+        }
+    }
+
+    /**
+     * @param address : address of an instruction
+     * @return its location with the current banks
+     */
+    private int location(int address) {
+        if (address >= RAM_START) {
+            return ramLocation + address - RAM_START;
+        } else {
+            //the locations of the boot and cartridge roms are the controller's
+            return BOOT_ROM_LOCATION + bootRomController.romLocation(address);
+        }
+    }
+
+    /**
+     * @param location : location of an instruction
+     * @return its address, the one of a rom bank other than 0 being taken in the
+     * range 0x4000 to 0x7FFF where it is usually selected
+     */
+    private int address(int location) {
+        if (location >= ramLocation) {
+            return RAM_START + location - ramLocation;
+        } else if (location >= ROM_LOCATION) {
+            int offset = location - ROM_LOCATION;
+            return offset >>> BANK_BITS == 0 ? offset : (1 << BANK_BITS) | (offset & BANK_MASK);
+        } else {
+            return location - BOOT_ROM_LOCATION;
+        }
+    }
+
+    /**
+     * @param location : location of an instruction
+     * @return the name of the location, the bank being given for the rom
+     */
+    private String name(int location) {
+        if (location >= ramLocation) {
+            return String.format("%04X", address(location));
+        } else if (location >= ROM_LOCATION) {
+            return String.format("%02X:%04X", (location - ROM_LOCATION) >>> BANK_BITS, address(location));
+        } else {
+            return String.format("boot:%04X", address(location));
+        }
+    }
+
+    /**
+     * @param tail : location of a backward jump
+     * @return the location of the address it last jumped to if it is in the same
+     * memory and bank, the one of the jump otherwise
+     */
+    private int headLocation(int tail) {
+        int pc = address(tail);
+        int target = backwardJumpTargets[tail];
+        boolean sameBank = tail >= ramLocation || (pc >>> BANK_BITS) == (target >>> BANK_BITS);
+        return sameBank && target <= pc ? tail - (pc - target) : tail;
+    }
+
+    /**
+     * @param location : location of an instruction
+     * @return its text
+     */
+    private String disassemble(int location) {
+        return Disassembler.disassemble(bytes(location), address(location));
+    }
+
+    /**
+     * @param location : location of an instruction
+     * @return the bytes of the instruction, 0xFF past the end of its memory
+     */
+    private IntUnaryOperator bytes(int location) {
+        return i -> {
+            int l = location + i;
+            if (location >= ramLocation) {
+                return l < ramLocation + RAM_SIZE ? bus.read(address(l)) : 0xFF;
+            } else if (location >= ROM_LOCATION) {
+                return l < ramLocation ? cartridge.readRom(l - ROM_LOCATION) : 0xFF;
+            } else {
+                return l < ROM_LOCATION ? Byte.toUnsignedInt(BootRom.DATA[l]) : 0xFF;
+            }
+        };
+    }
+
+    /**
+     * @param counts : counters by location
+     * @param top : maximal number of locations
+     * @return the locations of the highest counters which are not 0, by
+     * decreasing counter
+     */
+    private static List<Integer> hottest(long[] counts, int top) {
+        List<Integer> locations = new ArrayList<>();
+        for (int location = 0; location < counts.length; ++location) {
+            if (counts[location] != 0) {
+                locations.add(location);
+            }
+        }
+        locations.sort(Comparator.comparingLong((Integer l) -> counts[l]).reversed());
+        return locations.subList(0, Math.min(top, locations.size()));
+    }
+
+    private static double percent(long count, long total) {
+        return total == 0 ? 0 : 100.0 * count / total;
+    }
+}
@@ -5,9 +5,9 @@ import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 import static ch.epfl.gameboj.bits.Bits.extract;
 import static ch.epfl.gameboj.bits.Bits.make16;
-import static ch.epfl.gameboj.bits.Bits.reverse8;
 import static ch.epfl.gameboj.bits.Bits.test;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Objects;
 
@@ -15,8 +15,8 @@ import ch.epfl.gameboj.AddressMap;
 import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.Register;
 import ch.epfl.gameboj.RegisterFile;
+import ch.epfl.gameboj.Savable;
 import ch.epfl.gameboj.bits.Bit;
-import ch.epfl.gameboj.bits.BitVector;
 import ch.epfl.gameboj.bits.Bits;
 import ch.epfl.gameboj.component.Clocked;
 import ch.epfl.gameboj.component.Component;
@@ -24,7 +24,7 @@ import ch.epfl.gameboj.component.cpu.Cpu;
 import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
 import ch.epfl.gameboj.component.memory.Ram;
 
-public final class LcdController implements Clocked, Component {
+public final class LcdController implements Clocked, Component, Savable {
 
     
     //CONSTANTS
@@ -36,6 +36,8 @@ public final class LcdController implements Clocked, Component {
     private static final int CYCLES_IN_MODE_0 = 51;
     private static final int CYCLES_PER_LINE = CYCLES_IN_MODE_2 + CYCLES_IN_MODE_3 + CYCLES_IN_MODE_0;
     private static final int VBLANK_NUMBER = 10;
+    //cycles between the starts of two images when the screen is on
+    public static final long CYCLES_PER_FRAME = CYCLES_PER_LINE * (LCD_HEIGHT + VBLANK_NUMBER);
     private static final int TILE_PIXEL_LENGTH = 8;
     private static final int TILE_NUMBER =  WINDOW_LENGTH / TILE_PIXEL_LENGTH;
     private static final int WX_ERROR = 7;
@@ -52,21 +54,51 @@ public final class LcdController implements Clocked, Component {
     private static final int SMALL_SPRITE_INVERTER = 7;
     private static final int BIG_SPRITE_INVERTER = 15;
     private static final int NONWRITABLE_BITS = 3;
+    private static final int PIXELS_PER_PACKED_BYTE = 4;
+    //one line out of LINE_TIMING_SAMPLE is timed, prime with the number of lines
+    //so that each of them gets timed in turn
+    private static final int LINE_TIMING_SAMPLE = 13;
     
     // FIELDS
     private final Ram videoRam;
     private final Ram OAM;
+    private final TileCache tileCache;
     private final Cpu gameboyCpu;
     private LcdImage currentImage;
-    private LcdImage.Builder nextImageBuilder;
+    private byte[] currentFrame = new byte[LCD_WIDTH * LCD_HEIGHT];
+    private byte[] nextFrame = new byte[LCD_WIDTH * LCD_HEIGHT];
+    private final byte[] tileLine = new byte[WINDOW_LENGTH];
+    private final boolean[] backgroundOpacity = new boolean[LCD_WIDTH];
+    private final int[] lineSprites = new int[MAX_SPRITE_IN_LINE];
     private Bus bus;
     private long nextNonIdleCycle = Long.MAX_VALUE;
-    private long lcdOnCycle = 0;
+    //state machine: mode entered and line concerned at nextNonIdleCycle
+    private Modes nextMode = Modes.MODE_2;
+    private int nextLine = 0;
+    //cycles of the next transitions requesting an LCD_STAT interruption, the 
+    //line LY becomes equal to LYC and the entry in a mode whose interruption
+    //is enabled, Long.MAX_VALUE if none, computed when LYC, STAT or LCDC is
+    //written and when the screen is turned on, they only depend on these
+    //registers and on the state machine
+    private long nextLycCycle = Long.MAX_VALUE;
+    private long nextModeInterruptCycle = Long.MAX_VALUE;
     private int winY = 0;
     private int fastCopySourceAddress = 0;
-    private int fastCopyDestinationAddress = AddressMap.OAM_END; 
+    private boolean fastCopyPending = false;
+    private long fastCopyStartCycle = 0;
+    private int fastCopiedBytes = AddressMap.OAM_RAM_SIZE;
+    private final byte[] fastCopyBuffer = new byte[AddressMap.OAM_RAM_SIZE];
+    //a frame buffer in save states, with its 2 bit colors packed by 4
+    private final byte[] packedFrame = new byte[LCD_WIDTH * LCD_HEIGHT / PIXELS_PER_PACKED_BYTE];
     private final LcdReg[] lcdRegArray = LcdReg.values();
     private final RegisterFile<LcdReg> lcdRegFile = new RegisterFile<>(lcdRegArray);
+    //counters of the images finished, fast copies requested and lines drawn, and
+    //time spent drawing the lines timed, only written by the thread running the
+    //controller and not part of its state
+    private long finishedFrames = 0;
+    private long fastCopies = 0;
+    private long drawnLines = 0;
+    private long timedLinesNanos = 0;
     
 
     /**
@@ -110,7 +142,8 @@ public final class LcdController implements Clocked, Component {
     }
     
     /**
-     * Modes enumeration to dispatch in reallyCycle and to set STAT bits
+     * Modes enumeration to dispatch in reallyCycle and to set STAT bits,
+     * a line goes through modes 2, 3 and 0, the vblank lines stay in mode 1
      */
     private enum Modes {
         MODE_0, MODE_1, MODE_2, MODE_3
@@ -120,33 +153,30 @@ public final class LcdController implements Clocked, Component {
      * @param gameboyCpu : takes this parameter in order to request interruptions
      * two necessary rams(OAM and videoRam) are created with proper size, 
      * giving maximal long value to nextNonIdleCycle to signal that screen is
-     * initially off, builder is instantiated as well
+     * initially off, the current image is a view over the (empty) current frame
      */
     public LcdController(Cpu gameboyCpu) {
        Objects.requireNonNull(gameboyCpu);
        this.gameboyCpu = gameboyCpu; 
-       nextImageBuilder = new LcdImage.Builder(LCD_WIDTH,LCD_HEIGHT);
-       currentImage = nextImageBuilder.build();
+       currentImage = new LcdImage(LCD_WIDTH, LCD_HEIGHT, currentFrame);
        videoRam = new Ram(AddressMap.VIDEO_RAM_SIZE);
+       tileCache = new TileCache(videoRam);
        OAM = new Ram(AddressMap.OAM_RAM_SIZE);
        nextNonIdleCycle = Long.MAX_VALUE;
     }
 
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Clocked#cycle(long)
-     * in first if, fast copy process is handled, if fastCopyDestinationAddress 
-     * is not arrived until end of OAM, process continues and proper values are
-     * read from bus, in second if normal drawing process happens if the screen is on,
-     * finally the wake process is written, mode is set to beginning which is 2,
-     * nextNonIdleCycle and lcdOnCycle are set to cycle in order to get in right mode
+     * in first if, fast copy process is handled, the bytes that should have been 
+     * copied by now are put in OAM, in second if normal drawing process happens if the screen is on,
+     * finally the wake process is written, mode is set to beginning which is 2
+     * on line 0 and nextNonIdleCycle is set to cycle
      */
     @Override
     public void cycle(long cycle) {
 
-        if(fastCopyDestinationAddress != AddressMap.OAM_END) {
-            write(fastCopyDestinationAddress, bus.read(fastCopySourceAddress)); 
-            ++fastCopySourceAddress;
-            ++fastCopyDestinationAddress;
+        if(fastCopyInProgress()) {
+            fastCopy(cycle);
         }
         if(nextNonIdleCycle == cycle && lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.LCD_STATUS)) { 
             reallyCycle(cycle);
@@ -155,95 +185,175 @@ public final class LcdController implements Clocked, Component {
         else if(nextNonIdleCycle == Long.MAX_VALUE && lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.LCD_STATUS)){ 
             setMode(Modes.MODE_2);        
             nextNonIdleCycle = cycle; 
-            lcdOnCycle = cycle;
+            nextMode = Modes.MODE_2;
+            nextLine = 0;
+            scheduleStatInterrupts();
             reallyCycle(cycle);
            
         }
 
     }
     
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Clocked#nextEventCycle(long)
+     * the controller is busy when a fast copy starts and when it ends, and when the 
+     * screen has just been turned on, otherwise it waits for nextNonIdleCycle 
+     * or, if the screen is off, for a write on LCDC
+     */
+    @Override
+    public long nextEventCycle(long cycle) {
+        if (fastCopyPending) {
+            return cycle;
+        }
+        long next;
+        if (!lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.LCD_STATUS)) {
+            next = Long.MAX_VALUE;
+        } else {
+            next = nextNonIdleCycle == Long.MAX_VALUE ? cycle : nextNonIdleCycle;
+        }
+        if (fastCopyInProgress()) {
+            next = Math.min(next, fastCopyStartCycle + AddressMap.OAM_RAM_SIZE - 1);
+        }
+        return next;
+    }
+    
+    /**
+     * @param cycle : current cycle
+     * starts the fast copy requested by a write on DMA, reading the whole source 
+     * at once, then puts in OAM the bytes which are copied by now, at the rate of
+     * one byte per cycle from the start 
+     */
+    private void fastCopy(long cycle) {
+        if (fastCopyPending) {
+            //the bytes due before this cycle of an interrupted copy are copied first
+            copyFastCopyBuffer(cycle - 1);
+            bus.readBlock(fastCopySourceAddress, fastCopyBuffer, 0, fastCopyBuffer.length);
+            fastCopyStartCycle = cycle;
+            fastCopiedBytes = 0;
+            fastCopyPending = false;
+        }
+        copyFastCopyBuffer(cycle);
+    }
+    
+    /**
+     * @param cycle : cycle up to which (included) the copied bytes are put in OAM
+     */
+    private void copyFastCopyBuffer(long cycle) {
+        int end = (int) Math.min(fastCopyBuffer.length, cycle - fastCopyStartCycle + 1);
+        if (end > fastCopiedBytes) {
+            OAM.writeBlock(fastCopiedBytes, fastCopyBuffer, fastCopiedBytes, end - fastCopiedBytes);
+            fastCopiedBytes = end;
+        }
+    }
+    
+    /**
+     * @return whether a fast copy is requested or not finished, OAM is then 
+     * locked for the other components
+     */
+    private boolean fastCopyInProgress() {
+        return fastCopyPending || fastCopiedBytes < fastCopyBuffer.length;
+    }
+    
   /**
- * @param cycle : general cycle number, this parameter is used to 
- * compute cycles after last wake process(cycleNumber), lineNumber which is from 
- * 0 to 153 to determine whether we are in mode vblank or not, finally using 
- * the helper method getMode places in right mode
+ * @param cycle : the current cycle
+ * enters nextMode on nextLine, then schedules the following transition: 
+ * the absolute cycle at which it happens, its mode and its line
+ * the LCD_STAT interruptions are requested at the transitions scheduled for them
  */
 public void reallyCycle(long cycle) {
-  long cycleNumber = (cycle - lcdOnCycle) % ((VBLANK_NUMBER + LCD_HEIGHT) * CYCLES_PER_LINE);
-  int lineNumber = (int) (cycleNumber / CYCLES_PER_LINE);
-  int inLineCycleNumber = (int) (cycleNumber % CYCLES_PER_LINE);
+  int lineNumber = nextLine;
+  boolean lycInterrupt = cycle == nextLycCycle;
+  boolean modeInterrupt = cycle == nextModeInterruptCycle;
        
-  switch (getMode(inLineCycleNumber, lineNumber)) {
+  switch (nextMode) {
 
-        //requesting proper interruption(lcd_stat), setting mode and nextNonIdleCycle
+        //setting mode and nextNonIdleCycle
+        //the next line starts in mode 2, or in vblank after the last one
         case MODE_0: {
 
             setMode(Modes.MODE_0); 
-
-            if (lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_MODE0)) {
-                gameboyCpu.requestInterrupt(Interrupt.LCD_STAT);
-            }
             nextNonIdleCycle += CYCLES_IN_MODE_0;
+            nextLine = lineNumber + 1;
+            nextMode = nextLine < LCD_HEIGHT ? Modes.MODE_2 : Modes.MODE_1;
         }
             break;
             
-         //requesting proper interruptions(vblank and lcd_stat), setting mode and nextNonIdleCycle
+         //requesting the vblank interruption, setting mode and nextNonIdleCycle
          //in this mode lineNumber is incremented so we modify LY
-         //if end of vblank is reached image is built 
+         //if end of vblank is reached the frame buffers are swapped and the image published
+         //after the last vblank line a new image starts on line 0
         case MODE_1: {
             setMode(Modes.MODE_1); 
-            modifyLY(lineNumber);
+            setReg(LcdReg.LY, lineNumber);
 
             if (lineNumber == LCD_HEIGHT) {
                 gameboyCpu.requestInterrupt(Interrupt.VBLANK);
-                currentImage = nextImageBuilder.build();
-            }
-            if (lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_MODE1)) {
-                gameboyCpu.requestInterrupt(Interrupt.LCD_STAT);
+                byte[] finishedFrame = nextFrame;
+                nextFrame = currentFrame;
+                currentFrame = finishedFrame;
+                currentImage = new LcdImage(LCD_WIDTH, LCD_HEIGHT, currentFrame);
+                ++finishedFrames;
             }
-
             nextNonIdleCycle += CYCLES_PER_LINE;
+            nextLine = (lineNumber + 1) % (LCD_HEIGHT + VBLANK_NUMBER);
+            nextMode = nextLine == 0 ? Modes.MODE_2 : Modes.MODE_1;
         }
             break;
         
-        //requesting proper interruption(lcd_stat), setting mode and nextNonIdleCycle
-        //in range 0 to 143 we increment LY with modifyLY method
-        //if we are at the beginning of an image, a new builder is created also
+        //setting mode and nextNonIdleCycle
+        //in range 0 to 143 we increment LY
+        //if we are at the beginning of an image, the frame to draw is cleared also
         //y coordinate of window is set to 0
         case MODE_2: {
 
             setMode(Modes.MODE_2); 
-            modifyLY(lineNumber);
+            setReg(LcdReg.LY, lineNumber);
 
             if (lineNumber == 0) {
-                nextImageBuilder = new LcdImage.Builder(LCD_WIDTH, LCD_HEIGHT);
+                Arrays.fill(nextFrame, (byte) 0);
                 winY = 0;
             }
 
-            if (lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_MODE2)) {
-                gameboyCpu.requestInterrupt(Interrupt.LCD_STAT);
-            }
             nextNonIdleCycle += CYCLES_IN_MODE_2;
+            nextMode = Modes.MODE_3;
         }
             break;
 
-        //requesting proper interruption(lcd_stat), setting mode and nextNonIdleCycle
-        //computed lines are being added to the builder        
+        //setting mode and nextNonIdleCycle
+        //lines are being drawn in the frame buffer        
         case MODE_3: {
 
             setMode(Modes.MODE_3); 
-            nextImageBuilder.setLine(lineNumber, computeLine(lineNumber));
+            boolean timed = drawnLines++ % LINE_TIMING_SAMPLE == 0;
+            long start = timed ? System.nanoTime() : 0;
+            computeLine(lineNumber);
+            if (timed) {
+                timedLinesNanos += System.nanoTime() - start;
+            }
             nextNonIdleCycle += CYCLES_IN_MODE_3;
-
+            nextMode = Modes.MODE_0;
         }
             break;
         }
+
+        //LY is equal to LYC at the same line of the next image, the next mode
+        //interruption is searched from the transition following this one
+        if (lycInterrupt) {
+            gameboyCpu.requestInterrupt(Interrupt.LCD_STAT);
+            nextLycCycle += CYCLES_PER_FRAME;
+        }
+        if (modeInterrupt) {
+            gameboyCpu.requestInterrupt(Interrupt.LCD_STAT);
+            nextModeInterruptCycle = nextModeInterruptCycle();
+        }
     }
 
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Component#read(int)
-     * giving proper accesses to videoRam and OAM ram
-     * if the address corresponds to one of Lcd Registers it reads from enum array 
+     * giving proper accesses to videoRam and OAM ram, OAM being read as 0xFF 
+     * during a fast copy
+     * if the address corresponds to one of Lcd Registers it reads from enum array,
+     * the bit LYC_EQ_LY of STAT being computed then
      */
     @Override
     public int read(int address) {
@@ -254,18 +364,23 @@ public void reallyCycle(long cycle) {
         } 
         if (address >= AddressMap.REGS_LCDC_START && address < AddressMap.REGS_LCDC_END) {
             address -=  AddressMap.REGS_LCDC_START;
-            return getReg(lcdRegArray[address]);       
+            LcdReg reg = lcdRegArray[address];
+            if (reg == LcdReg.STAT) {
+                return Bits.set(getReg(LcdReg.STAT), STATReg.LYC_EQ_LY.index(), 
+                        getReg(LcdReg.LY) == getReg(LcdReg.LYC));
+            }
+            return getReg(reg);       
         }
         if(address >= AddressMap.OAM_START && address < AddressMap.OAM_END) {
-            address -=  AddressMap.OAM_START;
-            return OAM.read(address);
+            return fastCopyInProgress() ? 0xFF : readOam(address);
         }
         return NO_DATA;
     }
 
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Component#write(int, int)
-     * writes data on corresponding address' of OAM or videoRam
+     * writes data on corresponding address' of OAM or videoRam, OAM cannot 
+     * be written during a fast copy
      * if it is one of Lcd Registers special cases exist (described below)
      * 
      */
@@ -276,10 +391,12 @@ public void reallyCycle(long cycle) {
         if (address >= AddressMap.VIDEO_RAM_START && address < AddressMap.VIDEO_RAM_END) {
             address -= AddressMap.VIDEO_RAM_START;
             videoRam.write(address, data);
+            tileCache.invalidate(address);
         } 
         else if(address >= AddressMap.OAM_START && address < AddressMap.OAM_END) {
-            address -= AddressMap.OAM_START;
-            OAM.write(address, data);
+            if (!fastCopyInProgress()) {
+                OAM.write(address - AddressMap.OAM_START, data);
+            }
         }
         else if(address >= AddressMap.REGS_LCDC_START && address < AddressMap.REGS_LCDC_END) {
             address -= AddressMap.REGS_LCDC_START;
@@ -293,7 +410,8 @@ public void reallyCycle(long cycle) {
                 //because a new image will start at the wake process and finally setting mode to 0
                 if (!lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.LCD_STATUS)) {            
                     nextNonIdleCycle = Long.MAX_VALUE;
-                    modifyLY(0); //forcing LY to 0
+                    setReg(LcdReg.LY, 0); //forcing LY to 0
+                    requestLycInterruptIfEqual();
                     setMode(Modes.MODE_0);                     
                 }
             }
@@ -308,252 +426,348 @@ public void reallyCycle(long cycle) {
                 data = data | firstThreeBits;
                 setReg(LcdReg.STAT, data);
             }
-            //here we modify LY with helper method which calls another helper method
-            //for controlling if an interruption needs to be requested
+            //LY and the new LYC being equal requests an interruption right away
             else if(currentReg == LcdReg.LYC) {
-                modifyLYC(data);
+                setReg(LcdReg.LYC, data);
+                requestLycInterruptIfEqual();
             }
             
-            //here fast copy process is initiated, fastCopySourceAddress is formed from
-            //the value written on DMA and destination address is the beginning of OAM
+            //here fast copy process is requested, fastCopySourceAddress is formed from
+            //the value written on DMA, the copy starts at the next cycle
             else if(currentReg == LcdReg.DMA) {
                 setReg(LcdReg.DMA, data);
                 fastCopySourceAddress = make16(data, 0);
-                fastCopyDestinationAddress = AddressMap.OAM_START;
+                fastCopyPending = true;
+                ++fastCopies;
             }      
             //this is to limit any writing on LY
                 if(currentReg != LcdReg.LY) {
                 setReg(lcdRegArray[address], data);  
             }
+            if (currentReg == LcdReg.LCDC || currentReg == LcdReg.STAT || currentReg == LcdReg.LYC) {
+                scheduleStatInterrupts();
+            }
         }
     }
 
     /**
-     * @return the last image built
-     * if null builds and returns an empty image
+     * @return the last image built, it is a view over the frame buffer the 
+     * controller finished drawing last, so it stays valid until the following 
+     * image is published (the buffer is then reused for drawing)
      */
     public LcdImage currentImage() {
-        if (currentImage == null) {
-            LcdImage.Builder builder = new LcdImage.Builder(LCD_WIDTH,LCD_HEIGHT);
-            LcdImageLine line;
-            for (int i = 0; i < LCD_HEIGHT; ++i) {
-                line = new LcdImageLine.Builder(LCD_WIDTH).build();
-                builder.setLine(i, line);
-            }
-            return builder.build();
-        }
-        checkArgument(currentImage.width() == LCD_WIDTH && currentImage.height() == LCD_HEIGHT);
         return currentImage;
     }
 
+    /**
+     * the counters are read without synchronization, by another thread than the 
+     * one running the controller they may lag behind
+     * @return the number of images finished
+     */
+    public long finishedFrames() {
+        return finishedFrames;
+    }
+
+    /**
+     * @return the number of fast copies (DMA) to OAM requested
+     */
+    public long fastCopies() {
+        return fastCopies;
+    }
+
+    /**
+     * @return the time spent drawing lines in nanoseconds, estimated from the
+     * lines timed
+     */
+    public long lineDrawingNanos() {
+        long timedLines = (drawnLines + LINE_TIMING_SAMPLE - 1) / LINE_TIMING_SAMPLE;
+        return timedLines == 0 ? 0 : (long) ((double) timedLinesNanos * drawnLines / timedLines);
+    }
+
+    /**
+     * Makes this controller continue from the state of parent: it copies its 
+     * registers, frame buffers and fast copy, and shares its video ram and OAM
+     * copy on write
+     * @param parent : controller copied, used by the same thread during the call
+     */
+    public void forkFrom(LcdController parent) {
+        lcdRegFile.copyFrom(parent.lcdRegFile);
+        videoRam.shareContentOf(parent.videoRam);
+        OAM.shareContentOf(parent.OAM);
+        System.arraycopy(parent.currentFrame, 0, currentFrame, 0, currentFrame.length);
+        System.arraycopy(parent.nextFrame, 0, nextFrame, 0, nextFrame.length);
+        nextNonIdleCycle = parent.nextNonIdleCycle;
+        nextMode = parent.nextMode;
+        nextLine = parent.nextLine;
+        winY = parent.winY;
+        fastCopySourceAddress = parent.fastCopySourceAddress;
+        fastCopyPending = parent.fastCopyPending;
+        fastCopyStartCycle = parent.fastCopyStartCycle;
+        fastCopiedBytes = parent.fastCopiedBytes;
+        System.arraycopy(parent.fastCopyBuffer, 0, fastCopyBuffer, 0, fastCopyBuffer.length);
+        nextLycCycle = parent.nextLycCycle;
+        nextModeInterruptCycle = parent.nextModeInterruptCycle;
+
+        tileCache.invalidateAll();
+        currentImage = new LcdImage(LCD_WIDTH, LCD_HEIGHT, currentFrame);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is the registers, the video ram and OAM, both frame buffers
+     * (packed), the state machine and the fast copy
+     */
+    @Override
+    public int stateSize() {
+        return lcdRegFile.stateSize() + videoRam.stateSize() + OAM.stateSize()
+                + 2 * packedFrame.length + Long.BYTES + 3 + Short.BYTES + 1 
+                + Long.BYTES + Short.BYTES + fastCopyBuffer.length;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        lcdRegFile.saveState(buffer);
+        videoRam.saveState(buffer);
+        OAM.saveState(buffer);
+        putFrame(buffer, currentFrame);
+        putFrame(buffer, nextFrame);
+        buffer.putLong(nextNonIdleCycle).put((byte) nextMode.ordinal()).put((byte) nextLine)
+              .put((byte) winY).putShort((short) fastCopySourceAddress)
+              .put((byte) (fastCopyPending ? 1 : 0)).putLong(fastCopyStartCycle)
+              .putShort((short) fastCopiedBytes).put(fastCopyBuffer);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     * the tiles decoded are forgotten and the current image is the one of the
+     * state loaded, the images returned before are then not valid anymore, the
+     * LCD_STAT interruptions are scheduled again from the registers loaded
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        lcdRegFile.loadState(buffer);
+        videoRam.loadState(buffer);
+        OAM.loadState(buffer);
+        getFrame(buffer, currentFrame);
+        getFrame(buffer, nextFrame);
+        nextNonIdleCycle = buffer.getLong();
+        nextMode = Modes.values()[buffer.get()];
+        nextLine = Byte.toUnsignedInt(buffer.get());
+        winY = Byte.toUnsignedInt(buffer.get());
+        fastCopySourceAddress = Short.toUnsignedInt(buffer.getShort());
+        fastCopyPending = buffer.get() != 0;
+        fastCopyStartCycle = buffer.getLong();
+        fastCopiedBytes = buffer.getShort();
+        buffer.get(fastCopyBuffer);
+        scheduleStatInterrupts();
+
+        tileCache.invalidateAll();
+        currentImage = new LcdImage(LCD_WIDTH, LCD_HEIGHT, currentFrame);
+    }
+
+    /**
+     * @param buffer : buffer receiving the frame
+     * @param frame : frame buffer, whose colors are packed 4 per byte, the 
+     * first one in the least significant bits
+     */
+    private void putFrame(ByteBuffer buffer, byte[] frame) {
+        for (int i = 0, j = 0; i < packedFrame.length; ++i, j += PIXELS_PER_PACKED_BYTE) {
+            packedFrame[i] = (byte) (frame[j] | frame[j + 1] << 2 | frame[j + 2] << 4 | frame[j + 3] << 6);
+        }
+        buffer.put(packedFrame);
+    }
+
+    /**
+     * @param buffer : buffer containing a frame written by putFrame
+     * @param frame : frame buffer receiving its colors
+     */
+    private void getFrame(ByteBuffer buffer, byte[] frame) {
+        buffer.get(packedFrame);
+        for (int i = 0, j = 0; i < packedFrame.length; ++i, j += PIXELS_PER_PACKED_BYTE) {
+            int packed = packedFrame[i];
+            frame[j] = (byte) (packed & 0b11);
+            frame[j + 1] = (byte) (packed >>> 2 & 0b11);
+            frame[j + 2] = (byte) (packed >>> 4 & 0b11);
+            frame[j + 3] = (byte) (packed >>> 6 & 0b11);
+        }
+    }
+
     /**
      * @param index : index of the line
-     * @return the computed line
-     * starts out with and empty line, then according the information of
-     * register it combines empty line with background image window
-     * and finally with sprites
+     * draws the line directly in the frame buffer being built, starting with
+     * the background (or color 0 if disabled), then the window over it
+     * and finally the sprites, no object is allocated
+     * (package private for the benchmarks)
      */
-    private LcdImageLine computeLine(int index) {
-        checkArgument(index >= 0 && index < WINDOW_LENGTH);
-        
-        LcdImageLine emptyLine = new LcdImageLine.Builder(LCD_WIDTH).build();
-        LcdImageLine backgroundImageLine = new LcdImageLine.Builder(LCD_WIDTH).build();
-        LcdImageLine actualLine;
-        LcdImageLine windowImageLine;
-        BitVector opacityAdjuster;
+    void computeLine(int index) {
+        checkArgument(index >= 0 && index < LCD_HEIGHT);
         
+        int lineStart = index * LCD_WIDTH;
+        int bgPalette = getReg(LcdReg.BGP);
         int adjustedWX = getReg(LcdReg.WX) - WX_ERROR;
-        actualLine = emptyLine;
-  
         
-        if(lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.BG)){
-          backgroundImageLine = getLine((index + getReg(LcdReg.SCY)), LCDCReg.BG_AREA)
-          .extractWrapped(getReg(LcdReg.SCX), LCD_WIDTH)
-          .mapColors(getReg(LcdReg.BGP));
-         
-          actualLine = LcdImageLine.below(actualLine,backgroundImageLine);
-    
+        if (lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.BG)) {
+            decodeTileLine(index + getReg(LcdReg.SCY), LCDCReg.BG_AREA);
+            int scx = getReg(LcdReg.SCX);
+            for (int x = 0; x < LCD_WIDTH; ++x) {
+                int color = tileLine[(scx + x) % WINDOW_LENGTH];
+                nextFrame[lineStart + x] = (byte) mapColor(bgPalette, color);
+                backgroundOpacity[x] = color != 0;
+            }
+        } else {
+            Arrays.fill(nextFrame, lineStart, lineStart + LCD_WIDTH, (byte) 0);
+            Arrays.fill(backgroundOpacity, false);
         }
-        if(windowEnabled(adjustedWX) && getReg(LcdReg.WY) <= index) {
-
-            windowImageLine = getLine(winY, LCDCReg.WIN_AREA)
-                   .extractZeroExtended(0, LCD_WIDTH).shift(adjustedWX)
-                   .mapColors(getReg(LcdReg.BGP));
+        
+        if (windowEnabled(adjustedWX) && getReg(LcdReg.WY) <= index) {
+            decodeTileLine(winY, LCDCReg.WIN_AREA);
             ++winY;
-            actualLine = LcdImageLine.join(windowImageLine,actualLine, (LCD_WIDTH - adjustedWX));
+            for (int x = adjustedWX; x < LCD_WIDTH; ++x) {
+                int color = tileLine[x - adjustedWX];
+                nextFrame[lineStart + x] = (byte) mapColor(bgPalette, color);
+                backgroundOpacity[x] = color != 0;
+            }
+        }
+        
+        if (lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.OBJ)) {
+            int spriteCount = spritesIntersectingLine(index);
+            //sprites behind the background are drawn first, those in front of it 
+            //then cover them, in both cases in reverse order so that the first
+            //sprites of lineSprites end up on top
+            drawSprites(index, spriteCount, true);
+            drawSprites(index, spriteCount, false);
         }
-           
-         if(lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.OBJ)) {
-             LcdImageLine spriteLineBG = getSpriteLine(index, true);
-             LcdImageLine spriteLineFG = getSpriteLine(index, false);
-             
-            opacityAdjuster = spriteLineBG.opacity().and(actualLine.opacity().not());            
-            actualLine = LcdImageLine.below(spriteLineBG, actualLine, opacityAdjuster);          
-            actualLine = LcdImageLine.below(spriteLineFG, actualLine);
-          
-        }
-       return actualLine;
-       
     }
+    
     /**
-     * @param index : index of line to compute
+     * @param index : index of line to decode
      * @param areaRegister : WIN_AREA or BG_AREA giving the information that tells
-     * from which range we should fetch the lsb and msb
-     * @return the computed line (of window or background)
+     * from which range we should fetch the tile indexes
+     * copies the colors of the 256 pixels of the line (of window or background)
+     * in tileLine from the decoded tiles
      */
-    private LcdImageLine getLine(int index, LCDCReg areaRegister){
-        
-        LcdImageLine.Builder imageBuilder = new LcdImageLine.Builder(WINDOW_LENGTH);
+    private void decodeTileLine(int index, LCDCReg areaRegister) {
         int outerTileIndex = (((index) / TILE_PIXEL_LENGTH) * TILE_NUMBER) % (TILE_NUMBER * TILE_NUMBER);
         int innerByteIndex = 2 * (index % TILE_PIXEL_LENGTH);
-        int rangeChooser =   lcdRegFile.testBit(LcdReg.LCDC, areaRegister) ? 1 : 0;
- 
-        int msb;
-        int lsb;
-        int tileIndex;
-        int tileSourceRange;
-        int lsbAddress; 
-   
+        int rangeChooser = lcdRegFile.testBit(LcdReg.LCDC, areaRegister) ? 1 : 0;
+        boolean secondTileSource = lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.TILE_SOURCE);
+        byte[] tilePixels = tileCache.pixels(false);
+        
         for (int i = 0; i < TILE_NUMBER; i++) {
-             tileIndex = read(AddressMap.BG_DISPLAY_DATA[rangeChooser] + outerTileIndex + i);    
-             tileSourceRange = 1;
+            int tileIndex = readVideoRam(AddressMap.BG_DISPLAY_DATA[rangeChooser] + outerTileIndex + i);
+            int tileSourceRange = 1;
             
-            if(!lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.TILE_SOURCE)){
+            if (!secondTileSource) {
                 tileSourceRange = 0; // to fetch from first range
                 tileIndex = Bits.clip(Byte.SIZE, tileIndex + OVERFLOW_8BITS); //to change the order of tile numbering
             }
-                lsbAddress = AddressMap.TILE_SOURCE[tileSourceRange] + MSB_AND_LSB_PIXELS * tileIndex + innerByteIndex;            
-                lsb = read(lsbAddress);
-                msb = read(lsbAddress + 1);              
-                imageBuilder.setBytes(i, reverse8(msb), reverse8(lsb));
+            int lsbAddress = AddressMap.TILE_SOURCE[tileSourceRange] + MSB_AND_LSB_PIXELS * tileIndex + innerByteIndex;
+            int rowStart = tileCache.rowStart(lsbAddress - AddressMap.VIDEO_RAM_START);
+            System.arraycopy(tilePixels, rowStart, tileLine, i * TILE_PIXEL_LENGTH, TILE_PIXEL_LENGTH);
         }
-        return imageBuilder.build();
-            
-    }  
+    }
     
     /**
-     * @param lineIndex : sprite line we want to compute to finish our line
-     * @param behind_BG : determines whether we are computing background sprites
-     * or foreground sprites
-     * @return all the superpositioned individual sprite lines by putting them underneath
-     * in order (with below) 
+     * @param lineIndex : index of the line being drawn
+     * @param spriteCount : number of sprites in lineSprites
+     * @param behind_BG : determines whether we are drawing background sprites
+     * or foreground sprites, background ones only cover transparent pixels of 
+     * the background and window
      */
-    private LcdImageLine getSpriteLine(int lineIndex, boolean behind_BG) {
-        checkArgument(lineIndex >= 0 && lineIndex < WINDOW_LENGTH);
-        
-        int[] spriteIndexArray = spritesIntersectingLine(lineIndex);
-        LcdImageLine spriteLine = new LcdImageLine.Builder(LCD_WIDTH).build();
-        LcdImageLine individualSpriteLine;
-        int spriteCaracteristics;
-        int address;
-        for (int i = 0; i < spriteIndexArray.length; ++i) {
-            address = AddressMap.OAM_START + spriteIndexArray[i] * SPRITE_FIELD_NUMBER
-                    + SpriteInformation.CHARACTERISTICS.index();
-            spriteCaracteristics = read(address);
-            if (test(spriteCaracteristics, SpriteByteCharacteristics.BEHIND_BG.index()) == behind_BG) {
-                individualSpriteLine = getIndividualSpriteLine(lineIndex, spriteIndexArray[i]);
-                spriteLine = LcdImageLine.below(spriteLine, individualSpriteLine);
+    private void drawSprites(int lineIndex, int spriteCount, boolean behind_BG) {
+        int lineStart = lineIndex * LCD_WIDTH;
+        for (int i = spriteCount - 1; i >= 0; --i) {
+            int spriteAddress = AddressMap.OAM_START + lineSprites[i] * SPRITE_FIELD_NUMBER;
+            int characteristics = readOam(spriteAddress + SPRITE_CHARACTERISTICS_BYTE);
+            if (test(characteristics, SpriteByteCharacteristics.BEHIND_BG.index()) != behind_BG) {
+                continue;
+            }
+            
+            int palette = test(characteristics, SpriteByteCharacteristics.PALETTE.index()) ?
+                    getReg(LcdReg.OBP1) : getReg(LcdReg.OBP0);
+            int coorX = readOam(spriteAddress + SpriteInformation.COOR_X.index()) - COOR_X_ADJUSTER;
+            int indexTile = readOam(spriteAddress + SpriteInformation.TILE_INDEX.index());
+            int row = lineIndex - readOam(spriteAddress) + MSB_AND_LSB_PIXELS;
+            
+            //FLIP_V, checking if it's an 8x8 or 8x16 sprite to invert the row
+            if (test(characteristics, SpriteByteCharacteristics.FLIP_V.index())) {
+                row = (lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.OBJ_SIZE) ? 
+                        BIG_SPRITE_INVERTER : SMALL_SPRITE_INVERTER) - row;
+            }
+            int lsbAddress = AddressMap.TILE_SOURCE[1] + indexTile * MSB_AND_LSB_PIXELS + row * 2;
+            //FLIP_H
+            byte[] tilePixels = tileCache.pixels(test(characteristics, SpriteByteCharacteristics.FLIP_H.index()));
+            int rowStart = tileCache.rowStart(lsbAddress - AddressMap.VIDEO_RAM_START);
+            
+            int start = Math.max(0, coorX);
+            int end = Math.min(LCD_WIDTH, coorX + TILE_PIXEL_LENGTH);
+            for (int x = start; x < end; ++x) {
+                int color = tilePixels[rowStart + x - coorX];
+                if (color != 0 && !(behind_BG && backgroundOpacity[x])) {
+                    nextFrame[lineStart + x] = (byte) mapColor(palette, color);
+                }
             }
         }
-        return spriteLine;
-    }
-
-    /**
-     * @param lineIndex
-     * @param spriteIndex , index of sprite which intersects with line 
-     * @return a line in which we can find the indexed sprite,
-     * using this method multiple time in getSpriteLine we for a line of sprites
-     */
-    private LcdImageLine getIndividualSpriteLine(int lineIndex, int spriteIndex) {
-
-        LcdImageLine.Builder imageBuilder = new LcdImageLine.Builder(LCD_WIDTH);
-        int palette;
-       
-        palette = test(read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER 
-                + SPRITE_CHARACTERISTICS_BYTE), SpriteByteCharacteristics.PALETTE.index()) ? 
-                        getReg(LcdReg.OBP1) : getReg(LcdReg.OBP0);
-        
-        int coorX = read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER + 
-                SpriteInformation.COOR_X.index()) - COOR_X_ADJUSTER;
-        int indexTile = read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER + 
-                SpriteInformation.TILE_INDEX.index());
-        int lsbAddress = AddressMap.TILE_SOURCE[1] + indexTile * MSB_AND_LSB_PIXELS +
-                (lineIndex - read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER) 
-                        + MSB_AND_LSB_PIXELS) * 2;
-
-
-        //FLIP_V
-        if(test(read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER 
-                + SPRITE_CHARACTERISTICS_BYTE), SpriteByteCharacteristics.FLIP_V.index())){ 
-           
-           // checking if it's an 8x8 or 8x16 sprite, and doing necessary alterations to change the order of taken bytes 
-           lsbAddress = lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.OBJ_SIZE) ? 
-                    AddressMap.TILE_SOURCE[1] + indexTile * MSB_AND_LSB_PIXELS
-                            + ((BIG_SPRITE_INVERTER - (lineIndex - read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER) 
-                                    + MSB_AND_LSB_PIXELS)) * 2)
-                    : AddressMap.TILE_SOURCE[1] + indexTile * MSB_AND_LSB_PIXELS 
-                            + ((SMALL_SPRITE_INVERTER - (lineIndex - read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER) 
-                                    + MSB_AND_LSB_PIXELS)) * 2);
-        }
- 
-        int lsb = read(lsbAddress);
-        int msb = read(lsbAddress + 1);
-        LcdImageLine spriteLine; 
-        
-        boolean horizontalFlipCondition = Bits.test(
-                read(AddressMap.OAM_START + (spriteIndex * SPRITE_FIELD_NUMBER)
-                        + SPRITE_CHARACTERISTICS_BYTE),
-                SpriteByteCharacteristics.FLIP_H.index());
-
-        //FLIP_H 
-        spriteLine = horizontalFlipCondition ? imageBuilder.setBytes(0, msb, lsb).build() :
-            imageBuilder.setBytes(0, reverse8(msb), reverse8(lsb)).build();
-
-        return spriteLine.shift(coorX).mapColors(palette);
-
     }
 
     /**
      * @param index of line we want to compute
-     * @return an array of sprite indexes which happens to 
-     * intersect with line we would like to draw
+     * @return the number of sprites intersecting the line we would like to draw,
+     * their indexes being put in lineSprites
      * to do so we fetch the Y coordinates of sprites, takes whoever 
      * crosses with that line(index) then according to the method proposed,
-     * we sort them and return in order to use it in getSpriteLine
+     * we sort them
      */
-    private int[] spritesIntersectingLine(int index) {      
-        int[] spritesFound = new int[MAX_SPRITE_IN_LINE];
-        int[] sortedSpriteArray;
+    private int spritesIntersectingLine(int index) {      
         int spriteCount = 0;
-        int coorX;
-        int coorY;  
         int spriteIndex = 0;
-        boolean sizeCondition;
+        int spriteHeight = lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.OBJ_SIZE) ? 
+                BIG_SPRITE_PIXEL_HEIGHT : SMALL_SPRITE_PIXEL_HEIGHT;
         
-        while(spriteCount < spritesFound.length  && spriteIndex <  MAX_SPRITE_NUMBER ) {
-            coorY = read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER) - COOR_Y_ADJUSTER;        
-           
-            sizeCondition = coorY <= index && index < coorY + SMALL_SPRITE_PIXEL_HEIGHT;
+        while (spriteCount < lineSprites.length && spriteIndex < MAX_SPRITE_NUMBER) {
+            int coorY = readOam(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER) - COOR_Y_ADJUSTER;        
             
-            if(lcdRegFile.testBit(LcdReg.LCDC, LCDCReg.OBJ_SIZE)){
-                sizeCondition = coorY <= index && index < coorY + BIG_SPRITE_PIXEL_HEIGHT;
-            }
-
-            if(sizeCondition) {
-                coorX = read(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER + 1);
-                spritesFound[spriteCount] = Bits.make16(coorX, spriteIndex);
+            if (coorY <= index && index < coorY + spriteHeight) {
+                int coorX = readOam(AddressMap.OAM_START + spriteIndex * SPRITE_FIELD_NUMBER + 1);
+                lineSprites[spriteCount] = Bits.make16(coorX, spriteIndex);
                 ++spriteCount;
             }
             ++spriteIndex;
         }
-        Arrays.sort(spritesFound, 0, spriteCount);
-        sortedSpriteArray = new int[spriteCount];
+        Arrays.sort(lineSprites, 0, spriteCount);
         
         for (spriteIndex = 0; spriteIndex < spriteCount; spriteIndex++) {
-            sortedSpriteArray[spriteIndex] = Bits.clip(Byte.SIZE, spritesFound[spriteIndex]);
+            lineSprites[spriteIndex] = Bits.clip(Byte.SIZE, lineSprites[spriteIndex]);
         }
-        
-        return  sortedSpriteArray;        
+        return spriteCount;        
+    }
+    
+    /**
+     * @param palette : palette register value
+     * @param color : color to map
+     * @return the color given to color by palette
+     */
+    private static int mapColor(int palette, int color) {
+        return (palette >>> (2 * color)) & 0b11;
+    }
+    
+    /**
+     * @param address : address in video ram range
+     * @return the value in video ram, avoiding the checks of read
+     */
+    private int readVideoRam(int address) {
+        return videoRam.read(address - AddressMap.VIDEO_RAM_START);
+    }
+    
+    /**
+     * @param address : address in OAM range
+     * @return the value in OAM, ignoring the lock of fast copies
+     */
+    private int readOam(int address) {
+        return OAM.read(address - AddressMap.OAM_START);
     }
 
     /**
@@ -584,26 +798,6 @@ public void reallyCycle(long cycle) {
     }
    
 
-    /**
-     * @param inLineCycleNumber : to determine whether we are in vblank or not
-     * @param lineNumber : to determine which mode we are in when we are not in vblank
-     * @return the number of corresponding mode
-     */
-    private Modes getMode(int inLineCycleNumber, int lineNumber) {
-
-        if (lineNumber >= 0 && lineNumber < LCD_HEIGHT) {
-            if (0 <= inLineCycleNumber && inLineCycleNumber < CYCLES_IN_MODE_2) {
-                return Modes.MODE_2;
-            }
-            if (CYCLES_IN_MODE_2 <= inLineCycleNumber && inLineCycleNumber < CYCLES_IN_MODE_2 + CYCLES_IN_MODE_3) {
-
-                return Modes.MODE_3;
-            }
-            return Modes.MODE_0;
-        }
-        return Modes.MODE_1;
-    }
-    
     /**
      * @param mode : mode we want to set for bits MODE0 and MODE1 of STAT register
      */
@@ -616,49 +810,92 @@ public void reallyCycle(long cycle) {
     }
 
     /**
-     * @param newValue : value to be set on Lcd Register LY
-     * also calls the control method for interruptions in case of an LY, LYC equality
+     * requests an LCD_STAT interruption if LY and LYC are equal and STAT enables
+     * it, when one of them is written, their equality at the start of the lines
+     * being scheduled
      */
-    private void modifyLY(int newValue) {
-        setReg(LcdReg.LY, newValue);
-        modifyLYC_EQ_LY();
+    private void requestLycInterruptIfEqual() {
+        if (getReg(LcdReg.LY) == getReg(LcdReg.LYC) && lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_LYC)) {
+            gameboyCpu.requestInterrupt(Interrupt.LCD_STAT);
+        }
     }
-    
+
     /**
-     * @param newValue : value to be set on Lcd Register LYC
-     * also calls the control method for interruptions in case of an LY, LYC equality
+     * computes the cycles of the next transitions requesting an LCD_STAT
+     * interruption, from the transition the state machine enters next
      */
-    private void modifyLYC(int newValue) {
-        setReg(LcdReg.LYC, newValue);
-        modifyLYC_EQ_LY();
+    private void scheduleStatInterrupts() {
+        int lyc = getReg(LcdReg.LYC);
+        if (nextNonIdleCycle == Long.MAX_VALUE || !lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_LYC)
+                || lyc >= LCD_HEIGHT + VBLANK_NUMBER) {
+            nextLycCycle = Long.MAX_VALUE;
+        } else {
+            nextLycCycle = nextTransitionCycle(0, lyc, lyc);
+        }
+        nextModeInterruptCycle = nextModeInterruptCycle();
     }
-    
+
     /**
-     * this method being called at every change on LY or LYC, checks if they are equal,
-     * in the case of equality sets the bit LYC_EQ_LY of STAT and requests interruption
-     * with an additional control of bit INT_LYC of STAT Register
+     * @return the cycle of the next transition into a mode whose interruption
+     * STAT enables, from the transition the state machine enters next, 
+     * Long.MAX_VALUE if there is none: mode 2 and 0 are entered on each drawn 
+     * line, mode 1 on each vblank line
      */
-    private void modifyLYC_EQ_LY() {
-        boolean LYC_equals_LY = getReg(LcdReg.LY) == getReg(LcdReg.LYC);
-        lcdRegFile.setBit(LcdReg.STAT, STATReg.LYC_EQ_LY,  LYC_equals_LY);
-        
-        // interruption
-        if (LYC_equals_LY && lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_LYC)) {
-           gameboyCpu.requestInterrupt(Interrupt.LCD_STAT);
+    private long nextModeInterruptCycle() {
+        long next = Long.MAX_VALUE;
+        if (nextNonIdleCycle == Long.MAX_VALUE) {
+            return next;
         }
-        
+        if (lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_MODE2)) {
+            next = Math.min(next, nextTransitionCycle(0, 0, LCD_HEIGHT - 1));
+        }
+        if (lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_MODE0)) {
+            next = Math.min(next, nextTransitionCycle(CYCLES_IN_MODE_2 + CYCLES_IN_MODE_3, 0, LCD_HEIGHT - 1));
+        }
+        if (lcdRegFile.testBit(LcdReg.STAT, STATReg.INT_MODE1)) {
+            next = Math.min(next, nextTransitionCycle(0, LCD_HEIGHT, LCD_HEIGHT + VBLANK_NUMBER - 1));
+        }
+        return next;
+    }
+
+    /**
+     * @param offset : cycles from the start of a line to the transition
+     * @param firstLine : first line of an image on which the transition happens
+     * @param lastLine : last one
+     * @return the cycle of the first such transition at or after nextNonIdleCycle,
+     * in the image of the transition the state machine enters next or in the
+     * following one, the screen being on
+     */
+    private long nextTransitionCycle(int offset, int firstLine, int lastLine) {
+        long lineStart = nextNonIdleCycle;
+        if (nextMode == Modes.MODE_3) {
+            lineStart -= CYCLES_IN_MODE_2;
+        } else if (nextMode == Modes.MODE_0) {
+            lineStart -= CYCLES_IN_MODE_2 + CYCLES_IN_MODE_3;
+        }
+        long frameStart = lineStart - (long) nextLine * CYCLES_PER_LINE;
+        long position = nextNonIdleCycle - frameStart;
+        //first line whose transition is not before position, rounding up
+        long line = Math.max(firstLine, -Math.floorDiv(offset - position, CYCLES_PER_LINE));
+        if (line > lastLine) {
+            line = firstLine + LCD_HEIGHT + VBLANK_NUMBER;
+        }
+        return frameStart + line * CYCLES_PER_LINE + offset;
     }
 
     /* (non-Javadoc)
      * @see ch.epfl.gameboj.component.Component#attachTo(ch.epfl.gameboj.Bus)
      * this method lets us reach the bus, so we can read from proper address to get
-     * the information of sprites for fast copy process
+     * the information of sprites for fast copy process, the controller is attached
+     * over video ram, OAM and its registers
      */
     @Override
     public void attachTo(Bus bus) {
         Objects.requireNonNull(bus);
         this.bus = bus;
-        Component.super.attachTo(bus);
+        bus.attach(this, AddressMap.VIDEO_RAM_START, AddressMap.VIDEO_RAM_END);
+        bus.attach(this, AddressMap.OAM_START, AddressMap.OAM_END);
+        bus.attach(this, AddressMap.REGS_LCDC_START, AddressMap.REGS_LCDC_END);
 
     }
     
@@ -1,121 +1,178 @@
 package ch.epfl.gameboj.component.lcd;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 
 import ch.epfl.gameboj.Preconditions;
-import ch.epfl.gameboj.bits.BitVector;
 
 public final class LcdImage {
 
     //CONSTANTS
     private final static int WINDOW_HEIGHT = 256;
-    private final static int WINDOW_LENGTH = 256;
     //FIELDS
     private final int width;
     private final int height;
-    private final List<LcdImageLine> imageList;
-    
-    //CONSTRUCTORS 
+    //colors of the pixels, line after line, one byte per pixel
+    private final byte[] pixels;
+
+    //CONSTRUCTORS
     /**
      * @param width: width of the image in pixels
      * @param height: height of the image in pixels
      * @param imageList: list of lines of the image
      */
     public LcdImage(int width, int height, List<LcdImageLine> imageList) {
-        Preconditions.checkArgument(width >= 0 && height >= 0 && imageList.size() == height);      
+        this(width, height, packLines(width, height, imageList));
+    }
+
+    /**
+     * @param width: width of the image in pixels
+     * @param height: height of the image in pixels
+     * @param pixels: colors of the pixels, line after line, the image is a view
+     * over this array which is not copied
+     */
+    LcdImage(int width, int height, byte[] pixels) {
+        Preconditions.checkArgument(width >= 0 && height >= 0 && pixels.length == width * height);
         this.width = width;
         this.height = height;
-        this.imageList = Collections.unmodifiableList(imageList);
+        this.pixels = pixels;
     }
-    
+
     /**
      * @return the width of the image
      */
     public int width() {
         return width;
     }
-    
+
     /**
      * @return the height of the image
      */
     public int height() {
         return height;
     }
-    
+
     /**
      * @param x: x coordinate of the pixel
      * @param y: y coordinate of the pixel
      * @return: pixel's msb, lsb value
      */
     public int get(int x , int y) {
-        Preconditions.checkArgument(x >= 0 && x < WINDOW_LENGTH && y >= 0 && y < WINDOW_HEIGHT);
-        LcdImageLine wantedLine = imageList.get(y);
-        boolean colorMsb = wantedLine.msb().testBit(x);
-        boolean colorLsb = wantedLine.lsb().testBit(x);
-        int bitMsb = colorMsb ? 1 : 0;
-        int bitLsb = colorLsb ? 1 : 0;
-        return (bitMsb << 1) + bitLsb ;
+        Preconditions.checkArgument(x >= 0 && x < width && y >= 0 && y < height);
+        return pixels[y * width + x];
+    }
+
+    /**
+     * @param palette: values of the 4 colors
+     * @param destination: array receiving the values of the colors of the 
+     * pixels, line after line, from index 0 on
+     */
+    public void toArgb(int[] palette, int[] destination) {
+        Preconditions.checkArgument(palette.length == 4 && destination.length >= pixels.length);
+        for (int i = 0; i < pixels.length; ++i) {
+            destination[i] = palette[pixels[i]];
+        }
     }
-    
+
+    /**
+     * @param destination: array receiving the colors of the pixels, line after line
+     */
+    void copyPixels(byte[] destination) {
+        Preconditions.checkArgument(destination.length == pixels.length);
+        System.arraycopy(pixels, 0, destination, 0, pixels.length);
+    }
+
     /* (non-Javadoc)
      * @see java.lang.Object#hashCode()
      * returns hashed value of all the fields
      */
     @Override
     public int hashCode() {
-        return Objects.hash(width, height, imageList);
+        return Objects.hash(width, height, Arrays.hashCode(pixels));
     }
-    
+
     /* (non-Javadoc)
      * @see java.lang.Object#equals(java.lang.Object)
-     * compares the hash codes of the object and the parameter
+     * compares the sizes and the pixels of the object and the parameter
      */
     @Override
     public boolean equals(Object that) {
-       return this.hashCode() == that.hashCode();
+        if (!(that instanceof LcdImage)) {
+            return false;
+        }
+        LcdImage thatImage = (LcdImage) that;
+        return width == thatImage.width && height == thatImage.height
+                && Arrays.equals(pixels, thatImage.pixels);
     }
-    
+
+    /**
+     * @param width: width of the image in pixels
+     * @param height: height of the image in pixels
+     * @param imageList: list of lines of the image
+     * @return the colors of the pixels of the lines, line after line
+     */
+    private static byte[] packLines(int width, int height, List<LcdImageLine> imageList) {
+        Preconditions.checkArgument(width >= 0 && height >= 0 && imageList.size() == height);
+        byte[] pixels = new byte[width * height];
+        for (int y = 0; y < height; ++y) {
+            setLine(pixels, width, y, imageList.get(y));
+        }
+        return pixels;
+    }
+
+    /**
+     * @param pixels: colors of the pixels of an image
+     * @param width: width of the image in pixels
+     * @param index: index of line in the image
+     * @param line: line whose colors are copied in pixels
+     */
+    private static void setLine(byte[] pixels, int width, int index, LcdImageLine line) {
+        Preconditions.checkArgument(line.size() == width);
+        for (int x = 0; x < width; ++x) {
+            int bitMsb = line.msb().testBit(x) ? 1 : 0;
+            int bitLsb = line.lsb().testBit(x) ? 1 : 0;
+            pixels[index * width + x] = (byte) ((bitMsb << 1) + bitLsb);
+        }
+    }
+
     //BUILDER INNER CLASS
     public static final class Builder{
-        private List<LcdImageLine> list;
-        
+        private final int width;
+        private final int height;
+        private final byte[] pixels;
+
         /**
          * @param width: width of the image to be build in pixels
          * @param height: height of the image to be build in pixels
          * creates an empty image
          */
         public Builder(int width, int height) {
-            Preconditions.checkArgument(height > 0 && height < WINDOW_HEIGHT);  //width's condition is checked in BitVector
-            list = new ArrayList<>(height);
-            for(int i = 0 ; i < height ; ++i) {
-                list.add(new LcdImageLine(new BitVector(width),new BitVector(width),new BitVector(width)));
-            }
+            Preconditions.checkArgument(height > 0 && height < WINDOW_HEIGHT && width >= 0);
+            this.width = width;
+            this.height = height;
+            pixels = new byte[width * height];
         }
-        
+
         /**
          * @param index: index of line in the list of lines
          * @param line: new line to set
          * @return: sets the line and returns the builder
          */
         public Builder setLine(int index, LcdImageLine line){
-            Preconditions.checkArgument(index >= 0 && index < list.size());
-            list.set(index, line);
+            Preconditions.checkArgument(index >= 0 && index < height);
+            LcdImage.setLine(pixels, width, index, line);
             return this;
         }
-      
-        
+
+
         /**
          * @return: the image builded
          */
         public LcdImage build() {
-            int width = list.get(0).size();
-            int height = list.size();
-            return new LcdImage(width, height, list);
-        }  
-        
+            return new LcdImage(width, height, Arrays.copyOf(pixels, pixels.length));
+        }
+
     }
 
 }
@@ -0,0 +1,70 @@
+package ch.epfl.gameboj.component.lcd;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.epfl.gameboj.Preconditions;
+
+/**
+ * lock free triple buffer passing images from one producer thread to one 
+ * consumer thread: the producer copies each image in its back buffer then 
+ * exchanges it with the middle one, the consumer exchanges its front buffer 
+ * with the middle one when it holds an image it has not taken yet, so neither
+ * ever waits for the other and the consumer always gets the latest image
+ */
+public final class LcdImageTripleBuffer {
+
+    //CONSTANTS
+    private static final int INDEX_MASK = 0b11;
+    private static final int FRESH = 0b100;
+
+    //FIELDS
+    private final int width;
+    private final int height;
+    private final byte[][] buffers = new byte[3][];
+    //index of the middle buffer, with FRESH set when the producer put an image
+    //in it which the consumer has not taken yet
+    private final AtomicInteger middle = new AtomicInteger(2);
+    //owned by the producer
+    private int backIndex = 0;
+    //owned by the consumer
+    private int frontIndex = 1;
+    private LcdImage frontImage = null;
+
+    /**
+     * @param width : width of the images in pixels
+     * @param height : height of the images in pixels
+     */
+    public LcdImageTripleBuffer(int width, int height) {
+        Preconditions.checkArgument(width >= 0 && height >= 0);
+        this.width = width;
+        this.height = height;
+        for (int i = 0; i < buffers.length; ++i) {
+            buffers[i] = new byte[width * height];
+        }
+    }
+
+    /**
+     * to be called by the producer thread only
+     * @param image : image to pass to the consumer, copied
+     * throws IllegalArgumentException if its size is not the one of the buffer
+     */
+    public void publish(LcdImage image) {
+        Preconditions.checkArgument(image.width() == width && image.height() == height);
+        image.copyPixels(buffers[backIndex]);
+        backIndex = middle.getAndSet(backIndex | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * to be called by the consumer thread only
+     * @return the latest image published, or null if none has been published 
+     * yet, it is a view over the front buffer so it stays valid until the 
+     * following call returns a new image
+     */
+    public LcdImage latest() {
+        if ((middle.get() & FRESH) != 0) {
+            frontIndex = middle.getAndSet(frontIndex) & INDEX_MASK;
+            frontImage = new LcdImage(width, height, buffers[frontIndex]);
+        }
+        return frontImage;
+    }
+}
@@ -0,0 +1,90 @@
+package ch.epfl.gameboj.component.lcd;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+import ch.epfl.gameboj.component.memory.Ram;
+
+/**
+ * cache of the tiles of the video ram decoded in colors, one byte per pixel,
+ * both in normal and horizontally flipped order, a tile is decoded again
+ * only after one of its bytes has been written
+ */
+final class TileCache {
+
+    //CONSTANTS
+    static final int TILE_PIXEL_LENGTH = 8;
+    private static final int TILE_COUNT = 384;
+    private static final int TILE_BYTES = 16;
+    private static final int TILE_PIXELS = TILE_PIXEL_LENGTH * TILE_PIXEL_LENGTH;
+
+    //FIELDS
+    private final Ram videoRam;
+    private final byte[] pixels = new byte[TILE_COUNT * TILE_PIXELS];
+    private final byte[] flippedPixels = new byte[TILE_COUNT * TILE_PIXELS];
+    private final boolean[] decoded = new boolean[TILE_COUNT];
+
+    /**
+     * @param videoRam : video ram whose first 384 * 16 bytes contain the tiles
+     */
+    TileCache(Ram videoRam) {
+        this.videoRam = Objects.requireNonNull(videoRam);
+    }
+
+    /**
+     * @param videoRamIndex : index of the video ram byte that has been written
+     * invalidates the tile containing that byte if any
+     */
+    void invalidate(int videoRamIndex) {
+        int tile = videoRamIndex / TILE_BYTES;
+        if (tile < TILE_COUNT) {
+            decoded[tile] = false;
+        }
+    }
+
+    /**
+     * invalidates all the tiles, for when the video ram is modified as a whole
+     */
+    void invalidateAll() {
+        Arrays.fill(decoded, false);
+    }
+
+    /**
+     * @param flipped : whether the horizontally flipped pixels are wanted
+     * @return the array of decoded pixels, rows start at the index given by rowStart
+     */
+    byte[] pixels(boolean flipped) {
+        return flipped ? flippedPixels : pixels;
+    }
+
+    /**
+     * @param videoRamIndex : index in video ram of the least significant byte of a tile row
+     * @return the index of the 8 pixels of that row in the arrays returned by pixels,
+     * decoding the tile first if needed
+     */
+    int rowStart(int videoRamIndex) {
+        int tile = videoRamIndex / TILE_BYTES;
+        if (!decoded[tile]) {
+            decode(tile);
+        }
+        return tile * TILE_PIXELS + (videoRamIndex % TILE_BYTES) / 2 * TILE_PIXEL_LENGTH;
+    }
+
+    /**
+     * @param tile : index of the tile to decode
+     */
+    private void decode(int tile) {
+        for (int row = 0; row < TILE_PIXEL_LENGTH; ++row) {
+            int lsb = videoRam.read(tile * TILE_BYTES + 2 * row);
+            int msb = videoRam.read(tile * TILE_BYTES + 2 * row + 1);
+            int start = tile * TILE_PIXELS + row * TILE_PIXEL_LENGTH;
+            for (int x = 0; x < TILE_PIXEL_LENGTH; ++x) {
+                int bitIndex = TILE_PIXEL_LENGTH - 1 - x;
+                byte color = (byte) ((((msb >>> bitIndex) & 1) << 1) | ((lsb >>> bitIndex) & 1));
+                pixels[start + x] = color;
+                flippedPixels[start + TILE_PIXEL_LENGTH - 1 - x] = color;
+            }
+        }
+        decoded[tile] = true;
+    }
+}
@@ -1,15 +1,18 @@
 package ch.epfl.gameboj.component.memory;
 
+import java.nio.ByteBuffer;
 import java.util.Objects;
 
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
 import ch.epfl.gameboj.AddressMap;
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.Savable;
 import ch.epfl.gameboj.component.Component;
 import ch.epfl.gameboj.component.cartridge.Cartridge;
 
-public final class BootRomController implements Component {
+public final class BootRomController implements Component, Savable {
 
     private boolean bootRomDisabled = false;
     private Cartridge cartridge;
@@ -63,4 +66,81 @@ public final class BootRomController implements Component {
         
     }
 
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#attachTo(ch.epfl.gameboj.Bus)
+     */
+    //attaches the controller over the cartridge's rom and ram ranges, boot rom 
+    //included, and over the register disabling the boot rom
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, AddressMap.CARTRIDGE_ROM_START, AddressMap.CARTRIDGE_ROM_END);
+        bus.attach(this, AddressMap.CARTRIDGE_RAM_START, AddressMap.CARTRIDGE_RAM_END);
+        bus.attach(this, AddressMap.REG_BOOT_ROM_DISABLE, AddressMap.REG_BOOT_ROM_DISABLE + 1);
+    }
+
+    /**
+     * @return whether the boot rom has been disabled, the cartridge being then 
+     * visible in its range
+     */
+    public boolean bootRomDisabled() {
+        return bootRomDisabled;
+    }
+
+    /**
+     * @param address : address in the rom range (0x0000 to 0x7FFF)
+     * @return the location of the byte read at address with the banks currently
+     * selected: its address while the boot rom is mapped there, the size of the
+     * boot rom plus its index in the cartridge rom otherwise, so that every byte
+     * of both roms has its own location
+     * throws IllegalArgumentException if the address is not in the rom range
+     */
+    public int romLocation(int address) {
+        if (address < AddressMap.BOOT_ROM_END && !bootRomDisabled) {
+            return address;
+        }
+        return AddressMap.BOOT_ROM_SIZE + cartridge.romOffset(address);
+    }
+
+    /**
+     * @return the number of locations of the boot and cartridge roms
+     */
+    public int romLocations() {
+        return AddressMap.BOOT_ROM_SIZE + cartridge.romSize();
+    }
+
+    /**
+     * @param parent : controller whose state is copied, its cartridge being 
+     * the one this controller was built with
+     */
+    public void forkFrom(BootRomController parent) {
+        bootRomDisabled = parent.bootRomDisabled;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is whether the boot rom is disabled followed by the state of the cartridge
+     */
+    @Override
+    public int stateSize() {
+        return 1 + cartridge.stateSize();
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        buffer.put((byte) (bootRomDisabled ? 1 : 0));
+        cartridge.saveState(buffer);
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        bootRomDisabled = buffer.get() != 0;
+        cartridge.loadState(buffer);
+    }
+
 }
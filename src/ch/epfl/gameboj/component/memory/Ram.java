@@ -3,53 +3,182 @@ package ch.epfl.gameboj.component.memory;
 import static ch.epfl.gameboj.Preconditions.checkArgument;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
 
-public final class Ram {
-    
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import ch.epfl.gameboj.Savable;
+
+public final class Ram implements Savable {
+
+    //constants
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    //page of zeros every page starts as, never written since no ram owns it
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE];
+
     //fields
-    private final byte[] data; 
+    private final int size;
+    //content of the ram by pages of PAGE_SIZE bytes (the last one may be used
+    //partially), a page can be shared with other rams until one of them writes
+    //in it: it then copies it first, unless it is the only one owning it
+    private final byte[][] pages;
+    private final boolean[] owned;
 
     /**
      * @param size
-     * constructs ram of wanted size as a byte array
+     * constructs ram of wanted size, filled with zeros, its pages being only
+     * allocated when written
      */
     public Ram(int size){
         checkArgument(size >= 0);
-        data = new byte[size];
+        this.size = size;
+        pages = new byte[(size + PAGE_SIZE - 1) >>> PAGE_BITS][];
+        owned = new boolean[pages.length];
+        Arrays.fill(pages, ZERO_PAGE);
     }
-    
+
 
     public int size(){
-        return data.length;
+        return size;
     }
-   
+
     /**
      * @param index
-     * if index is not in range throws IndexOutOfBoundsException or 
+     * if index is not in range throws IndexOutOfBoundsException or
      * returns the unsigned version of 8 bits value on that index(of data)
      */
     public int read(int index){
-        if(index < 0 || index >= data.length ){                
+        if(index < 0 || index >= size ){
             throw new IndexOutOfBoundsException();
         }
-        int temp = Byte.toUnsignedInt(data[index]);
+        int temp = Byte.toUnsignedInt(pages[index >>> PAGE_BITS][index & PAGE_MASK]);
         return checkBits8(temp);
-        
+
     }
 
     /**
      * @param index
      * @param value : value we want to assign to index of data
-     * if index is not in range throws IndexOutOfBoundsException or 
+     * if index is not in range throws IndexOutOfBoundsException or
      * writing value to the index(of data) after checking the value is indeed 8 bits
      */
     public void write(int index, int value){
-        if(index < 0 || index >= data.length ){
+        if(index < 0 || index >= size ){
             throw new IndexOutOfBoundsException();
         }
-        
+
         value = checkBits8(value);
-        data[index] = (byte)value;
-        
+        ownedPage(index >>> PAGE_BITS)[index & PAGE_MASK] = (byte)value;
+
+    }
+
+    /**
+     * @param index : index of the first byte to read
+     * @param destination : array receiving the bytes
+     * @param offset : index in destination of the first byte
+     * @param length : number of bytes to read
+     * copies the bytes at once, throws IndexOutOfBoundsException if one of
+     * the ranges is not valid
+     */
+    public void readBlock(int index, byte[] destination, int offset, int length) {
+        checkRange(index, length);
+        while (length > 0) {
+            int chunk = Math.min(length, PAGE_SIZE - (index & PAGE_MASK));
+            System.arraycopy(pages[index >>> PAGE_BITS], index & PAGE_MASK, destination, offset, chunk);
+            index += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * @param index : index of the first byte to write
+     * @param source : array containing the bytes
+     * @param offset : index in source of the first byte
+     * @param length : number of bytes to write
+     * copies the bytes at once, throws IndexOutOfBoundsException if one of
+     * the ranges is not valid
+     */
+    public void writeBlock(int index, byte[] source, int offset, int length) {
+        checkRange(index, length);
+        while (length > 0) {
+            int chunk = Math.min(length, PAGE_SIZE - (index & PAGE_MASK));
+            System.arraycopy(source, offset, ownedPage(index >>> PAGE_BITS), index & PAGE_MASK, chunk);
+            index += chunk;
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    /**
+     * gives this ram the content of source without copying it: both share
+     * their pages, each one copying a page the first time it writes in it
+     * @param source : ram of the same size
+     * throws IllegalArgumentException if the sizes are different
+     */
+    public void shareContentOf(Ram source) {
+        checkArgument(source.size == size);
+        System.arraycopy(source.pages, 0, pages, 0, pages.length);
+        Arrays.fill(owned, false);
+        Arrays.fill(source.owned, false);
     }
-    
-}
\ No newline at end of file
+
+    /**
+     * @param page : index of a page
+     * @return the array of the page, copied first if it may be shared
+     */
+    private byte[] ownedPage(int page) {
+        if (!owned[page]) {
+            pages[page] = pages[page].clone();
+            owned[page] = true;
+        }
+        return pages[page];
+    }
+
+    /**
+     * @param index : index of the first byte of a range
+     * @param length : number of bytes of the range
+     * throws IndexOutOfBoundsException if the range is not in the ram
+     */
+    private void checkRange(int index, int length) {
+        if (index < 0 || length < 0 || index + length > size) {
+            throw new IndexOutOfBoundsException();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#stateSize()
+     * the state is the content of the ram
+     */
+    @Override
+    public int stateSize() {
+        return size;
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#saveState(java.nio.ByteBuffer)
+     */
+    @Override
+    public void saveState(ByteBuffer buffer) {
+        for (int page = 0; page < pages.length; ++page) {
+            buffer.put(pages[page], 0, Math.min(PAGE_SIZE, size - (page << PAGE_BITS)));
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.Savable#loadState(java.nio.ByteBuffer)
+     * the pages shared are replaced, not copied since they are overwritten
+     */
+    @Override
+    public void loadState(ByteBuffer buffer) {
+        for (int page = 0; page < pages.length; ++page) {
+            if (!owned[page]) {
+                pages[page] = new byte[PAGE_SIZE];
+                owned[page] = true;
+            }
+            buffer.get(pages[page], 0, Math.min(PAGE_SIZE, size - (page << PAGE_BITS)));
+        }
+    }
+
+}
@@ -1,4 +1,5 @@
 package ch.epfl.gameboj.component.memory;
+import ch.epfl.gameboj.Bus;
 import ch.epfl.gameboj.component.Component;
 import static ch.epfl.gameboj.Preconditions.checkBits16;
 
@@ -81,4 +82,26 @@ public final class RamController implements Component{
 
     }
 
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#readBlock(int, byte[], int, int)
+     */
+    //if the whole block is in range, copies it at once from ram
+    @Override
+    public void readBlock(int address, byte[] destination, int offset, int length) {
+        if (address >= startAddress && address + length <= endAddress) {
+            ram.readBlock(address - startAddress, destination, offset, length);
+        } else {
+            Component.super.readBlock(address, destination, offset, length);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see ch.epfl.gameboj.component.Component#attachTo(ch.epfl.gameboj.Bus)
+     */
+    //attaches the controller only over the range it gives access to
+    @Override
+    public void attachTo(Bus bus) {
+        bus.attach(this, startAddress, endAddress);
+    }
+
 }
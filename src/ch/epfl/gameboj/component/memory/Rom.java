@@ -1,11 +1,15 @@
 package ch.epfl.gameboj.component.memory;
 import static ch.epfl.gameboj.Preconditions.checkBits8;
+
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Objects;
 
 public final class Rom { 
 
     //fields
-    private final byte[] data;
+    //read only view, of its own, over content that can be shared with other roms
+    private final ByteBuffer data;
 
     
     /**
@@ -19,12 +23,21 @@ public final class Rom {
         }
 
         else {
-            this.data = Arrays.copyOf(data, data.length);
+            this.data = ByteBuffer.wrap(Arrays.copyOf(data, data.length)).asReadOnlyBuffer();
         }
     }
 
+    /**
+     * @param data : content of the rom, from index 0 to its capacity, which is 
+     * not copied and must not be modified afterwards, so that it can be shared 
+     * between the roms of many game boys, heap or mapped from a file
+     */
+    public Rom(ByteBuffer data) {
+        this.data = Objects.requireNonNull(data).duplicate().clear().asReadOnlyBuffer();
+    }
+
    public int size() {
-        return data.length; 
+        return data.capacity(); 
     }
 
 
@@ -35,12 +48,12 @@ public final class Rom {
      */
     public int read(int index) {
 
-        if (index < 0 || index >= data.length) {
+        if (index < 0 || index >= data.capacity()) {
             throw new IndexOutOfBoundsException();
         }
 
-        int unsignedData = Byte.toUnsignedInt(data[index]);
+        int unsignedData = Byte.toUnsignedInt(data.get(index));
         return checkBits8(unsignedData);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,37 @@
+package ch.epfl.gameboj.gui;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Objects;
+
+import ch.epfl.gameboj.component.lcd.LcdImage;
+
+/**
+ * conversion of the images of the gameboy to awt images, which only needs 
+ * java.desktop and can then be used without javafx
+ */
+public final class BufferedImageConverter {
+
+    // array represents ARGB values of the gameboy colors
+    static final int[] COLOR_MAP = new int[] {
+            //0xFF_00_43_33, 0xFF_0D_88_33, 0xFF_A1_BC_00, 0xFF_EB_DD_77};
+            0xFF_FF_FF_FF, 0xFF_D3_D3_D3, 0xFF_A9_A9_A9, 0xFF_00_00_00 };
+
+    private BufferedImageConverter() {}
+
+    /**
+     * @param lcdImage: LCD image of the gameboy
+     * @return buffered image version of the lcdImage
+     */
+    public static BufferedImage toBufferedImage(LcdImage lcdImage) {     
+        Objects.requireNonNull(lcdImage);
+        int width = lcdImage.width();
+        int height = lcdImage.height();
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        //the raster of an int rgb image stores its pixels line after line
+        //without padding, the alpha byte being ignored
+        int[] rgb = ((DataBufferInt) bufferedImage.getRaster().getDataBuffer()).getData();
+        lcdImage.toArgb(COLOR_MAP, rgb);
+        return bufferedImage;
+    }
+}
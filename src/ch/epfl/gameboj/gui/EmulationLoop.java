@@ -0,0 +1,120 @@
+package ch.epfl.gameboj.gui;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.Joypad;
+import ch.epfl.gameboj.component.Joypad.Key;
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+import ch.epfl.gameboj.component.lcd.LcdImageTripleBuffer;
+import ch.epfl.gameboj.metrics.GameBoyMetrics;
+
+/**
+ * runs a game boy in real time on its own thread: the other threads only 
+ * exchange data with it without locks, they queue the key events, which are
+ * applied between two simulation slices so always between two instructions,
+ * and take the latest finished image from a triple buffer
+ */
+public final class EmulationLoop implements Runnable {
+
+    //CONSTANTS
+    //cycles simulated at most between two checks of the key events
+    private static final long SLICE_CYCLES = GameBoy.CYCLES_PER_SECOND / 240;
+    private static final long SLICE_NANOSECONDS = (long) (SLICE_CYCLES / GameBoy.CYCLES_PER_NANOSECOND);
+
+    //FIELDS
+    private final GameBoy gameBoy;
+    private final String name;
+    private final LcdImageTripleBuffer images = 
+            new LcdImageTripleBuffer(LcdController.LCD_WIDTH, LcdController.LCD_HEIGHT);
+    private final Queue<Consumer<Joypad>> keyEvents = new ConcurrentLinkedQueue<>();
+    private volatile boolean running = true;
+
+    /**
+     * @param gameBoy : the game boy to run, it must then only be used by the loop
+     * @param name : name under which its metrics are published while it runs
+     */
+    public EmulationLoop(GameBoy gameBoy, String name) {
+        this.gameBoy = Objects.requireNonNull(gameBoy);
+        this.name = Objects.requireNonNull(name);
+    }
+
+    /* (non-Javadoc)
+     * @see java.lang.Runnable#run()
+     * simulates the game boy in slices until the real time is reached, applying
+     * the key events queued before each slice and publishing each new image,
+     * then sleeps during a slice, until stop is called, its metrics being 
+     * published meanwhile
+     */
+    @Override
+    public void run() {
+        GameBoyMetrics metrics = GameBoyMetrics.register(gameBoy, name);
+        try {
+            runSlices();
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    private void runSlices() {
+        long start = System.nanoTime();
+        LcdImage published = null;
+        while (running) {
+            Consumer<Joypad> keyEvent;
+            while ((keyEvent = keyEvents.poll()) != null) {
+                keyEvent.accept(gameBoy.joypad());
+            }
+
+            long target = (long) (GameBoy.CYCLES_PER_NANOSECOND * (System.nanoTime() - start));
+            if (target > gameBoy.cycles()) {
+                gameBoy.runUntil(Math.min(target, gameBoy.cycles() + SLICE_CYCLES));
+            } else {
+                LockSupport.parkNanos(SLICE_NANOSECONDS);
+            }
+
+            //a new image object is built by the lcd controller for every frame
+            LcdImage image = gameBoy.lcdController().currentImage();
+            if (image != published) {
+                images.publish(image);
+                published = image;
+            }
+        }
+    }
+
+    /**
+     * stops the loop after the current slice
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * @param key : key pressed, the game boy sees it before its next slice
+     */
+    public void keyPressed(Key key) {
+        Objects.requireNonNull(key);
+        keyEvents.add(joypad -> joypad.keyPressed(key));
+    }
+
+    /**
+     * @param key : key released, the game boy sees it before its next slice
+     */
+    public void keyReleased(Key key) {
+        Objects.requireNonNull(key);
+        keyEvents.add(joypad -> joypad.keyReleased(key));
+    }
+
+    /**
+     * to be called by a single thread, the one displaying the images
+     * @return the latest image finished by the game boy, null if there is none
+     * yet, it stays valid until this method returns a new image
+     */
+    public LcdImage latestImage() {
+        return images.latest();
+    }
+}
@@ -26,10 +26,11 @@ public final class GameStage extends Stage {
     //CONSTANTS
     private static final Map<KeyCode, Joypad.Key> codeMap = createCodeMap();
     private static final Map<String, Joypad.Key> textMap = createTextMap();
+    //system property enabling the detailed metrics of the game boys (-Dgameboj.detailedMetrics=true)
+    private static final String DETAILED_METRICS_PROPERTY = "gameboj.detailedMetrics";
     
     //FIELDS
     private final String path;
-    private static int screenShotNum = 1;
     
     /**
      * @param str: path of the game stage wanted to be created
@@ -44,20 +45,33 @@ public final class GameStage extends Stage {
         InputStream stream = getClass().getResourceAsStream(path);
          
          try {
-             GameBoy gb = new GameBoy(Cartridge.ofFile(stream));
-             long start = System.nanoTime();      
+             //the instructions and bus accesses are only counted on demand
+             GameBoy.Options options = new GameBoy.Options();
+             if (Boolean.getBoolean(DETAILED_METRICS_PROPERTY)) {
+                 options.detailedMetrics();
+             }
+             GameBoy gb = new GameBoy(Cartridge.ofFile(stream), options);
+             //the game boy runs on its own thread, the fx thread only shows
+             //its images and passes it the key events
+             EmulationLoop loop = new EmulationLoop(gb, path);
+             Thread emulationThread = new Thread(loop, "emulation");
+             emulationThread.setDaemon(true);
              iv.setFitWidth(LcdController.LCD_WIDTH * 3);
              iv.setFitHeight(LcdController.LCD_HEIGHT * 3);
              
+             ImageConverter converter = new ImageConverter(LcdController.LCD_WIDTH, LcdController.LCD_HEIGHT);
+             
              //anonymous class for the timer object
              AnimationTimer timer = new AnimationTimer() {
+                 private LcdImage shownImage = null;
+
                  @Override
                  public void handle(long now) {           
-                   long elapsed = now - start;      
-                   LcdImage currentImage = gb.lcdController().currentImage(); 
-                   iv.setImage(ImageConverter.convert(currentImage));       
-                   gb.runUntil((long)(GameBoy.CYCLES_PER_NANOSECOND * elapsed ));  
-              
+                   LcdImage latestImage = loop.latestImage(); 
+                   if (latestImage != shownImage) {
+                       iv.setImage(converter.update(latestImage));       
+                       shownImage = latestImage;
+                   }
                }
              };
              
@@ -70,30 +84,34 @@ public final class GameStage extends Stage {
                  
                  //reset logic
                  if(text.equals("R") || text.equals("r")) {
+                     timer.stop();
+                     loop.stop();
                      this.close();
                      new GameStage(path);
                  }
                  
                  //screenshot logic
                  else if(text.equals("P") || text.equals("p")) {
-                     LcdImage lcdImage = gb.lcdController().currentImage();
+                     LcdImage lcdImage = loop.latestImage();
+                     if (lcdImage == null) {
+                         return;
+                     }
                      BufferedImage buffered = ImageConverter.toBufferedImage(lcdImage);                
                      try {
-                        ImageIO.write(buffered, "png", new File("screenshots/screenshot " + screenShotNum + ".png"));
+                        ImageIO.write(buffered, "png", nextScreenshotFile());
                     } 
                      //exits the program in case of an exception
                      catch (IOException e) {
                           System.exit(1);
                     }
-                     ++screenShotNum;
                  }
                  else if(textMap.containsKey(text)) {
                      joypadKey = textMap.get(text);
-                     gb.joypad().keyPressed(joypadKey);
+                     loop.keyPressed(joypadKey);
                  }
                  else if(codeMap.containsKey(code)) {
                      joypadKey = codeMap.get(ke.getCode());
-                     gb.joypad().keyPressed(joypadKey);
+                     loop.keyPressed(joypadKey);
                  }
                 
              });
@@ -105,14 +123,20 @@ public final class GameStage extends Stage {
                  Key joypadKey;
                  if(textMap.containsKey(text)) {
                      joypadKey = textMap.get(text);
-                     gb.joypad().keyReleased(joypadKey);
+                     loop.keyReleased(joypadKey);
                  }
                  else if(codeMap.containsKey(code)) {
                      joypadKey = codeMap.get(ke.getCode());
-                     gb.joypad().keyReleased(joypadKey);
+                     loop.keyReleased(joypadKey);
                  }          
              });
-             //starts the timer arranges the scene and the panel then make the game visible
+             //stops the emulation with the window
+             setOnHidden(e -> {
+                 timer.stop();
+                 loop.stop();
+             });
+             //starts the emulation and the timer arranges the scene and the panel then make the game visible
+             emulationThread.start();
              timer.start();       
              Scene scene = new Scene(pane);
              setScene(scene);
@@ -128,6 +152,19 @@ public final class GameStage extends Stage {
         
     }
     
+    /**
+     * @return the first screenshot file not existing yet, numbered from 1 on,
+     * found again at every screenshot so that no number is shared between stages
+     */
+    private static File nextScreenshotFile() {
+        int screenShotNum = 1;
+        File file;
+        while ((file = new File("screenshots/screenshot " + screenShotNum + ".png")).exists()) {
+            ++screenShotNum;
+        }
+        return file;
+    }
+
     /**
      * @return the hash map associates the key codes and joypad keys
      */
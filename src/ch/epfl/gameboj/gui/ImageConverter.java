@@ -1,20 +1,118 @@
 package ch.epfl.gameboj.gui;
 
 import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
 import java.util.Objects;
 
+import ch.epfl.gameboj.Preconditions;
 import ch.epfl.gameboj.component.lcd.LcdImage;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelBuffer;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
+import javafx.util.Callback;
 
 public final class ImageConverter {
 
     // array represents ARGB values of the gameboy colors
-    private static final int[] COLOR_MAP = new int[] {
-            //0xFF_00_43_33, 0xFF_0D_88_33, 0xFF_A1_BC_00, 0xFF_EB_DD_77};
-            0xFF_FF_FF_FF, 0xFF_D3_D3_D3, 0xFF_A9_A9_A9, 0xFF_00_00_00 };
-    
+    private static final int[] COLOR_MAP = BufferedImageConverter.COLOR_MAP;
+    //the colors are opaque so their premultiplied values are the same, and it
+    //is the format javafx uploads without converting
+    private static final PixelFormat<IntBuffer> FORMAT = PixelFormat.getIntArgbPreInstance();
+
+    //FIELDS
+    private final int width;
+    private final int height;
+    //pixels of the image, shared with javafx which uploads them to the texture
+    //of the image without copying, only the band given by updateBuffer
+    private final IntBuffer pixels;
+    private final PixelBuffer<IntBuffer> pixelBuffer;
+    private final WritableImage image;
+    //values of the pixels of the image shown and of the one being converted
+    private int[] shownArgb;
+    private int[] nextArgb;
+    //band of lines of the image being converted which differ from the image shown
+    private int firstDirty;
+    private int dirtyHeight;
+    private final Callback<PixelBuffer<IntBuffer>, Rectangle2D> dirtyBandWriter = this::writeDirtyBand;
+
+    /**
+     * @param width: width of the images to convert
+     * @param height: height of the images to convert
+     * creates a converter always writing in the same image, to be used by a 
+     * single stage
+     */
+    public ImageConverter(int width, int height) {
+        Preconditions.checkArgument(width > 0 && height > 0);
+        this.width = width;
+        this.height = height;
+        pixels = ByteBuffer.allocateDirect(width * height * Integer.BYTES)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+        shownArgb = new int[width * height];
+        nextArgb = new int[width * height];
+        Arrays.fill(shownArgb, COLOR_MAP[0]);
+        pixels.put(shownArgb);
+        pixels.rewind();
+        pixelBuffer = new PixelBuffer<>(width, height, pixels, FORMAT);
+        image = new WritableImage(pixelBuffer);
+    }
+
+    /**
+     * @param lcdImage: LCD image of the gameboy, of the size of the converter
+     * @return the image of the converter, whose lines different from the ones
+     * of the previous image converted have been written in its buffer, only 
+     * their band being uploaded by javafx
+     * must be called on the javafx application thread, like updateBuffer
+     */
+    public Image update(LcdImage lcdImage) {
+        Preconditions.checkArgument(lcdImage.width() == width && lcdImage.height() == height);
+        lcdImage.toArgb(COLOR_MAP, nextArgb);
+
+        int firstLine = 0;
+        while (firstLine < height && sameLine(firstLine)) {
+            ++firstLine;
+        }
+        if (firstLine < height) {
+            int lastLine = height - 1;
+            while (sameLine(lastLine)) {
+                --lastLine;
+            }
+            firstDirty = firstLine;
+            dirtyHeight = lastLine - firstLine + 1;
+            pixelBuffer.updateBuffer(dirtyBandWriter);
+        }
+
+        int[] t = shownArgb;
+        shownArgb = nextArgb;
+        nextArgb = t;
+        return image;
+    }
+
+    /**
+     * callback of updateBuffer, the only place where the buffer may be written
+     * @param buffer: the pixel buffer of the image
+     * @return the band of the image to upload
+     */
+    private Rectangle2D writeDirtyBand(PixelBuffer<IntBuffer> buffer) {
+        pixels.position(firstDirty * width);
+        pixels.put(nextArgb, firstDirty * width, dirtyHeight * width);
+        pixels.rewind();
+        return new Rectangle2D(0, firstDirty, width, dirtyHeight);
+    }
+
+    /**
+     * @param y: index of a line
+     * @return whether the line is the same in the image shown and in the next one
+     */
+    private boolean sameLine(int y) {
+        return Arrays.equals(shownArgb, y * width, (y + 1) * width, 
+                nextArgb, y * width, (y + 1) * width);
+    }
+
     /**
      * @param lcdImage: LCD image of the gameboy
      * @return the javafx.scene.image.Image version of the lcdImage
@@ -23,13 +121,10 @@ public final class ImageConverter {
         Objects.requireNonNull(lcdImage);
         final int width = lcdImage.width();
         final int height = lcdImage.height();
+        int[] argb = new int[width * height];
+        lcdImage.toArgb(COLOR_MAP, argb);
         WritableImage writableIm = new WritableImage(width, height);
-        PixelWriter pw = writableIm.getPixelWriter();
-        for (int y = 0; y < height; ++y) {
-            for (int x = 0; x < width; ++x) {
-                pw.setArgb(x, y, COLOR_MAP[lcdImage.get(x, y)]);
-            }
-        }
+        writableIm.getPixelWriter().setPixels(0, 0, width, height, FORMAT, argb, 0, width);
         return writableIm;
     }
     
@@ -38,16 +133,9 @@ public final class ImageConverter {
     /**
      * @param lcdImage: LCD image of the gameboy
      * @return buffered image version of the lcdImage
+     * @see BufferedImageConverter#toBufferedImage(LcdImage)
      */
     public static BufferedImage toBufferedImage(LcdImage lcdImage) {     
-        int width = lcdImage.width();
-        int height = lcdImage.height();
-        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        for (int y = 0; y < height; ++y) {
-          for (int x = 0; x < width; ++x) {
-              bufferedImage.setRGB(x, y, ImageConverter.COLOR_MAP[lcdImage.get(x, y)]);
-          }                       
-        }
-        return bufferedImage;
+        return BufferedImageConverter.toBufferedImage(lcdImage);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,254 @@
+package ch.epfl.gameboj.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import ch.epfl.gameboj.GameBoy;
+import jdk.jfr.FlightRecorder;
+
+/**
+ * publishes the counters of a game boy as an MXBean of the platform MBean
+ * server, named ch.epfl.gameboj:type=GameBoy,name=...,id=..., and in the 
+ * periodic StatisticsEvent of the flight recorder, until it is unregistered
+ *
+ * the counters themselves belong to the components of the game boy: they are
+ * plain fields only written by the thread running it, as cheap as counters can
+ * be, and read here without synchronization, so they may lag behind a little
+ */
+public final class GameBoyMetrics implements GameBoyMetricsMXBean {
+
+    //CONSTANTS
+    private static final String DOMAIN = "ch.epfl.gameboj";
+    private static final double NANOSECONDS_PER_SECOND = 1e9;
+    //metrics registered, for the statistics events
+    private static final List<GameBoyMetrics> REGISTERED = new CopyOnWriteArrayList<>();
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    static {
+        FlightRecorder.addPeriodicEvent(StatisticsEvent.class, GameBoyMetrics::emitStatistics);
+    }
+
+    //FIELDS
+    private final GameBoy gameBoy;
+    private final String name;
+    private final ObjectName objectName;
+    //cycles simulated and time of the previous rate computed, for JMX and for the events
+    private final Rate jmxRate;
+    private final Rate eventRate;
+
+    private GameBoyMetrics(GameBoy gameBoy, String name, ObjectName objectName) {
+        this.gameBoy = gameBoy;
+        this.name = name;
+        this.objectName = objectName;
+        jmxRate = new Rate(gameBoy.cycles());
+        eventRate = new Rate(gameBoy.cycles());
+    }
+
+    /**
+     * @param gameBoy : game boy to monitor
+     * @param name : name of the game boy in the MXBean and the events, for 
+     * example the name of its rom, not necessarily unique
+     * @return the metrics of the game boy, published until they are unregistered
+     */
+    public static GameBoyMetrics register(GameBoy gameBoy, String name) {
+        Objects.requireNonNull(gameBoy);
+        Objects.requireNonNull(name);
+        ObjectName objectName;
+        try {
+            objectName = new ObjectName(DOMAIN + ":type=GameBoy,name=" + ObjectName.quote(name) 
+                + ",id=" + NEXT_ID.getAndIncrement());
+        } catch (MalformedObjectNameException e) {
+            //the name is quoted
+            throw new Error(e);
+        }
+        GameBoyMetrics metrics = new GameBoyMetrics(gameBoy, name, objectName);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            //the ids are unique
+            throw new Error(e);
+        } catch (JMException e) {
+            //the class is a compliant MXBean without registration callbacks
+            throw new Error(e);
+        }
+        REGISTERED.add(metrics);
+        return metrics;
+    }
+
+    /**
+     * stops publishing the metrics, does nothing if they are not published anymore
+     */
+    public void unregister() {
+        if (REGISTERED.remove(this)) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (InstanceNotFoundException e) {
+                //unregistered by someone else through the server
+            } catch (JMException e) {
+                throw new Error(e);
+            }
+        }
+    }
+
+    /**
+     * @return the name of the MXBean
+     */
+    public ObjectName objectName() {
+        return objectName;
+    }
+
+    /**
+     * emits the statistics event of every metrics registered, called by the 
+     * flight recorder when the event is enabled
+     */
+    private static void emitStatistics() {
+        for (GameBoyMetrics metrics : REGISTERED) {
+            StatisticsEvent event = new StatisticsEvent();
+            event.name = metrics.name;
+            event.cyclesSimulated = metrics.getCyclesSimulated();
+            event.cyclesPerSecond = metrics.eventRate.perSecond(event.cyclesSimulated);
+            event.framesCompleted = metrics.getFramesCompleted();
+            event.instructionsExecuted = metrics.getInstructionsExecuted();
+            event.idleLoopCyclesSkipped = metrics.getIdleLoopCyclesSkipped();
+            event.interruptsServiced = sum(metrics.getInterruptsServiced().values());
+            event.busReads = sum(metrics.getBusReadsByPage());
+            event.busWrites = sum(metrics.getBusWritesByPage());
+            event.dmaTransfers = metrics.getDmaTransfers();
+            event.emulationTime = metrics.getEmulationNanos();
+            event.lineDrawingTime = metrics.getLineDrawingNanos();
+            event.cpuTime = metrics.getCpuNanos();
+            event.commit();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCyclesSimulated() {
+        return gameBoy.cycles();
+    }
+
+    @Override
+    public double getCyclesPerSecond() {
+        return jmxRate.perSecond(gameBoy.cycles());
+    }
+
+    @Override
+    public long getFramesCompleted() {
+        return gameBoy.lcdController().finishedFrames();
+    }
+
+    @Override
+    public long getInstructionsExecuted() {
+        return sum(gameBoy.cpu().executedInstructions().values());
+    }
+
+    @Override
+    public Map<String, Long> getInstructionsByFamily() {
+        return byName(gameBoy.cpu().executedInstructions());
+    }
+
+    @Override
+    public long getIdleLoopCyclesSkipped() {
+        return gameBoy.cpu().skippedIdleCycles();
+    }
+
+    @Override
+    public Map<String, Long> getInterruptsServiced() {
+        return byName(gameBoy.cpu().servicedInterrupts());
+    }
+
+    @Override
+    public long[] getBusReadsByPage() {
+        return gameBoy.bus().readsByPage();
+    }
+
+    @Override
+    public long[] getBusWritesByPage() {
+        return gameBoy.bus().writesByPage();
+    }
+
+    @Override
+    public long getDmaTransfers() {
+        return gameBoy.lcdController().fastCopies();
+    }
+
+    @Override
+    public long getEmulationNanos() {
+        return gameBoy.emulationNanos();
+    }
+
+    @Override
+    public long getLineDrawingNanos() {
+        return gameBoy.lcdController().lineDrawingNanos();
+    }
+
+    @Override
+    public long getCpuNanos() {
+        return Math.max(0, getEmulationNanos() - getLineDrawingNanos());
+    }
+
+    /**
+     * @param counters : counters by enum constant
+     * @return the same counters by name of constant, in the same order
+     */
+    private static Map<String, Long> byName(Map<? extends Enum<?>, Long> counters) {
+        Map<String, Long> byName = new LinkedHashMap<>();
+        counters.forEach((key, count) -> byName.put(key.name(), count));
+        return byName;
+    }
+
+    private static long sum(Iterable<Long> counters) {
+        long sum = 0;
+        for (long count : counters) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private static long sum(long[] counters) {
+        long sum = 0;
+        for (long count : counters) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /**
+     * cycles simulated at a moment, to compute a rate since then
+     */
+    private static final class Rate {
+        private long cycles;
+        private long nanos = System.nanoTime();
+
+        private Rate(long cycles) {
+            this.cycles = cycles;
+        }
+
+        /**
+         * @param cycles : cycles simulated now
+         * @return the cycles simulated per second since the previous call
+         */
+        private synchronized double perSecond(long cycles) {
+            long now = System.nanoTime();
+            double rate = now == nanos ? 0 : (cycles - this.cycles) * NANOSECONDS_PER_SECOND / (now - nanos);
+            this.cycles = cycles;
+            nanos = now;
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ch.epfl.gameboj.metrics;
+
+import java.util.Map;
+
+/**
+ * counters of a game boy, as published through JMX, the instructions and bus
+ * accesses being only counted by a game boy built with detailed metrics
+ */
+public interface GameBoyMetricsMXBean {
+
+    /**
+     * @return the name the game boy was registered with
+     */
+    String getName();
+
+    /**
+     * @return the number of cycles simulated since the game boy was built
+     */
+    long getCyclesSimulated();
+
+    /**
+     * @return the number of cycles simulated per second of real time since the
+     * previous call, or since the registration for the first one
+     */
+    double getCyclesPerSecond();
+
+    /**
+     * @return the number of images finished by the lcd controller
+     */
+    long getFramesCompleted();
+
+    /**
+     * @return the number of instructions executed, the iterations of idle loops
+     * skipped not being counted, 0 without detailed metrics
+     */
+    long getInstructionsExecuted();
+
+    /**
+     * @return the number of instructions executed, by name of opcode family
+     */
+    Map<String, Long> getInstructionsByFamily();
+
+    /**
+     * @return the number of cycles of idle loop iterations skipped
+     */
+    long getIdleLoopCyclesSkipped();
+
+    /**
+     * @return the number of interrupts serviced, by name of interrupt
+     */
+    Map<String, Long> getInterruptsServiced();
+
+    /**
+     * @return the number of reads through the bus, by page of 256 addresses,
+     * all 0 without detailed metrics
+     */
+    long[] getBusReadsByPage();
+
+    /**
+     * @return the number of writes through the bus, by page of 256 addresses,
+     * all 0 without detailed metrics
+     */
+    long[] getBusWritesByPage();
+
+    /**
+     * @return the number of fast copies (DMA) to OAM requested
+     */
+    long getDmaTransfers();
+
+    /**
+     * @return the time spent in GameBoy.runUntil, in nanoseconds
+     */
+    long getEmulationNanos();
+
+    /**
+     * @return the time spent drawing lines (LcdController.computeLine), in 
+     * nanoseconds, estimated from one line out of a few
+     */
+    long getLineDrawingNanos();
+
+    /**
+     * @return the rest of the emulation time, almost all of it spent by the cpu
+     * executing instructions, in nanoseconds
+     */
+    long getCpuNanos();
+}
@@ -0,0 +1,46 @@
+package ch.epfl.gameboj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * flight recorder event of a call to GameBoy.runUntil, committed at its end
+ * only while a recording enables it
+ */
+@Name("ch.epfl.gameboj.Run")
+@Label("Emulation Run")
+@Category("Game Boy")
+@Description("Simulation of cycles of a game boy by GameBoy.runUntil")
+@StackTrace(false)
+public final class RunEvent extends Event {
+
+    //type of the event, registered once, whose state follows the recordings
+    private static final EventType TYPE = EventType.getEventType(RunEvent.class);
+
+    @Label("Cycles")
+    @Description("Number of cycles simulated")
+    public long cycles;
+
+    @Label("Frames")
+    @Description("Number of images finished during the run")
+    public long frames;
+
+    @Label("Run Time")
+    @Description("Real time the simulation took")
+    @Timespan(Timespan.NANOSECONDS)
+    public long runTime;
+
+    /**
+     * @return whether a recording enables the event, checked before creating
+     * one so that nothing is allocated while the flight recorder is off
+     */
+    public static boolean isRecorded() {
+        return TYPE.isEnabled();
+    }
+}
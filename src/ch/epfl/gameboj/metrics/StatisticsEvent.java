@@ -0,0 +1,66 @@
+package ch.epfl.gameboj.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * flight recorder event giving periodically the counters of every game boy
+ * registered by GameBoyMetrics, emitted only while a recording enables it
+ */
+@Name("ch.epfl.gameboj.Statistics")
+@Label("Game Boy Statistics")
+@Category("Game Boy")
+@Description("Counters of a game boy registered for monitoring")
+@Period("1 s")
+@StackTrace(false)
+final class StatisticsEvent extends Event {
+
+    @Label("Name")
+    String name;
+
+    @Label("Cycles Simulated")
+    long cyclesSimulated;
+
+    @Label("Cycles per Second")
+    @Description("Cycles simulated per second of real time since the previous event")
+    double cyclesPerSecond;
+
+    @Label("Frames Completed")
+    long framesCompleted;
+
+    @Label("Instructions Executed")
+    long instructionsExecuted;
+
+    @Label("Idle Loop Cycles Skipped")
+    long idleLoopCyclesSkipped;
+
+    @Label("Interrupts Serviced")
+    long interruptsServiced;
+
+    @Label("Bus Reads")
+    long busReads;
+
+    @Label("Bus Writes")
+    long busWrites;
+
+    @Label("DMA Transfers")
+    long dmaTransfers;
+
+    @Label("Emulation Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long emulationTime;
+
+    @Label("Line Drawing Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long lineDrawingTime;
+
+    @Label("CPU Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long cpuTime;
+}
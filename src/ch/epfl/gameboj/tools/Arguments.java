@@ -0,0 +1,53 @@
+package ch.epfl.gameboj.tools;
+
+/**
+ * parsing of the values of the options given to the tools on the command line
+ */
+final class Arguments {
+
+    private Arguments() {}
+
+    /**
+     * @param args : arguments of the program
+     * @param index : index of the value of an option
+     * @return the value
+     * throws IllegalArgumentException if it is missing
+     */
+    static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("no value for " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    /**
+     * @param value : text of a number
+     * @return the strictly positive number it represents
+     * throws IllegalArgumentException if it does not represent one
+     */
+    static long positive(String value) {
+        long n;
+        try {
+            n = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("not a number: " + value);
+        }
+        if (n <= 0) {
+            throw new IllegalArgumentException("not strictly positive: " + value);
+        }
+        return n;
+    }
+
+    /**
+     * @param value : text of a number
+     * @return the strictly positive int it represents
+     * throws IllegalArgumentException if it does not represent one
+     */
+    static int positiveInt(String value) {
+        long n = positive(value);
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("not a strictly positive int: " + value);
+        }
+        return (int) n;
+    }
+}
@@ -0,0 +1,265 @@
+package ch.epfl.gameboj.tools;
+
+import static ch.epfl.gameboj.tools.Arguments.positive;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import javax.imageio.ImageIO;
+
+import ch.epfl.gameboj.Bus;
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.cpu.InstructionTrace;
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+import ch.epfl.gameboj.gui.BufferedImageConverter;
+import ch.epfl.gameboj.metrics.GameBoyMetrics;
+
+/**
+ * runs a rom without display as fast as possible, for a number of images or
+ * cycles, optionally writing the hash of every image, screenshots of some
+ * images and the content of the address space at the end, then reports the
+ * speed of the simulation on the standard error, with its metrics if asked, 
+ * which are also published through JMX during the run, the report of the
+ * profiler if the instructions are profiled, and the trace of the last 
+ * instructions if they are traced (also written if the simulation fails)
+ *
+ * usage: BatchRunner rom (--frames n | --cycles n) [--hashes file|-]
+ *        [--screenshots n,n,...] [--out directory] [--dump-memory file]
+ *        [--metrics basic|detailed] [--profile file|-] [--trace file]
+ */
+public final class BatchRunner {
+
+    //CONSTANTS
+    private static final long DEFAULT_FRAMES = 3600;
+    private static final int ADDRESS_SPACE_SIZE = 0x10000;
+    private static final String USAGE = "usage: BatchRunner rom (--frames n | --cycles n) "
+            + "[--hashes file|-] [--screenshots n,n,...] [--out directory] [--dump-memory file] "
+            + "[--metrics basic|detailed] [--profile file|-] [--trace file]";
+
+    //FIELDS
+    private final Path rom;
+    private long cycles;
+    private String hashes = null;
+    private final SortedSet<Long> screenshots = new TreeSet<>();
+    private Path out = Paths.get(".");
+    private Path memoryDump = null;
+    private boolean metrics = false;
+    private boolean detailedMetrics = false;
+    private String profile = null;
+    private Path trace = null;
+
+    private BatchRunner(Path rom) {
+        this.rom = rom;
+        cycles = DEFAULT_FRAMES * LcdController.CYCLES_PER_FRAME;
+    }
+
+    /**
+     * The main method
+     */
+    public static void main(String[] args) {
+        BatchRunner runner;
+        try {
+            runner = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            runner.run();
+        }
+        //exits the program in case of an exception
+        catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param args : arguments of the program
+     * @return the runner they describe
+     * throws IllegalArgumentException if they are not valid
+     */
+    private static BatchRunner parse(String[] args) {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("no rom given");
+        }
+        BatchRunner runner = new BatchRunner(Paths.get(args[0]));
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("no value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--frames":
+                try {
+                    runner.cycles = Math.multiplyExact(positive(value), LcdController.CYCLES_PER_FRAME);
+                } catch (ArithmeticException e) {
+                    throw new IllegalArgumentException("too many frames: " + value);
+                }
+                break;
+            case "--cycles":
+                runner.cycles = positive(value);
+                break;
+            case "--hashes":
+                runner.hashes = value;
+                break;
+            case "--screenshots":
+                for (String frame : value.split(",")) {
+                    runner.screenshots.add(positive(frame));
+                }
+                break;
+            case "--out":
+                runner.out = Paths.get(value);
+                break;
+            case "--dump-memory":
+                runner.memoryDump = Paths.get(value);
+                break;
+            case "--metrics":
+                if (!value.equals("basic") && !value.equals("detailed")) {
+                    throw new IllegalArgumentException("unknown metrics " + value);
+                }
+                runner.metrics = true;
+                runner.detailedMetrics = value.equals("detailed");
+                break;
+            case "--profile":
+                runner.profile = value;
+                break;
+            case "--trace":
+                runner.trace = Paths.get(value);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        return runner;
+    }
+
+    /**
+     * simulates the game boy image after image, the time spent writing the
+     * outputs is not counted in the speed reported
+     * @throws IOException if the rom can not be read or an output written
+     */
+    private void run() throws IOException {
+        GameBoy.Options options = new GameBoy.Options();
+        if (detailedMetrics) {
+            options.detailedMetrics();
+        }
+        if (profile != null) {
+            options.profiled();
+        }
+        if (trace != null) {
+            options.trace(new InstructionTrace(InstructionTrace.DEFAULT_CAPACITY, trace));
+        }
+        GameBoy gameBoy = new GameBoy(Cartridge.ofImage(ByteBuffer.wrap(Files.readAllBytes(rom))), options);
+        GameBoyMetrics gameBoyMetrics = metrics ? GameBoyMetrics.register(gameBoy, rom.getFileName().toString()) : null;
+        //the metrics stay registered only as long as the game boy runs
+        try {
+            PrintStream hashOutput = hashes == null ? null
+                    : hashes.equals("-") ? System.out
+                    : new PrintStream(Files.newOutputStream(Paths.get(hashes)));
+            if (!screenshots.isEmpty()) {
+                Files.createDirectories(out);
+            }
+
+            long frames = (cycles + LcdController.CYCLES_PER_FRAME - 1) / LcdController.CYCLES_PER_FRAME;
+            long simulationTime = 0;
+            try {
+                for (long frame = 1; frame <= frames; ++frame) {
+                    long start = System.nanoTime();
+                    gameBoy.runUntil(Math.min(cycles, frame * LcdController.CYCLES_PER_FRAME));
+                    simulationTime += System.nanoTime() - start;
+
+                    LcdImage image = gameBoy.lcdController().currentImage();
+                    if (hashOutput != null) {
+                        hashOutput.printf("%d %08x%n", frame, image.hashCode());
+                    }
+                    if (screenshots.contains(frame)) {
+                        ImageIO.write(BufferedImageConverter.toBufferedImage(image), "png",
+                                out.resolve("frame " + frame + ".png").toFile());
+                    }
+                }
+            } finally {
+                if (hashOutput != null && hashOutput != System.out) {
+                    hashOutput.close();
+                }
+            }
+            if (memoryDump != null) {
+                Files.write(memoryDump, addressSpace(gameBoy.bus()));
+            }
+            if (trace != null) {
+                gameBoy.trace().dump(trace);
+            }
+            if (profile != null) {
+                PrintStream profileOutput = profile.equals("-") ? System.out
+                        : new PrintStream(Files.newOutputStream(Paths.get(profile)));
+                try {
+                    gameBoy.profiler().report(profileOutput);
+                    profileOutput.flush();
+                } finally {
+                    if (profileOutput != System.out) {
+                        profileOutput.close();
+                    }
+                }
+            }
+
+            double seconds = simulationTime / 1e9;
+            System.err.printf(Locale.ROOT, "%s: %d frames, %d cycles in %.3f s, %.1f frames/s, %.1f times real time%n",
+                    rom.getFileName(), frames, cycles, seconds, frames / seconds,
+                    cycles / (seconds * GameBoy.CYCLES_PER_SECOND));
+            if (gameBoyMetrics != null) {
+                report(gameBoyMetrics);
+            }
+        } finally {
+            if (gameBoyMetrics != null) {
+                gameBoyMetrics.unregister();
+            }
+        }
+    }
+
+    /**
+     * @param metrics : metrics of the game boy run
+     * writes the counters on the standard error
+     */
+    private static void report(GameBoyMetrics metrics) {
+        System.err.printf(Locale.ROOT, "frames completed %d, idle loop cycles skipped %d, dma transfers %d%n",
+                metrics.getFramesCompleted(), metrics.getIdleLoopCyclesSkipped(), metrics.getDmaTransfers());
+        System.err.printf(Locale.ROOT, "time: emulation %.3f s, line drawing %.3f s, cpu %.3f s%n",
+                metrics.getEmulationNanos() / 1e9, metrics.getLineDrawingNanos() / 1e9, 
+                metrics.getCpuNanos() / 1e9);
+        System.err.println("interrupts serviced " + metrics.getInterruptsServiced());
+        if (metrics.getInstructionsExecuted() != 0) {
+            System.err.println("instructions executed " + metrics.getInstructionsExecuted() 
+                + " " + metrics.getInstructionsByFamily());
+            long[] reads = metrics.getBusReadsByPage();
+            long[] writes = metrics.getBusWritesByPage();
+            for (int page = 0; page < reads.length; ++page) {
+                if (reads[page] != 0 || writes[page] != 0) {
+                    System.err.printf(Locale.ROOT, "bus page %04x: %d reads, %d writes%n",
+                            page << Bus.COUNTER_PAGE_BITS, reads[page], writes[page]);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param bus : bus of a game boy
+     * @return the bytes read at every address of the bus
+     */
+    private static byte[] addressSpace(Bus bus) {
+        byte[] memory = new byte[ADDRESS_SPACE_SIZE];
+        bus.readBlock(0, memory, 0, ADDRESS_SPACE_SIZE);
+        return memory;
+    }
+}
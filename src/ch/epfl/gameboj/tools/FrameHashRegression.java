@@ -0,0 +1,286 @@
+package ch.epfl.gameboj.tools;
+
+import static ch.epfl.gameboj.tools.Arguments.positive;
+import static ch.epfl.gameboj.tools.Arguments.positiveInt;
+import static ch.epfl.gameboj.tools.Arguments.value;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import ch.epfl.gameboj.component.Joypad;
+import ch.epfl.gameboj.component.Joypad.Key;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.cartridge.RomRegistry;
+
+/**
+ * checks that the emulator still draws exactly the same images: every rom is
+ * run without display, all at once on the cores of the machine, with the same
+ * scripted key presses, and the hashes of its images at fixed frames are 
+ * compared with the golden ones stored, which --update rewrites
+ *
+ * at every checkpoint two hashes are kept: the one of the image (LcdImage.hashCode,
+ * which changes whenever a single pixel does) and a chain of the hashes of all 
+ * the images up to it, so that an image that differs between two checkpoints
+ * is noticed too
+ *
+ * frames are numbered from 1 on, like the hashes of BatchRunner
+ *
+ * usage: FrameHashRegression [--update] [--golden file] [--frames n] [--every n] 
+ *        [--threads n] [rom...]
+ * (all the roms of resources/games by default)
+ */
+public final class FrameHashRegression {
+
+    //CONSTANTS
+    private static final Path DEFAULT_GOLDEN = Paths.get("resources", "golden", "frame-hashes.txt");
+    private static final Path DEFAULT_ROMS = Paths.get("resources", "games");
+    private static final long DEFAULT_FRAMES = 3600;
+    private static final long DEFAULT_EVERY = 60;
+    private static final int SLICE_FRAMES = 30;
+    private static final String USAGE = "usage: FrameHashRegression [--update] [--golden file] "
+            + "[--frames n] [--every n] [--threads n] [rom...]";
+
+    //the key script: from SCRIPT_START on, every SCRIPT_PERIOD frames the next
+    //key of SCRIPT_KEYS is pressed for SCRIPT_HOLD frames
+    private static final long SCRIPT_START = 180;
+    private static final long SCRIPT_PERIOD = 30;
+    private static final long SCRIPT_HOLD = 6;
+    private static final Key[] SCRIPT_KEYS = { Key.START, Key.A, Key.RIGHT, Key.A, Key.DOWN,
+            Key.B, Key.LEFT, Key.UP, Key.A, Key.START };
+
+    //FIELDS
+    private boolean update = false;
+    private Path golden = DEFAULT_GOLDEN;
+    private long frames = DEFAULT_FRAMES;
+    private long every = DEFAULT_EVERY;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final List<Path> roms = new ArrayList<>();
+
+    private FrameHashRegression() {}
+
+    /**
+     * presses and releases the keys of the script, the same for every rom
+     * @param joypad : joypad of the game boy
+     * @param frame : index of the image about to be simulated, from 0 on
+     */
+    public static void pressScriptedKeys(Joypad joypad, long frame) {
+        if (frame < SCRIPT_START) {
+            return;
+        }
+        long step = (frame - SCRIPT_START) / SCRIPT_PERIOD;
+        long inStep = (frame - SCRIPT_START) % SCRIPT_PERIOD;
+        Key key = SCRIPT_KEYS[(int) (step % SCRIPT_KEYS.length)];
+        if (inStep == 0) {
+            joypad.keyPressed(key);
+        } else if (inStep == SCRIPT_HOLD) {
+            joypad.keyReleased(key);
+        }
+    }
+
+    /**
+     * The main method
+     */
+    public static void main(String[] args) {
+        FrameHashRegression regression;
+        try {
+            regression = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            System.exit(regression.run() ? 0 : 1);
+        }
+        //exits the program in case of an exception
+        catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param args : arguments of the program
+     * @return the regression they describe
+     * throws IllegalArgumentException if they are not valid
+     */
+    private static FrameHashRegression parse(String[] args) {
+        FrameHashRegression regression = new FrameHashRegression();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--update":
+                regression.update = true;
+                break;
+            case "--golden":
+                regression.golden = Paths.get(value(args, ++i));
+                break;
+            case "--frames":
+                regression.frames = positive(value(args, ++i));
+                break;
+            case "--every":
+                regression.every = positive(value(args, ++i));
+                break;
+            case "--threads":
+                regression.threads = positiveInt(value(args, ++i));
+                break;
+            default:
+                regression.roms.add(Paths.get(args[i]));
+            }
+        }
+        if (regression.frames > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many frames: " + regression.frames);
+        }
+        return regression;
+    }
+
+    /**
+     * runs the roms, then either writes their hashes as the golden ones or
+     * compares them with the golden ones, reporting on the standard output
+     * @return whether every checkpoint has its golden hashes
+     * @throws IOException if a rom or the golden file can not be read or written
+     */
+    private boolean run() throws IOException {
+        if (roms.isEmpty()) {
+            try (DirectoryStream<Path> games = Files.newDirectoryStream(DEFAULT_ROMS, "*.gb")) {
+                games.forEach(roms::add);
+            }
+            roms.sort(null);
+        }
+
+        RomRegistry registry = new RomRegistry();
+        List<ParallelRunner.Job> jobs = new ArrayList<>();
+        for (Path rom : roms) {
+            ByteBuffer image = registry.load(rom, false);
+            try {
+                Cartridge.ofImage(image);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("skipped %s: %s%n", rom.getFileName(), e.getMessage());
+                continue;
+            }
+            jobs.add(new ParallelRunner.Job(rom.getFileName().toString(), image, frames,
+                    FrameHashRegression::pressScriptedKeys));
+        }
+
+        long start = System.nanoTime();
+        List<ParallelRunner.Result> results = new ParallelRunner(threads, SLICE_FRAMES).run(jobs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf(Locale.ROOT, "%d roms, %d frames each in %.3f s%n", results.size(), frames, seconds);
+
+        Map<String, Map<Long, String>> hashes = new TreeMap<>();
+        for (ParallelRunner.Result result : results) {
+            hashes.put(result.name(), checkpoints(result));
+        }
+        if (update) {
+            //the golden hashes of the roms not run are kept
+            Map<String, Map<Long, String>> updated = new TreeMap<>(Files.exists(golden) ? read() : Map.of());
+            updated.putAll(hashes);
+            write(updated);
+            System.out.printf("wrote the hashes of %d roms to %s%n", hashes.size(), golden);
+            return true;
+        }
+        return compare(hashes, read());
+    }
+
+    /**
+     * @param result : images of a rom
+     * @return the hashes of the image and of the chain at each checkpoint,
+     * by frame number
+     */
+    private Map<Long, String> checkpoints(ParallelRunner.Result result) {
+        Map<Long, String> checkpoints = new TreeMap<>();
+        int chain = 0;
+        for (int i = 0; i < result.frames(); ++i) {
+            chain = 31 * chain + result.frameHash(i);
+            long frame = i + 1;
+            if (frame % every == 0) {
+                checkpoints.put(frame, String.format("%08x %08x", result.frameHash(i), chain));
+            }
+        }
+        return checkpoints;
+    }
+
+    /**
+     * @param hashes : hashes of the checkpoints, by rom
+     * @param expected : golden hashes of the checkpoints, by rom
+     * @return whether all the hashes are the golden ones
+     */
+    private static boolean compare(Map<String, Map<Long, String>> hashes, Map<String, Map<Long, String>> expected) {
+        boolean passed = true;
+        for (Map.Entry<String, Map<Long, String>> rom : hashes.entrySet()) {
+            Map<Long, String> golden = expected.getOrDefault(rom.getKey(), Map.of());
+            String failure = null;
+            for (Map.Entry<Long, String> checkpoint : rom.getValue().entrySet()) {
+                String goldenHashes = golden.get(checkpoint.getKey());
+                if (goldenHashes == null) {
+                    failure = "no golden hashes for frame " + checkpoint.getKey();
+                } else if (!goldenHashes.equals(checkpoint.getValue())) {
+                    failure = "frame " + checkpoint.getKey() + ": " + checkpoint.getValue() 
+                        + " instead of " + goldenHashes;
+                }
+                if (failure != null) {
+                    break;
+                }
+            }
+            if (failure == null) {
+                System.out.printf("ok %s (%d checkpoints)%n", rom.getKey(), rom.getValue().size());
+            } else {
+                System.out.printf("FAILED %s: %s%n", rom.getKey(), failure);
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * @return the golden hashes, by frame number and by rom
+     * @throws IOException if the golden file can not be read
+     */
+    private Map<String, Map<Long, String>> read() throws IOException {
+        Map<String, Map<Long, String>> hashes = new TreeMap<>();
+        for (String line : Files.readAllLines(golden)) {
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            //the name of the rom may contain spaces, so it is separated by tabs
+            String[] fields = line.split("\t");
+            if (fields.length != 3) {
+                throw new IOException("invalid line in " + golden + ": " + line);
+            }
+            hashes.computeIfAbsent(fields[0], rom -> new TreeMap<>())
+                    .put(Long.parseLong(fields[1]), fields[2]);
+        }
+        return hashes;
+    }
+
+    /**
+     * @param hashes : hashes of the checkpoints by rom, written as the golden ones
+     * @throws IOException if the golden file can not be written
+     */
+    private void write(Map<String, Map<Long, String>> hashes) throws IOException {
+        Path parent = golden.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(golden))) {
+            writer.println("# rom, frame, hash of the image and of the chain of images up to it,");
+            writer.println("# written by FrameHashRegression --update");
+            for (Map.Entry<String, Map<Long, String>> rom : hashes.entrySet()) {
+                for (Map.Entry<Long, String> checkpoint : rom.getValue().entrySet()) {
+                    writer.printf("%s\t%d\t%s%n", rom.getKey(), checkpoint.getKey(), checkpoint.getValue());
+                }
+            }
+        }
+    }
+}
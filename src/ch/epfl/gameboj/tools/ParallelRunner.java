@@ -0,0 +1,287 @@
+package ch.epfl.gameboj.tools;
+
+import static ch.epfl.gameboj.Preconditions.checkArgument;
+import static ch.epfl.gameboj.tools.Arguments.positive;
+import static ch.epfl.gameboj.tools.Arguments.positiveInt;
+import static ch.epfl.gameboj.tools.Arguments.value;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.component.Joypad;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.cartridge.RomRegistry;
+import ch.epfl.gameboj.component.lcd.LcdController;
+
+/**
+ * runs many independent game boys at once on a pool of threads: every game boy
+ * is simulated in slices of a few images, each slice queueing the following
+ * one at the end of the single queue of the pool, behind the slices of the 
+ * other game boys, so that they all progress at the same pace
+ *
+ * a game boy and its inputs are only used by its own slices, which run one
+ * after the other, the queue ordering each slice after the one that queued it,
+ * and the only data shared between game boys are the images of the roms,
+ * which are only read, each game boy getting its own cartridge over them
+ *
+ * usage: ParallelRunner [--frames n] [--instances n] [--threads n] [--slice n] [--mapped] rom...
+ */
+public final class ParallelRunner {
+
+    //CONSTANTS
+    private static final int DEFAULT_SLICE_FRAMES = 4;
+    private static final long DEFAULT_FRAMES = 3600;
+    private static final String USAGE = "usage: ParallelRunner [--frames n] [--instances n] "
+            + "[--threads n] [--slice n] [--mapped] rom...";
+
+    //FIELDS
+    private final int threads;
+    private final int sliceFrames;
+
+    /**
+     * @param threads : number of threads of the pool
+     * @param sliceFrames : number of images simulated by a game boy before the
+     * others get their turn
+     * throws IllegalArgumentException if one of them is not strictly positive
+     */
+    public ParallelRunner(int threads, int sliceFrames) {
+        checkArgument(threads > 0 && sliceFrames > 0);
+        this.threads = threads;
+        this.sliceFrames = sliceFrames;
+    }
+
+    /**
+     * a game boy to simulate
+     */
+    public static final class Job {
+        private final String name;
+        private final ByteBuffer rom;
+        private final long frames;
+        private final ObjLongConsumer<Joypad> inputs;
+
+        /**
+         * @param name : name of the job in the results
+         * @param rom : image of the rom, shared and never modified
+         * @param frames : number of images to simulate
+         * @param inputs : called before each image with the joypad of the game
+         * boy and the index of the image, from 0 on, to press or release keys
+         * throws IllegalArgumentException if frames is not strictly positive
+         */
+        public Job(String name, ByteBuffer rom, long frames, ObjLongConsumer<Joypad> inputs) {
+            checkArgument(frames > 0);
+            this.name = Objects.requireNonNull(name);
+            this.rom = Objects.requireNonNull(rom);
+            this.frames = frames;
+            this.inputs = Objects.requireNonNull(inputs);
+        }
+
+        /**
+         * @param name : name of the job in the results
+         * @param rom : image of the rom, shared and never modified
+         * @param frames : number of images to simulate, without any key pressed
+         */
+        public Job(String name, ByteBuffer rom, long frames) {
+            this(name, rom, frames, (joypad, frame) -> {});
+        }
+    }
+
+    /**
+     * what a job produced
+     */
+    public static final class Result {
+        private final String name;
+        private final int[] frameHashes;
+
+        private Result(String name, int[] frameHashes) {
+            this.name = name;
+            this.frameHashes = frameHashes;
+        }
+
+        /**
+         * @return the name of the job
+         */
+        public String name() {
+            return name;
+        }
+
+        /**
+         * @return the number of images simulated
+         */
+        public int frames() {
+            return frameHashes.length;
+        }
+
+        /**
+         * @param frame : index of an image, from 0 on
+         * @return the hash of the image
+         */
+        public int frameHash(int frame) {
+            return frameHashes[frame];
+        }
+
+        /**
+         * @return the hash of the last image
+         */
+        public int lastFrameHash() {
+            return frameHashes[frameHashes.length - 1];
+        }
+    }
+
+    /**
+     * @param jobs : game boys to simulate
+     * @return their results, in the same order
+     * throws IllegalArgumentException if a job can not be started, for example
+     * when its rom uses an unsupported cartridge
+     */
+    public List<Result> run(List<Job> jobs) {
+        //a fork join pool would run the slice queued by a worker before the
+        //ones of the other game boys, all the workers share this queue instead
+        ExecutorService pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        try {
+            List<CompletableFuture<Result>> results = new ArrayList<>();
+            for (Job job : jobs) {
+                Instance instance = new Instance(job, pool);
+                pool.execute(instance::runSlice);
+                results.add(instance.result);
+            }
+            List<Result> finished = new ArrayList<>();
+            for (CompletableFuture<Result> result : results) {
+                finished.add(result.join());
+            }
+            return Collections.unmodifiableList(finished);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * a game boy being simulated and the hashes of its images
+     */
+    private final class Instance {
+        private final Job job;
+        private final Executor pool;
+        private final GameBoy gameBoy;
+        private final int[] frameHashes;
+        private final CompletableFuture<Result> result = new CompletableFuture<>();
+        private int frame = 0;
+
+        private Instance(Job job, Executor pool) {
+            this.job = job;
+            this.pool = pool;
+            checkArgument(job.frames <= Integer.MAX_VALUE);
+            gameBoy = new GameBoy(Cartridge.ofImage(job.rom));
+            frameHashes = new int[(int) job.frames];
+        }
+
+        /**
+         * simulates the next slice of images, then queues the following one
+         * or completes the result
+         */
+        private void runSlice() {
+            try {
+                int end = Math.min(frameHashes.length, frame + sliceFrames);
+                for (; frame < end; ++frame) {
+                    job.inputs.accept(gameBoy.joypad(), frame);
+                    gameBoy.runUntil((frame + 1) * LcdController.CYCLES_PER_FRAME);
+                    frameHashes[frame] = gameBoy.lcdController().currentImage().hashCode();
+                }
+            } catch (RuntimeException | Error e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            if (frame < frameHashes.length) {
+                //the slice goes behind the ones already queued
+                pool.execute(this::runSlice);
+            } else {
+                result.complete(new Result(job.name, frameHashes));
+            }
+        }
+    }
+
+    /**
+     * The main method
+     */
+    public static void main(String[] args) {
+        long frames = DEFAULT_FRAMES;
+        int instances = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int slice = DEFAULT_SLICE_FRAMES;
+        boolean mapped = false;
+        List<Path> roms = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; ++i) {
+                switch (args[i]) {
+                case "--frames":
+                    frames = positive(value(args, ++i));
+                    break;
+                case "--instances":
+                    instances = positiveInt(value(args, ++i));
+                    break;
+                case "--threads":
+                    threads = positiveInt(value(args, ++i));
+                    break;
+                case "--slice":
+                    slice = positiveInt(value(args, ++i));
+                    break;
+                case "--mapped":
+                    mapped = true;
+                    break;
+                default:
+                    roms.add(Paths.get(args[i]));
+                }
+            }
+            if (roms.isEmpty()) {
+                throw new IllegalArgumentException("no rom given");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        RomRegistry registry = new RomRegistry();
+        List<Job> jobs = new ArrayList<>();
+        try {
+            for (Path rom : roms) {
+                ByteBuffer image = registry.load(rom, mapped);
+                for (int i = 0; i < instances; ++i) {
+                    jobs.add(new Job(rom.getFileName() + " #" + i, image, frames));
+                }
+            }
+        }
+        //exits the program in case of an exception
+        catch (IOException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        List<Result> results = new ParallelRunner(threads, slice).run(jobs);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long totalFrames = 0;
+        for (Result result : results) {
+            System.out.printf("%s %d %08x%n", result.name(), result.frames(), result.lastFrameHash());
+            totalFrames += result.frames();
+        }
+        System.err.printf(Locale.ROOT, "%d instances on %d threads: %d frames in %.3f s, %.1f frames/s%n",
+                results.size(), threads, totalFrames, seconds, totalFrames / seconds);
+    }
+}
@@ -0,0 +1,544 @@
+package ch.epfl.gameboj.tools;
+
+import static ch.epfl.gameboj.tools.Arguments.positive;
+import static ch.epfl.gameboj.tools.Arguments.positiveInt;
+import static ch.epfl.gameboj.tools.Arguments.value;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeSet;
+
+import ch.epfl.gameboj.GameBoy;
+import ch.epfl.gameboj.RewindBuffer;
+import ch.epfl.gameboj.Savable;
+import ch.epfl.gameboj.component.Joypad;
+import ch.epfl.gameboj.component.Joypad.Key;
+import ch.epfl.gameboj.component.cartridge.Cartridge;
+import ch.epfl.gameboj.component.cartridge.RomRegistry;
+import ch.epfl.gameboj.component.lcd.LcdController;
+import ch.epfl.gameboj.component.lcd.LcdImage;
+import ch.epfl.gameboj.component.lcd.LcdImageLine;
+import ch.epfl.gameboj.component.lcd.LcdImageTripleBuffer;
+import ch.epfl.gameboj.gui.EmulationLoop;
+
+/**
+ * checks the save states, the forks, the rewind buffer and the triple buffer
+ * by comparing the bytes of the states they produce: every rom is run for a
+ * few frames with the key script of FrameHashRegression, then from the state
+ * reached
+ * - a game boy loading it saves the same bytes, and once both are run for a
+ *   few more frames they have the same state and image, the time taken by a
+ *   save into a reused buffer being reported
+ * - running forks changes nothing in their parent nor in one another, and
+ *   the other way round, each ending in the state of a game boy loading the
+ *   same state and run alike, the time taken by a fork being reported
+ * - a rewind buffer brought back 0, interval - 1, interval and capacity - 1
+ *   frames restores the states saved at those frames
+ * the triple buffer is then given numbered images by a producer thread while
+ * the consumer checks that it only gets whole images, never older ones than
+ * before, and the last one once the producer is done, and the first rom is
+ * run in an emulation loop on its own thread, which must hand images over,
+ * apply the key events queued in order and stop when asked
+ *
+ * usage: StateChecks [--frames n] [--capacity n] [--interval n] [--images n] [rom...]
+ * (all the roms of resources/games by default)
+ */
+public final class StateChecks {
+
+    //CONSTANTS
+    private static final Path DEFAULT_ROMS = Paths.get("resources", "games");
+    private static final long DEFAULT_FRAMES = 600;
+    private static final int DEFAULT_CAPACITY = 120;
+    private static final int DEFAULT_INTERVAL = 30;
+    private static final int DEFAULT_IMAGES = 20_000;
+    //frames run after the state of reference is reached
+    private static final int CHECK_FRAMES = 60;
+    //saves timed after the ones warming the code up
+    private static final int SAVE_WARMUP = 10_000;
+    private static final int SAVES = 2_000;
+    //forks timed after the ones warming the code up, and children checked
+    private static final int FORK_WARMUP = 5_000;
+    private static final int TIMED_FORKS = 1_000;
+    private static final int FORKS = 3;
+    //shift of the key script of the game boys which must do something else
+    private static final long OTHER_SCRIPT_SHIFT = 15;
+    //the number of an image of the triple buffer is written in the msb of its
+    //first NUMBER_BITS pixels, on every line
+    private static final int NUMBER_BITS = Integer.SIZE;
+    //time during which the emulation loop runs
+    private static final int LOOP_MILLIS = 1_000;
+    private static final String USAGE = "usage: StateChecks [--frames n] [--capacity n] "
+            + "[--interval n] [--images n] [rom...]";
+
+    //FIELDS
+    private long frames = DEFAULT_FRAMES;
+    private int capacity = DEFAULT_CAPACITY;
+    private int interval = DEFAULT_INTERVAL;
+    private int images = DEFAULT_IMAGES;
+    private final List<Path> roms = new ArrayList<>();
+
+    private StateChecks() {}
+
+    /**
+     * a check that does not hold
+     */
+    @SuppressWarnings("serial")
+    private static final class Failure extends Exception {
+        Failure(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The main method
+     */
+    public static void main(String[] args) {
+        StateChecks checks;
+        try {
+            checks = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            System.exit(checks.run() ? 0 : 1);
+        }
+        //exits the program in case of an exception
+        catch (IOException | InterruptedException e) {
+            System.err.println(e);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param args : arguments of the program
+     * @return the checks they describe
+     * throws IllegalArgumentException if they are not valid
+     */
+    private static StateChecks parse(String[] args) {
+        StateChecks checks = new StateChecks();
+        for (int i = 0; i < args.length; ++i) {
+            switch (args[i]) {
+            case "--frames":
+                checks.frames = positive(value(args, ++i));
+                break;
+            case "--capacity":
+                checks.capacity = positiveInt(value(args, ++i));
+                break;
+            case "--interval":
+                checks.interval = positiveInt(value(args, ++i));
+                break;
+            case "--images":
+                checks.images = positiveInt(value(args, ++i));
+                break;
+            default:
+                checks.roms.add(Paths.get(args[i]));
+            }
+        }
+        return checks;
+    }
+
+    /**
+     * runs the checks of every rom then the one of the triple buffer,
+     * reporting on the standard output
+     * @return whether all the checks hold
+     * @throws IOException if a rom can not be read
+     * @throws InterruptedException if interrupted while waiting for the producer
+     */
+    private boolean run() throws IOException, InterruptedException {
+        if (roms.isEmpty()) {
+            try (DirectoryStream<Path> games = Files.newDirectoryStream(DEFAULT_ROMS, "*.gb")) {
+                games.forEach(roms::add);
+            }
+            roms.sort(null);
+        }
+
+        boolean passed = true;
+        RomRegistry registry = new RomRegistry();
+        ByteBuffer loopRom = null;
+        for (Path rom : roms) {
+            ByteBuffer image = registry.load(rom, false);
+            try {
+                Cartridge.ofImage(image);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("skipped %s: %s%n", rom.getFileName(), e.getMessage());
+                continue;
+            }
+            if (loopRom == null) {
+                loopRom = image;
+            }
+            try {
+                System.out.printf("ok %s (%s)%n", rom.getFileName(), checkRom(image));
+            } catch (Failure e) {
+                System.out.printf("FAILED %s: %s%n", rom.getFileName(), e.getMessage());
+                passed = false;
+            }
+        }
+
+        try {
+            int taken = checkTripleBuffer();
+            System.out.printf(Locale.ROOT, "ok triple buffer (%d of %d images taken)%n", taken, images);
+        } catch (Failure e) {
+            System.out.printf("FAILED triple buffer: %s%n", e.getMessage());
+            passed = false;
+        }
+        if (loopRom != null) {
+            try {
+                int taken = checkEmulationLoop(loopRom);
+                System.out.printf(Locale.ROOT, "ok emulation loop (%d images taken in %d ms)%n", taken, LOOP_MILLIS);
+            } catch (Failure e) {
+                System.out.printf("FAILED emulation loop: %s%n", e.getMessage());
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * @param image : content of the rom
+     * @return the times taken by a save of the state and by a fork
+     * throws Failure if one of the checks of the save states, the forks or the
+     * rewind buffer does not hold
+     */
+    private String checkRom(ByteBuffer image) throws Failure {
+        GameBoy reference = new GameBoy(Cartridge.ofImage(image));
+        runFrames(reference, 0, frames, 0);
+        byte[] start = state(reference);
+
+        String saveTime = checkSaveState(image, reference, start);
+        byte[] after = state(reference);
+
+        String forkTime = checkForks(image, start, after);
+        checkRewind(image, start);
+        return saveTime + ", " + forkTime;
+    }
+
+    /**
+     * measures the time taken by a save, then checks that a game boy loading
+     * a state saves the same bytes, and that once both are run for CHECK_FRAMES
+     * frames they have the same state and image
+     * @param image : content of the rom
+     * @param reference : game boy in the state start, which is run
+     * @param start : state of reference
+     * @return the mean time taken by a save into a reused buffer
+     * throws Failure if the states or the images differ
+     */
+    private String checkSaveState(ByteBuffer image, GameBoy reference, byte[] start) throws Failure {
+        ByteBuffer buffer = ByteBuffer.allocate(reference.stateSize());
+        for (int i = 0; i < SAVE_WARMUP; ++i) {
+            buffer.clear();
+            reference.saveState(buffer);
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < SAVES; ++i) {
+            buffer.clear();
+            reference.saveState(buffer);
+        }
+        double micros = (System.nanoTime() - begin) / 1e3 / SAVES;
+
+        GameBoy loaded = loaded(image, start);
+        compare(state(loaded), start, "state loaded");
+        compare(state(reference), start, "state saved again");
+        runFrames(reference, frames, CHECK_FRAMES, 0);
+        runFrames(loaded, frames, CHECK_FRAMES, 0);
+        compare(state(loaded), state(reference), "state loaded then run");
+        check(loaded.lcdController().currentImage().equals(reference.lcdController().currentImage()),
+                "image of the state loaded then run");
+        return String.format(Locale.ROOT, "save %.1f us", micros);
+    }
+
+    /**
+     * measures the time taken by a fork, then forks FORKS children from a game
+     * boy, each pressing other keys, and checks that running them changes
+     * nothing in their parent nor in one another, and the other way round,
+     * each ending in the state of a game boy loading the same state and run alike
+     * @param image : content of the rom
+     * @param start : state from which the children are forked
+     * @param after : state of a game boy run for CHECK_FRAMES frames from start
+     * @return the mean time taken by a fork
+     * throws Failure if a state differs
+     */
+    private String checkForks(ByteBuffer image, byte[] start, byte[] after) throws Failure {
+        GameBoy parent = loaded(image, start);
+        for (int i = 0; i < FORK_WARMUP; ++i) {
+            parent.fork();
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < TIMED_FORKS; ++i) {
+            parent.fork();
+        }
+        double micros = (System.nanoTime() - begin) / 1e3 / TIMED_FORKS;
+
+        GameBoy[] children = new GameBoy[FORKS];
+        for (int i = 0; i < FORKS; ++i) {
+            children[i] = parent.fork();
+            compare(state(children[i]), start, "state of fork " + i);
+        }
+        byte[][] childStates = new byte[FORKS][];
+        for (int i = 0; i < FORKS; ++i) {
+            runFrames(children[i], frames, CHECK_FRAMES, OTHER_SCRIPT_SHIFT * (i + 1));
+            childStates[i] = state(children[i]);
+        }
+        compare(state(parent), start, "state of the parent once its forks are run");
+        runFrames(parent, frames, CHECK_FRAMES, 0);
+        compare(state(parent), after, "state of the parent run after its forks");
+        for (int i = 0; i < FORKS; ++i) {
+            compare(state(children[i]), childStates[i], "state of fork " + i + " once the others are run");
+            GameBoy other = loaded(image, start);
+            runFrames(other, frames, CHECK_FRAMES, OTHER_SCRIPT_SHIFT * (i + 1));
+            compare(childStates[i], state(other), "state of fork " + i + " run");
+        }
+        return String.format(Locale.ROOT, "fork %.1f us", micros);
+    }
+
+    /**
+     * records more frames than the capacity of a rewind buffer, then checks
+     * that each age of interest restores its frame and forgets the newer ones
+     * @param image : content of the rom
+     * @param start : state from which the frames are recorded
+     * throws Failure if a rewind does not restore the state saved
+     */
+    private void checkRewind(ByteBuffer image, byte[] start) throws Failure {
+        //the ring wraps around, the oldest frame kept being in the middle of
+        //an interval
+        int recorded = capacity + interval + interval / 2;
+        GameBoy gameBoy = loaded(image, start);
+        byte[][] states = new byte[recorded][];
+        for (int i = 0; i < recorded; ++i) {
+            runFrames(gameBoy, frames + i, 1, 0);
+            states[i] = state(gameBoy);
+        }
+
+        TreeSet<Integer> ages = new TreeSet<>(Arrays.asList(0, interval - 1, interval, capacity - 1));
+        for (int age : ages.headSet(capacity)) {
+            if (age < 0) {
+                continue;
+            }
+            //the states are loaded rather than simulated again, recording only
+            //saving the state of the game boy
+            RewindBuffer rewind = new RewindBuffer(gameBoy, capacity, interval);
+            for (byte[] state : states) {
+                gameBoy.loadState(ByteBuffer.wrap(state));
+                rewind.record();
+            }
+            check(rewind.size() == capacity, "size " + rewind.size() + " of a full rewind buffer");
+            rewind.rewind(age);
+            compare(state(gameBoy), states[recorded - 1 - age], "state rewound by " + age);
+            check(rewind.size() == capacity - age,
+                    "size " + rewind.size() + " once rewound by " + age);
+            boolean thrown = false;
+            try {
+                rewind.rewind(rewind.size());
+            } catch (IndexOutOfBoundsException e) {
+                thrown = true;
+            }
+            check(thrown, "rewind beyond the oldest frame once rewound by " + age);
+        }
+    }
+
+    /**
+     * publishes numbered images from a producer thread while taking the
+     * latest ones on this thread
+     * @return the number of different images taken
+     * throws Failure if an image is torn, older than one taken before, or not
+     * the last one once the producer is done
+     * @throws InterruptedException if interrupted while waiting for the producer
+     */
+    private int checkTripleBuffer() throws Failure, InterruptedException {
+        int width = LcdController.LCD_WIDTH;
+        int height = LcdController.LCD_HEIGHT;
+        LcdImageTripleBuffer buffer = new LcdImageTripleBuffer(width, height);
+        check(buffer.latest() == null, "image taken before any is published");
+
+        Thread producer = new Thread(() -> {
+            for (int n = 1; n <= images; ++n) {
+                buffer.publish(numberedImage(width, height, n));
+            }
+        }, "triple buffer producer");
+        producer.start();
+
+        int taken = 0;
+        int last = 0;
+        boolean done = false;
+        while (!done) {
+            //the producer may finish between the latest taken and the test
+            done = !producer.isAlive();
+            LcdImage image = buffer.latest();
+            if (image == null) {
+                continue;
+            }
+            int n = number(image);
+            check(n >= last, "image " + n + " taken after image " + last);
+            if (n != last) {
+                ++taken;
+                last = n;
+            }
+        }
+        producer.join();
+        check(last == images, "image " + last + " taken last instead of " + images);
+        return taken;
+    }
+
+    /**
+     * runs a game boy in an emulation loop on its own thread for LOOP_MILLIS
+     * milliseconds, taking its latest images on this thread and queueing key
+     * events, then stops it
+     * @param image : content of the rom
+     * @return the number of different images taken
+     * throws Failure if no image is taken, the loop does not stop, or the
+     * keys of the game boy are not the ones the events left pressed
+     * @throws InterruptedException if interrupted while waiting for the loop
+     */
+    private static int checkEmulationLoop(ByteBuffer image) throws Failure, InterruptedException {
+        GameBoy gameBoy = new GameBoy(Cartridge.ofImage(image));
+        EmulationLoop loop = new EmulationLoop(gameBoy, StateChecks.class.getSimpleName());
+        check(loop.latestImage() == null, "image taken from the loop before it runs");
+        Thread thread = new Thread(loop, "emulation loop");
+        thread.start();
+
+        loop.keyPressed(Key.A);
+        loop.keyReleased(Key.A);
+        loop.keyPressed(Key.B);
+        int taken = 0;
+        LcdImage last = null;
+        long end = System.nanoTime() + LOOP_MILLIS * 1_000_000L;
+        while (System.nanoTime() < end) {
+            LcdImage latest = loop.latestImage();
+            if (latest != last) {
+                check(latest.width() == LcdController.LCD_WIDTH && latest.height() == LcdController.LCD_HEIGHT,
+                        "image of " + latest.width() + " by " + latest.height() + " pixels taken from the loop");
+                ++taken;
+                last = latest;
+            }
+            Thread.sleep(1);
+        }
+        loop.stop();
+        thread.join(LOOP_MILLIS);
+        check(!thread.isAlive(), "loop still running " + LOOP_MILLIS + " ms after being stopped");
+        check(taken > 0, "no image taken from the loop");
+
+        //the loop being stopped, its game boy can be used by this thread:
+        //releasing A again changes nothing, releasing B does
+        Joypad joypad = gameBoy.joypad();
+        byte[] keys = state(joypad);
+        joypad.keyReleased(Key.A);
+        compare(state(joypad), keys, "keys once A, released by the loop, is released again");
+        joypad.keyReleased(Key.B);
+        check(Arrays.mismatch(state(joypad), keys) != -1, "keys once B, pressed by the loop, is released");
+        return taken;
+    }
+
+    /**
+     * @param width : width of the image
+     * @param height : height of the image
+     * @param n : number of the image
+     * @return an image whose lines all have n in the msb of their first pixels
+     */
+    private static LcdImage numberedImage(int width, int height, int n) {
+        LcdImageLine.Builder line = new LcdImageLine.Builder(width);
+        for (int i = 0; i < NUMBER_BITS / Byte.SIZE; ++i) {
+            line.setBytes(i, (n >>> (i * Byte.SIZE)) & 0xFF, 0);
+        }
+        LcdImageLine numbered = line.build();
+        LcdImage.Builder builder = new LcdImage.Builder(width, height);
+        for (int y = 0; y < height; ++y) {
+            builder.setLine(y, numbered);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param image : image made by numberedImage
+     * @return its number
+     * throws Failure if its lines do not all have the same number
+     */
+    private static int number(LcdImage image) throws Failure {
+        int n = lineNumber(image, 0);
+        for (int y = 1; y < image.height(); ++y) {
+            int lineNumber = lineNumber(image, y);
+            check(lineNumber == n, "torn image: line " + y + " of image " + n + " from image " + lineNumber);
+        }
+        return n;
+    }
+
+    /**
+     * @param image : image made by numberedImage
+     * @param y : index of a line
+     * @return the number written in that line
+     */
+    private static int lineNumber(LcdImage image, int y) {
+        int n = 0;
+        for (int x = 0; x < NUMBER_BITS; ++x) {
+            n |= (image.get(x, y) >>> 1) << x;
+        }
+        return n;
+    }
+
+    /**
+     * runs a game boy for a few frames, pressing the keys of the script
+     * @param gameBoy : game boy at the start of the first frame
+     * @param first : index of the first frame
+     * @param count : number of frames run
+     * @param scriptShift : number of frames the script is shifted by
+     */
+    private static void runFrames(GameBoy gameBoy, long first, long count, long scriptShift) {
+        for (long frame = first; frame < first + count; ++frame) {
+            FrameHashRegression.pressScriptedKeys(gameBoy.joypad(), frame + scriptShift);
+            gameBoy.runUntil((frame + 1) * LcdController.CYCLES_PER_FRAME);
+        }
+    }
+
+    /**
+     * @param image : content of the rom
+     * @param state : state of a game boy with that rom
+     * @return a new game boy in that state
+     */
+    private static GameBoy loaded(ByteBuffer image, byte[] state) {
+        GameBoy gameBoy = new GameBoy(Cartridge.ofImage(image));
+        gameBoy.loadState(ByteBuffer.wrap(state));
+        return gameBoy;
+    }
+
+    /**
+     * @param savable : game boy or component
+     * @return the bytes of its state
+     */
+    private static byte[] state(Savable savable) {
+        ByteBuffer buffer = ByteBuffer.allocate(savable.stateSize());
+        savable.saveState(buffer);
+        return buffer.array();
+    }
+
+    /**
+     * @param state : bytes of a state
+     * @param expected : bytes of the state expected
+     * @param what : description of the state
+     * throws Failure if they differ, telling the first byte that does
+     */
+    private static void compare(byte[] state, byte[] expected, String what) throws Failure {
+        int mismatch = Arrays.mismatch(state, expected);
+        check(mismatch == -1, what + " differs from byte " + mismatch);
+    }
+
+    /**
+     * @param condition : condition that must hold
+     * @param what : description of what does not hold otherwise
+     * throws Failure if the condition does not hold
+     */
+    private static void check(boolean condition, String what) throws Failure {
+        if (!condition) {
+            throw new Failure(what);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package ch.epfl.gameboj.tools;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import ch.epfl.gameboj.component.cpu.Cpu.Interrupt;
+import ch.epfl.gameboj.component.cpu.InstructionTrace;
+import ch.epfl.gameboj.component.cpu.Opcode;
+
+/**
+ * turns a trace written by InstructionTrace into text, one line per record
+ * from the oldest to the newest: the cycle, PC, the opcode executed or the
+ * interrupt serviced, then the registers, SP, IME, IE and IF before it
+ *
+ * usage: TraceDecoder trace [--last n]
+ */
+public final class TraceDecoder {
+
+    //CONSTANTS
+    private static final String USAGE = "usage: TraceDecoder trace [--last n]";
+    private static final Opcode[] OPCODES = Opcode.values();
+    private static final Interrupt[] INTERRUPTS = Interrupt.values();
+    private static final String[] REGISTER_NAMES = { "A", "F", "B", "C", "D", "E", "H", "L" };
+
+    private TraceDecoder() {}
+
+    /**
+     * The main method
+     */
+    public static void main(String[] args) {
+        long last = Long.MAX_VALUE;
+        if (args.length == 3 && args[1].equals("--last")) {
+            try {
+                last = Long.parseLong(args[2]);
+            } catch (NumberFormatException e) {
+                last = -1;
+            }
+        }
+        if ((args.length != 1 && args.length != 3) || last < 0) {
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        try {
+            decode(ByteBuffer.wrap(Files.readAllBytes(Paths.get(args[0]))), last, System.out);
+        }
+        //exits the program in case of an exception
+        catch (IOException | IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param trace : content of a trace file
+     * @param last : number of records written at most, the last ones
+     * @param out : stream the text is written to
+     * throws IllegalArgumentException if the content is not a trace of this version
+     */
+    private static void decode(ByteBuffer trace, long last, PrintStream out) {
+        if (trace.remaining() < InstructionTrace.HEADER_SIZE
+                || trace.getInt() != InstructionTrace.MAGIC
+                || trace.getInt() != InstructionTrace.VERSION
+                || trace.getInt() != InstructionTrace.RECORD_SIZE) {
+            throw new IllegalArgumentException("not a trace of version " + InstructionTrace.VERSION);
+        }
+        long recorded = trace.getLong();
+        int count = trace.getInt();
+        if (trace.remaining() != (long) count * InstructionTrace.RECORD_SIZE) {
+            throw new IllegalArgumentException("truncated trace");
+        }
+        int first = (int) Math.max(0, count - last);
+        out.printf("%d events recorded, the last %d kept%n", recorded, count);
+        for (int i = first; i < count; ++i) {
+            decodeRecord(trace, i * InstructionTrace.RECORD_SIZE + InstructionTrace.HEADER_SIZE, out);
+        }
+    }
+
+    /**
+     * @param trace : content of a trace file
+     * @param offset : index of the first byte of a record in it
+     * @param out : stream the record is written to
+     */
+    private static void decodeRecord(ByteBuffer trace, int offset, PrintStream out) {
+        long cycle = trace.getLong(offset);
+        long registers = trace.getLong(offset + 8);
+        int pc = Short.toUnsignedInt(trace.getShort(offset + 16));
+        int sp = Short.toUnsignedInt(trace.getShort(offset + 18));
+        int event = Short.toUnsignedInt(trace.getShort(offset + 20));
+        int ie = Byte.toUnsignedInt(trace.get(offset + 22));
+        int iF = Byte.toUnsignedInt(trace.get(offset + 23));
+        boolean ime = (event & InstructionTrace.IME_BIT) != 0;
+        event &= ~InstructionTrace.IME_BIT;
+
+        String name;
+        if (event >= InstructionTrace.INTERRUPT_EVENT
+                && event - InstructionTrace.INTERRUPT_EVENT < INTERRUPTS.length) {
+            name = "INTERRUPT " + INTERRUPTS[event - InstructionTrace.INTERRUPT_EVENT];
+        } else if (event < OPCODES.length) {
+            name = OPCODES[event].name();
+        } else {
+            name = "?" + event;
+        }
+
+        StringBuilder line = new StringBuilder(String.format("%12d %04X %-18s", cycle, pc, name));
+        for (int i = 0; i < REGISTER_NAMES.length; ++i) {
+            int shift = (REGISTER_NAMES.length - 1 - i) * Byte.SIZE;
+            line.append(String.format(" %s=%02X", REGISTER_NAMES[i], (registers >>> shift) & 0xFF));
+        }
+        line.append(String.format(" SP=%04X IME=%d IE=%02X IF=%02X", sp, ime ? 1 : 0, ie, iF));
+        out.println(line);
+    }
+}